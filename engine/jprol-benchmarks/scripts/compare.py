@@ -0,0 +1,74 @@
+#!/usr/bin/env python3
+"""Compare two JMH JSON result files and show changes of every benchmark.
+
+Usage: compare.py BASELINE.json CURRENT.json [--threshold PERCENT]
+
+Score change is shown as improvement in percents (positive is better both for
+throughput and time modes). Exit code is 1 if any benchmark is worse than the
+threshold (5% by default) and the change is bigger than the score errors.
+"""
+
+import argparse
+import json
+import sys
+
+LOWER_IS_BETTER = ("avgt", "sample", "ss")
+
+
+def load(path):
+    with open(path, encoding="utf-8") as stream:
+        result = {}
+        for item in json.load(stream):
+            params = item.get("params") or {}
+            name = ".".join(item["benchmark"].split(".")[-2:])
+            key = name + "".join(
+                "[%s=%s]" % (name, params[name]) for name in sorted(params))
+            metric = item["primaryMetric"]
+            error = metric.get("scoreError")
+            result[key] = (item["mode"], metric["score"],
+                           0.0 if error in (None, "NaN") else float(error),
+                           metric["scoreUnit"])
+        return result
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("baseline")
+    parser.add_argument("current")
+    parser.add_argument("--threshold", type=float, default=5.0,
+                        help="regression threshold in percents")
+    args = parser.parse_args()
+
+    baseline = load(args.baseline)
+    current = load(args.current)
+
+    regressions = 0
+    width = max([len(x) for x in current] + [9])
+    print("%-*s %14s %14s %9s  %s" % (width, "Benchmark", "Baseline", "Current", "Change", "Unit"))
+    for key in sorted(set(baseline) | set(current)):
+        if key not in baseline or key not in current:
+            print("%-*s %s" % (width, key, "only in " + ("current" if key in current else "baseline")))
+            continue
+        mode, old_score, old_error, unit = baseline[key]
+        _, new_score, new_error, _ = current[key]
+        if old_score == 0:
+            change = 0.0
+        elif mode in LOWER_IS_BETTER:
+            change = (old_score - new_score) / old_score * 100.0
+        else:
+            change = (new_score - old_score) / old_score * 100.0
+        significant = abs(new_score - old_score) > old_error + new_error
+        mark = ""
+        if change < -args.threshold and significant:
+            mark = "  REGRESSION"
+            regressions += 1
+        print("%-*s %14.3f %14.3f %+8.1f%%  %s%s" % (width, key, old_score, new_score, change, unit, mark))
+
+    if regressions:
+        print("\n%d benchmark(s) regressed more than %.1f%%" % (regressions, args.threshold))
+        return 1
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main())
@@ -0,0 +1,17 @@
+#!/bin/sh
+# Build benchmarks and save JMH results of the current commit into results/<commit>.json
+# Extra arguments are passed to JMH, for instance: scripts/run.sh ClassicBenchmark -p program=nrev
+
+set -e
+
+MODULE_DIR="$(cd "$(dirname "$0")/.." && pwd)"
+COMMIT="$(git -C "$MODULE_DIR" rev-parse --short HEAD)"
+if [ -n "$(git -C "$MODULE_DIR" status --porcelain -- ..)" ]; then
+  COMMIT="$COMMIT-dirty"
+fi
+
+(cd "$MODULE_DIR/.." && mvn -B -q -pl jprol-core,jprol-benchmarks -am package -DskipTests)
+
+mkdir -p "$MODULE_DIR/results"
+java -jar "$MODULE_DIR/target/benchmarks.jar" -rf json -rff "$MODULE_DIR/results/$COMMIT.json" "$@"
+echo "Results saved into $MODULE_DIR/results/$COMMIT.json"
@@ -0,0 +1,64 @@
+package com.igormaznitsa.jprol.benchmarks;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.Terms;
+import com.igormaznitsa.jprol.logic.JProlContext;
+import com.igormaznitsa.jprol.logic.JProlSystemFlag;
+import com.igormaznitsa.jprol.logic.PreparedGoal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Programs of classic Prolog benchmark set, every operation proves goal bench/0 of a program.
+ * Naive reverse of 30 elements list makes 496 logical inferences so LIPS is nrev ops/s * 496.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassicBenchmark {
+
+  @Param({"nrev", "queens", "zebra", "crypt"})
+  public String program;
+
+  @Param({"false", "true"})
+  public boolean compiledClauses;
+
+  private JProlContext context;
+  private PreparedGoal goal;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    this.context = Programs.consultResource(this.program + ".prl");
+    this.context.setSystemFlag(JProlSystemFlag.COMPILED_CLAUSES, this.compiledClauses ? Terms.TRUE : Terms.FALSE);
+    this.goal = new PreparedGoal("bench.", this.context);
+    if (this.goal.once(this.context) == null) {
+      throw new IllegalStateException("Benchmark goal fails: " + this.program);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    this.context.dispose();
+  }
+
+  @Benchmark
+  public Term bench() {
+    return this.goal.once(this.context);
+  }
+}
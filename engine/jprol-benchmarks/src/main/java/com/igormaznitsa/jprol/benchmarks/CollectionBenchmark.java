@@ -0,0 +1,74 @@
+package com.igormaznitsa.jprol.benchmarks;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermList;
+import com.igormaznitsa.jprol.data.Terms;
+import com.igormaznitsa.jprol.logic.JProlContext;
+import com.igormaznitsa.jprol.logic.PreparedGoal;
+import com.igormaznitsa.jprol.utils.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collecting and sorting of large number of solutions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CollectionBenchmark {
+
+  @Param({"1000000"})
+  public int elements;
+
+  private JProlContext context;
+  private PreparedGoal findAll;
+  private PreparedGoal sort;
+  private Term unsorted;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    this.context = Programs.makeContext();
+    this.findAll = new PreparedGoal("findall(X, for(X,1," + this.elements + "), L).", this.context);
+    this.sort = new PreparedGoal("sort({?}, S).", this.context);
+
+    final Random random = new Random(12345L);
+    final TermList list = Terms.newList(Terms.newLong(random.nextInt()));
+    TermList last = list;
+    for (int i = 1; i < this.elements; i++) {
+      last = Utils.createOrAppendToList(last, Terms.newLong(random.nextInt()));
+    }
+    this.unsorted = list;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    this.context.dispose();
+  }
+
+  @Benchmark
+  public Term findAll() {
+    return this.findAll.once(this.context);
+  }
+
+  @Benchmark
+  public Term sort() {
+    return this.sort.makeChoicePoint(this.context, this.unsorted).prove();
+  }
+}
@@ -0,0 +1,55 @@
+package com.igormaznitsa.jprol.benchmarks;
+
+import com.igormaznitsa.jprol.logic.JProlContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and consulting of generated program made of facts and rules into new context.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsultBenchmark {
+
+  @Param({"10000"})
+  public int clauses;
+
+  private String program;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    final StringBuilder buffer = new StringBuilder();
+    for (int i = 0; i < this.clauses; i++) {
+      if (i % 2 == 0) {
+        buffer.append("fact(").append(i).append(", 'atom_").append(i).append("', [a, b, c], f(x, \"text\")).\n");
+      } else {
+        buffer.append("rule_").append(i % 100).append("(X, Y) :- fact(X, _, [_|T], _), Y is X * 2 + ")
+            .append(i).append(", (Y > 10 -> true ; T = [])").append(".\n");
+      }
+    }
+    this.program = buffer.toString();
+  }
+
+  @Benchmark
+  public JProlContext consult() {
+    final JProlContext context = Programs.consultText(this.program);
+    context.dispose();
+    return context;
+  }
+}
@@ -0,0 +1,59 @@
+package com.igormaznitsa.jprol.benchmarks;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.logic.ExecutorStrategy;
+import com.igormaznitsa.jprol.logic.JProlContext;
+import com.igormaznitsa.jprol.logic.PreparedGoal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of fork/1, every branch makes the same work so with ideal scaling time doesn't depend on
+ * number of branches while it is not greater than number of processors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForkBenchmark {
+
+  @Param({"1", "2", "4", "8"})
+  public int branches;
+
+  private JProlContext context;
+  private PreparedGoal goal;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    this.context = Programs.makeContext(ExecutorStrategy.dedicatedPool(this.branches));
+    this.context.consult(new StringReader("work(0) :- !. work(N) :- N1 is N - 1, work(N1)."));
+    this.goal = new PreparedGoal("fork([" + String.join(",", Collections.nCopies(this.branches, "work(100000)")) + "]).", this.context);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    this.context.dispose();
+  }
+
+  @Benchmark
+  public Term fork() {
+    return this.goal.once(this.context);
+  }
+}
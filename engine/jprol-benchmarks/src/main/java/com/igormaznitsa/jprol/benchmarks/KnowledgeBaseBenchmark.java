@@ -0,0 +1,96 @@
+package com.igormaznitsa.jprol.benchmarks;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.logic.JProlContext;
+import com.igormaznitsa.jprol.logic.PreparedGoal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Knowledge base operations: assert/retract throughput and lookup in large fact table through the
+ * first and the second (JIT indexed) argument.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KnowledgeBaseBenchmark {
+
+  private static final int ASSERT_BATCH = 1000;
+  private static final int LOOKUP_BATCH = 1000;
+
+  @Param({"100000"})
+  public int facts;
+
+  private JProlContext context;
+  private PreparedGoal assertRetract;
+  private PreparedGoal lookupFirst;
+  private PreparedGoal lookupSecond;
+  private long[] keys;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    final StringBuilder buffer = new StringBuilder();
+    for (int i = 0; i < this.facts; i++) {
+      buffer.append("row(").append(i).append(",v").append(i).append(").\n");
+    }
+    this.context = Programs.consultText(buffer.toString());
+    this.assertRetract = new PreparedGoal("(for(I,1," + ASSERT_BATCH + "), assertz(item(I,I)), fail ; true),"
+        + "(for(I,1," + ASSERT_BATCH + "), retract(item(I,_)), fail ; true).", this.context);
+    this.lookupFirst = new PreparedGoal("row({?},_).", this.context);
+    this.lookupSecond = new PreparedGoal("row(_,{?}).", this.context);
+    this.keys = new Random(12345L).longs(LOOKUP_BATCH, 0L, this.facts).toArray();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    this.context.dispose();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ASSERT_BATCH)
+  public Term assertRetract() {
+    return this.assertRetract.once(this.context);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LOOKUP_BATCH)
+  public int lookupFirstArgument() {
+    int found = 0;
+    for (final long key : this.keys) {
+      if (this.lookupFirst.makeChoicePoint(this.context, key).prove() != null) {
+        found++;
+      }
+    }
+    return found;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LOOKUP_BATCH)
+  public int lookupSecondArgument() {
+    int found = 0;
+    for (final long key : this.keys) {
+      if (this.lookupSecond.makeChoicePoint(this.context, "v" + key).prove() != null) {
+        found++;
+      }
+    }
+    return found;
+  }
+}
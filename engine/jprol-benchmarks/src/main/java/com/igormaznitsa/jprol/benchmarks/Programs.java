@@ -0,0 +1,51 @@
+package com.igormaznitsa.jprol.benchmarks;
+
+import com.igormaznitsa.jprol.libs.JProlCoreLibrary;
+import com.igormaznitsa.jprol.libs.JProlThreadLibrary;
+import com.igormaznitsa.jprol.logic.ExecutorStrategy;
+import com.igormaznitsa.jprol.logic.JProlContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+final class Programs {
+
+  private Programs() {
+  }
+
+  static JProlContext makeContext(final ExecutorStrategy executorStrategy) {
+    return JProlContext.builder("benchmark")
+        .executorStrategy(executorStrategy)
+        .libraries(new JProlCoreLibrary(), new JProlThreadLibrary())
+        .build();
+  }
+
+  static JProlContext makeContext() {
+    return makeContext(ExecutorStrategy.commonPool());
+  }
+
+  static JProlContext consultResource(final String name) {
+    final JProlContext context = makeContext();
+    final InputStream stream = Programs.class.getResourceAsStream("/benchmarks/" + name);
+    if (stream == null) {
+      throw new IllegalArgumentException("Can't find benchmark program: " + name);
+    }
+    try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+      context.consult(reader);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return context;
+  }
+
+  static JProlContext consultText(final String text) {
+    final JProlContext context = makeContext();
+    context.consult(new StringReader(text));
+    return context;
+  }
+}
@@ -0,0 +1,54 @@
+package com.igormaznitsa.jprol.data;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JVM wide table of interned atoms. There is only one instance of plain atom for a text while the
+ * atom is reachable, so atoms can be compared by reference. Atoms are weakly referenced and removed
+ * from the table when they are not used anymore.
+ */
+final class AtomTable {
+
+  private static final ConcurrentHashMap<String, AtomReference> TABLE = new ConcurrentHashMap<>();
+  private static final ReferenceQueue<Term> QUEUE = new ReferenceQueue<>();
+
+  private AtomTable() {
+  }
+
+  static Term intern(final String text) {
+    expunge();
+    while (true) {
+      final AtomReference reference = TABLE.get(text);
+      if (reference != null) {
+        final Term atom = reference.get();
+        if (atom != null) {
+          return atom;
+        }
+        TABLE.remove(text, reference);
+      }
+      final Term atom = new Term(text);
+      if (TABLE.putIfAbsent(text, new AtomReference(text, atom, QUEUE)) == null) {
+        return atom;
+      }
+    }
+  }
+
+  private static void expunge() {
+    AtomReference reference;
+    while ((reference = (AtomReference) QUEUE.poll()) != null) {
+      TABLE.remove(reference.text, reference);
+    }
+  }
+
+  private static final class AtomReference extends WeakReference<Term> {
+
+    private final String text;
+
+    private AtomReference(final String text, final Term atom, final ReferenceQueue<Term> queue) {
+      super(atom, queue);
+      this.text = text;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package com.igormaznitsa.jprol.data;
+
+import java.util.Arrays;
+
+/**
+ * Trail of variable bindings made during a proof. Every binding of a free variable made while the
+ * trail is active in the current thread is recorded, so that backtracking can undo all bindings made
+ * after a mark without keeping snapshots of variable states.
+ */
+public final class BindingTrail {
+
+  private static final ThreadLocal<BindingTrail> ACTIVE = new ThreadLocal<>();
+  private static final int INITIAL_CAPACITY = 32;
+
+  private TermVar[] boundVars = new TermVar[INITIAL_CAPACITY];
+  private int size;
+
+  /**
+   * Get trail active in the current thread.
+   *
+   * @return active trail or null if there is no active trail
+   */
+  public static BindingTrail findActive() {
+    return ACTIVE.get();
+  }
+
+  /**
+   * Make trail active for the current thread.
+   *
+   * @param trail trail to be activated, must not be null
+   * @return trail which was active before the call, can be null
+   */
+  public static BindingTrail activate(final BindingTrail trail) {
+    final BindingTrail previous = ACTIVE.get();
+    if (previous != trail) {
+      ACTIVE.set(trail);
+    }
+    return previous;
+  }
+
+  /**
+   * Restore trail which was active before {@link #activate(BindingTrail)}.
+   *
+   * @param previous value returned by activate, can be null
+   */
+  public static void restore(final BindingTrail previous) {
+    if (previous == null) {
+      ACTIVE.remove();
+    } else if (ACTIVE.get() != previous) {
+      ACTIVE.set(previous);
+    }
+  }
+
+  static void recordBinding(final TermVar variable) {
+    final BindingTrail trail = ACTIVE.get();
+    if (trail != null) {
+      trail.push(variable);
+    }
+  }
+
+  private void push(final TermVar variable) {
+    if (this.size == this.boundVars.length) {
+      this.boundVars = Arrays.copyOf(this.boundVars, this.size << 1);
+    }
+    this.boundVars[this.size++] = variable;
+  }
+
+  public int mark() {
+    return this.size;
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Forget bindings made after mark for variables created after the outer variable uid, the
+   * variables stay bound but will not be made free by undo.
+   *
+   * @param mark            mark provided by {@link #mark()}
+   * @param lastOuterVarUid uid of the last variable which bindings must be kept in the trail
+   */
+  public void compact(final int mark, final int lastOuterVarUid) {
+    final TermVar[] vars = this.boundVars;
+    int kept = mark;
+    for (int i = mark; i < this.size; i++) {
+      final TermVar variable = vars[i];
+      if (variable.getVarUid() - lastOuterVarUid <= 0) {
+        vars[kept++] = variable;
+      }
+    }
+    Arrays.fill(vars, kept, this.size, null);
+    this.size = kept;
+  }
+
+  /**
+   * Make free all variables bound after mark.
+   *
+   * @param mark mark provided by {@link #mark()}
+   */
+  public void undo(final int mark) {
+    final TermVar[] vars = this.boundVars;
+    int index = this.size;
+    while (index > mark) {
+      index--;
+      vars[index].setThisValue(null);
+      vars[index] = null;
+    }
+    this.size = index;
+    if (index == 0 && vars.length > INITIAL_CAPACITY * 64) {
+      this.boundVars = new TermVar[INITIAL_CAPACITY];
+    }
+  }
+}
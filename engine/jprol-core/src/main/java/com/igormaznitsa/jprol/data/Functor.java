@@ -0,0 +1,85 @@
+package com.igormaznitsa.jprol.data;
+
+/**
+ * Key of a predicate: interned name and arity. There is only one instance for the same name and
+ * arity while its name atom is in use, so keys are compared by reference and have precomputed
+ * hash.
+ */
+public final class Functor {
+
+  private final Term atom;
+  private final int arity;
+  private final int hash;
+  private volatile String signature;
+
+  Functor(final Term atom, final int arity) {
+    this.atom = atom;
+    this.arity = arity;
+    this.hash = atom.getText().hashCode() * 31 + arity;
+  }
+
+  /**
+   * Get key for name and arity.
+   *
+   * @param name  name of predicate
+   * @param arity arity of predicate
+   * @return interned key
+   */
+  public static Functor of(final String name, final int arity) {
+    return Terms.newAtom(name).asFunctor(arity);
+  }
+
+  /**
+   * Get key for signature in format name/arity.
+   *
+   * @param signature signature, can be null
+   * @return interned key or null if signature is null or has wrong format
+   */
+  public static Functor fromSignature(final String signature) {
+    if (signature == null) {
+      return null;
+    }
+    final int index = signature.lastIndexOf('/');
+    if (index <= 0) {
+      return null;
+    }
+    final int arity;
+    try {
+      arity = Integer.parseInt(signature.substring(index + 1).trim());
+    } catch (NumberFormatException ex) {
+      return null;
+    }
+    return arity < 0 ? null : of(signature.substring(0, index).trim(), arity);
+  }
+
+  public Term getAtom() {
+    return this.atom;
+  }
+
+  public String getName() {
+    return this.atom.getText();
+  }
+
+  public int getArity() {
+    return this.arity;
+  }
+
+  public String getSignature() {
+    String result = this.signature;
+    if (result == null) {
+      result = this.atom.getText() + '/' + this.arity;
+      this.signature = result;
+    }
+    return result;
+  }
+
+  @Override
+  public int hashCode() {
+    return this.hash;
+  }
+
+  @Override
+  public String toString() {
+    return this.getSignature();
+  }
+}
@@ -34,6 +34,7 @@ package com.igormaznitsa.jprol.data;
 
 import com.igormaznitsa.jprol.exceptions.ProlTypeErrorException;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Stream;
@@ -46,11 +47,46 @@ import static java.util.stream.Collectors.toMap;
 public class Term {
 
   private final String text;
+  private volatile Functor[] functors;
 
   Term(final String text) {
     this.text = requireNonNull(text);
   }
 
+  /**
+   * Get functor key for the term text and arity. Keys are cached by atoms, other terms use keys of
+   * atom with the same text.
+   *
+   * @param arity arity of predicate
+   * @return interned functor key
+   */
+  public final Functor asFunctor(final int arity) {
+    final Functor[] cached = this.functors;
+    if (cached != null && arity < cached.length) {
+      final Functor result = cached[arity];
+      if (result != null) {
+        return result;
+      }
+    }
+    return this.makeFunctor(arity);
+  }
+
+  private synchronized Functor makeFunctor(final int arity) {
+    Functor[] cached = this.functors;
+    if (cached == null) {
+      cached = new Functor[Math.max(arity + 1, 4)];
+    } else if (arity >= cached.length) {
+      cached = Arrays.copyOf(cached, arity + 1);
+    }
+    Functor result = cached[arity];
+    if (result == null) {
+      result = this.getClass() == Term.class ? new Functor(this, arity) : Terms.newAtom(this.text).asFunctor(arity);
+      cached[arity] = result;
+    }
+    this.functors = cached;
+    return result;
+  }
+
   public int getPriority() {
     return 0;
   }
@@ -74,11 +110,15 @@ public class Term {
         return term == null || this.dryUnifyTo(term);
       }
       case ATOM: {
-        return term.getClass() == Term.class && getText().equals(term.getText());
+        // plain atoms are interned, so different plain atoms have different texts
+        return term.getClass() == Term.class
+            && this.getClass() != Term.class
+            && this.getText().equals(term.getText());
       }
       case STRUCT: {
         final TermStruct thatStruct = (TermStruct) term;
-        return thatStruct.getArity() == 0 && getText().equals(thatStruct.getFunctor().getText());
+        return thatStruct.getArity() == 0
+            && (thatStruct.getFunctor() == this || getText().equals(thatStruct.getFunctor().getText()));
       }
       default:
         return false;
@@ -141,7 +181,7 @@ public class Term {
   }
 
   public String getSignature() {
-    return getText() + "/0";
+    return this.asFunctor(0).getSignature();
   }
 
   public String forWrite() {
@@ -167,12 +207,16 @@ public class Term {
       }
       break;
       case ATOM: {
-        result = other.getClass() == Term.class && getText().equals(other.getText());
+        // plain atoms are interned, so different plain atoms have different texts
+        result = other.getClass() == Term.class
+            && this.getClass() != Term.class
+            && this.getText().equals(other.getText());
       }
       break;
       case STRUCT: {
         final TermStruct thatStruct = (TermStruct) other;
-        result = thatStruct.getArity() == 0 && getText().equals(thatStruct.getFunctor().getText());
+        result = thatStruct.getArity() == 0
+            && (thatStruct.getFunctor() == this || getText().equals(thatStruct.getFunctor().getText()));
       }
       break;
     }
@@ -360,7 +360,7 @@ public final class TermList extends TermStruct {
 
   public Term toAtom() {
     if (this.isNullList()) {
-      return new Term("<empty>");
+      return Terms.newAtom("<empty>");
     }
     if (this.getTail() == Terms.NULL_LIST) {
       return this.getHead();
@@ -33,7 +33,6 @@ public class TermStruct extends CompoundTerm {
   static final Term[] EMPTY_ARRAY = new Term[0];
   final Term[] terms;
   final Term functor;
-  private final String structureSignature;
   private volatile PredicateInvoker predicateProcessor;
 
   TermStruct(final Term functor) {
@@ -41,14 +40,13 @@ public class TermStruct extends CompoundTerm {
   }
 
   TermStruct(final String functor, final Term[] elements) {
-    this(new Term(functor), elements);
+    this(Terms.newAtom(functor), elements);
   }
 
   TermStruct(final Term functor, final Term[] elements) {
     super(functor.getText());
     this.functor = functor;
     this.terms = elements == null ? EMPTY_ARRAY : elements;
-    this.structureSignature = functor.getText() + '/' + getArity();
     this.predicateProcessor = PredicateInvoker.NULL_PROCESSOR;
   }
 
@@ -343,7 +341,11 @@ public class TermStruct extends CompoundTerm {
 
   @Override
   public String getSignature() {
-    return this.structureSignature;
+    return this.getFunctorKey().getSignature();
+  }
+
+  public Functor getFunctorKey() {
+    return this.functor.asFunctor(this.terms.length);
   }
 
   @Override
@@ -385,7 +387,8 @@ public class TermStruct extends CompoundTerm {
         }
       }
       case ATOM: {
-        return this.getArity() == 0 && this.getFunctor().getText().equals(atom.getText());
+        return this.getArity() == 0
+            && (this.getFunctor() == atom || this.getFunctor().getText().equals(atom.getText()));
       }
     }
     return false;
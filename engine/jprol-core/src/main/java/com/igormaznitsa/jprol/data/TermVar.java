@@ -48,6 +48,10 @@ public final class TermVar extends Term {
     this("_$" + Long.toHexString(ANONYM_GENERATOR.incrementAndGet()), true);
   }
 
+  public static int getLastVarUid() {
+    return UID_GENERATOR.get();
+  }
+
   public final int getVarUid() {
     return this.uid;
   }
@@ -184,6 +188,7 @@ public final class TermVar extends Term {
 
       if (this.value == null) {
         this.value = value;
+        BindingTrail.recordBinding(this);
       } else {
         final Term curValue = getValue();
         if (curValue == null) {
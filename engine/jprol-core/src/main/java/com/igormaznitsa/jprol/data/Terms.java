@@ -9,20 +9,23 @@ import java.util.HashMap;
 import java.util.Map;
 
 public final class Terms {
-  public static final Term TRUE = new Term("true");
-  public static final Term FALSE = new Term("false");
+  public static final Term TRUE = AtomTable.intern("true");
+  public static final Term FALSE = AtomTable.intern("false");
   public static final TermLong INT_ONE = new TermLong(1L);
   public static final TermLong INT_ZERO = new TermLong(0L);
   public static final TermLong INT_MINUS_ONE = new TermLong(-1L);
-  public static final Term LIST_FUNCTOR = new Term(".");
+  public static final Term LIST_FUNCTOR = AtomTable.intern(".");
   public static final TermList NULL_LIST = new TermList();
 
+  /**
+   * Get interned atom for text, the same instance is returned for the same text while the atom is
+   * in use.
+   *
+   * @param text text of the atom
+   * @return interned atom
+   */
   public static Term newAtom(final String text) {
-    if (".".equals(text)) {
-      return LIST_FUNCTOR;
-    } else {
-      return new Term(text);
-    }
+    return AtomTable.intern(text);
   }
 
   public static TermDouble newDouble(final String text) {
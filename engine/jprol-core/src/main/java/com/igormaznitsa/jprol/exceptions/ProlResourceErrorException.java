@@ -0,0 +1,39 @@
+package com.igormaznitsa.jprol.exceptions;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermList;
+import com.igormaznitsa.jprol.data.TermStruct;
+
+import static com.igormaznitsa.jprol.data.Terms.newAtom;
+
+public class ProlResourceErrorException extends ProlAbstractCatcheableException {
+
+  private static final long serialVersionUID = -1962381839247806512L;
+
+  private static final Term TERM_ERROR = newAtom("resource_error");
+  private final String resource;
+
+  public ProlResourceErrorException(final String resource, final String message, final Term culprit) {
+    super(message, culprit);
+    this.resource = resource == null ? UNDEFINED.getText() : resource;
+  }
+
+  public ProlResourceErrorException(final String resource, final Term culprit) {
+    super(culprit);
+    this.resource = resource == null ? UNDEFINED.getText() : resource;
+  }
+
+  public String getResource() {
+    return this.resource;
+  }
+
+  @Override
+  public Term getErrorTerm() {
+    return TERM_ERROR;
+  }
+
+  @Override
+  public TermStruct getAsStruct() {
+    return this.makeErrorStruct(TERM_ERROR, TermList.asTermList(newAtom(this.resource), this.getCulprit()));
+  }
+}
@@ -0,0 +1,10 @@
+package com.igormaznitsa.jprol.exceptions;
+
+public class ProlTimeoutException extends ProlException {
+
+  private static final long serialVersionUID = 2781093514496521723L;
+
+  public ProlTimeoutException(final String message) {
+    super(message);
+  }
+}
@@ -16,15 +16,27 @@
 
 package com.igormaznitsa.jprol.kbase;
 
+import com.igormaznitsa.jprol.data.Functor;
+import com.igormaznitsa.jprol.data.Term;
 import com.igormaznitsa.jprol.data.TermOperator;
 import com.igormaznitsa.jprol.data.TermOperatorContainer;
 import com.igormaznitsa.jprol.data.TermStruct;
 import com.igormaznitsa.jprol.logic.JProlContext;
+import com.igormaznitsa.jprol.logic.compiler.CompiledClause;
 import com.igormaznitsa.jprol.utils.CloseableIterator;
+import com.igormaznitsa.jprol.utils.Utils;
 import com.igormaznitsa.prologparser.tokenizer.OpAssoc;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 
+import static com.igormaznitsa.jprol.data.Terms.newStruct;
+import static com.igormaznitsa.jprol.data.Terms.newVar;
+
 public interface KnowledgeBase {
 
   String getId();
@@ -41,14 +53,102 @@ public interface KnowledgeBase {
 
   CloseableIterator<TermStruct> iterate(String signature, Consumer<String> unknownPredicateConsumer);
 
+  /**
+   * Iterate clauses which can match template without making their copies, returned clauses are
+   * shared with the knowledge base and must not be changed. Matching is checked against current
+   * state of the template so it must not be changed between calls of the iterator.
+   *
+   * @param template                 template to find clauses
+   * @param unknownPredicateConsumer consumer of unknown predicate signature
+   * @return iterator of clauses, by default copies of clauses
+   */
+  default CloseableIterator<TermStruct> iterateShared(TermStruct template, Consumer<String> unknownPredicateConsumer) {
+    return this.iterate(IteratorType.ANY, template, unknownPredicateConsumer);
+  }
+
+  /**
+   * Iterate compiled clauses which can match template. Matching is checked against current state
+   * of the template so it must not be changed between calls of the iterator.
+   *
+   * @param template                 template to find clauses
+   * @param unknownPredicateConsumer consumer of unknown predicate signature
+   * @return iterator or null if the knowledge base doesn't provide compiled clauses
+   */
+  default CloseableIterator<CompiledClause> iterateCompiled(TermStruct template, Consumer<String> unknownPredicateConsumer) {
+    return null;
+  }
+
   CloseableIterator<TermStruct> iterateSignatures(TermStruct indicator);
 
   CloseableIterator<TermOperator> makeOperatorIterator();
 
+  /**
+   * Count clauses of predicates, by default all clauses are iterated.
+   *
+   * @return map of predicate signatures to number of clauses
+   */
+  default Map<String, Integer> countClauses() {
+    final Map<String, Integer> result = new LinkedHashMap<>();
+    try (CloseableIterator<TermStruct> signatures = this.iterateSignatures(
+        newStruct(Utils.SIGNATURE_OPERATOR, new Term[] {newVar(), newVar()}))) {
+      while (signatures.hasNext()) {
+        final TermStruct indicator = signatures.next();
+        final String signature = indicator.getElement(0).getText() + '/' + indicator.getElement(1).getText();
+        int counter = 0;
+        try (CloseableIterator<TermStruct> clauses = this.iterate(signature, x -> {
+        })) {
+          while (clauses.hasNext()) {
+            clauses.next();
+            counter++;
+          }
+        }
+        result.put(signature, counter);
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return result;
+  }
+
   boolean assertZ(JProlContext context, TermStruct clause);
 
   boolean assertA(JProlContext context, TermStruct clause);
 
+  /**
+   * Add facts of a predicate after its clauses. By default every fact is asserted separately, so
+   * triggers are notified for every fact.
+   *
+   * @param context   context, must not be null
+   * @param signature signature of predicate in format name/arity
+   * @param rows      arguments of facts, every array must have length equal to the arity
+   * @return number of added facts
+   * @throws IllegalArgumentException if signature or number of arguments in a row is wrong
+   */
+  default long bulkLoad(JProlContext context, String signature, Iterator<Term[]> rows) {
+    final Functor functor = Functor.fromSignature(Utils.normalizeSignature(signature));
+    if (functor == null) {
+      throw new IllegalArgumentException("Wrong signature format '" + signature + '\'');
+    }
+    long counter = 0L;
+    while (rows.hasNext()) {
+      this.assertZ(context, Utils.makeFact(functor, rows.next()));
+      counter++;
+    }
+    return counter;
+  }
+
+  /**
+   * Declare that ground facts of a predicate should be kept in columnar form.
+   *
+   * @param signature signature of predicate in format name/arity
+   * @return true if the predicate is columnar, false if the knowledge base doesn't support it or
+   * the predicate has clauses which can't be kept in columnar form
+   * @throws IllegalArgumentException if signature is wrong
+   */
+  default boolean declareColumnar(String signature) {
+    return false;
+  }
+
   boolean retractAll(JProlContext context, TermStruct clause);
 
   boolean retractA(JProlContext context, TermStruct clause);
@@ -0,0 +1,160 @@
+package com.igormaznitsa.jprol.kbase.inmemory;
+
+import com.igormaznitsa.jprol.data.NumericTerm;
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermList;
+import com.igormaznitsa.jprol.data.TermStruct;
+import com.igormaznitsa.jprol.kbase.inmemory.ClauseStore.ClauseEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hash index of clauses for one argument position of a predicate head.
+ * Every bucket keeps clauses in source order and also contains all clauses
+ * which have non-indexable (for instance variable) value in the position, so
+ * a bucket can be iterated as is. Buckets share clause entries with the predicate
+ * store so that a removed clause is marked only once.
+ */
+final class ArgumentIndex {
+
+  private static final Object KEY_NULL_LIST = new Object();
+  private static final Object KEY_LIST = new Object();
+
+  private final int argument;
+  private final Map<Object, ClauseStore> buckets = new ConcurrentHashMap<>();
+  private final ClauseStore wildcards = new ClauseStore();
+  private int modifications;
+
+  ArgumentIndex(final int argument) {
+    this.argument = argument;
+  }
+
+  ArgumentIndex(final int argument, final Iterable<ClauseEntry> entries) {
+    this(argument);
+    final Map<Object, List<ClauseEntry>> collected = new HashMap<>();
+    final List<ClauseEntry> collectedWildcards = new ArrayList<>();
+    for (final ClauseEntry entry : entries) {
+      final Object key = keyOf(entry.getItem().getRightHandSide(), argument);
+      if (key == null) {
+        collectedWildcards.add(entry);
+        collected.values().forEach(x -> x.add(entry));
+      } else {
+        collected.computeIfAbsent(key, k -> new ArrayList<>(collectedWildcards)).add(entry);
+      }
+    }
+    collected.forEach((k, v) -> this.buckets.put(k, makeStore(v)));
+    collectedWildcards.forEach(x -> this.wildcards.add(x, false));
+  }
+
+  private static ClauseStore makeStore(final Iterable<ClauseEntry> entries) {
+    final ClauseStore result = new ClauseStore();
+    entries.forEach(x -> result.add(x, false));
+    return result;
+  }
+
+  static Object keyOf(final Term head, final int argument) {
+    if (head instanceof TermStruct) {
+      final TermStruct struct = (TermStruct) head;
+      return argument < struct.getArity() ? keyOf(struct.getElement(argument).findNonVarOrSame()) : null;
+    } else {
+      return null;
+    }
+  }
+
+  static Object keyOf(final Term term) {
+    switch (term.getTermType()) {
+      case ATOM: {
+        if (term instanceof NumericTerm) {
+          return term.toNumber();
+        } else {
+          return term.getClass() == Term.class ? term.getText() : null;
+        }
+      }
+      case LIST: {
+        return ((TermList) term).isNullList() ? KEY_NULL_LIST : KEY_LIST;
+      }
+      case STRUCT: {
+        final TermStruct struct = (TermStruct) term;
+        return struct.getArity() == 0 ? struct.getText() : struct.getSignature();
+      }
+      default:
+        return null;
+    }
+  }
+
+  int getArgument() {
+    return this.argument;
+  }
+
+  int size() {
+    return this.buckets.size();
+  }
+
+  int getModifications() {
+    return this.modifications;
+  }
+
+  ClauseStore find(final Object key) {
+    final ClauseStore bucket = this.buckets.get(key);
+    return bucket == null ? this.wildcards : bucket;
+  }
+
+  void add(final ClauseEntry entry, final boolean asFirst, final long generation) {
+    this.modifications++;
+    final Object key = keyOf(entry.getItem().getRightHandSide(), this.argument);
+    if (key == null) {
+      this.wildcards.add(entry, asFirst);
+      this.buckets.values().forEach(x -> x.add(entry, asFirst));
+    } else {
+      final ClauseStore bucket = this.buckets.get(key);
+      if (bucket == null) {
+        final ClauseStore newBucket = new ClauseStore();
+        if (asFirst) {
+          newBucket.add(entry, false);
+        }
+        for (final ClauseEntry wildcard : this.wildcards.snapshot(generation)) {
+          newBucket.add(wildcard, false);
+        }
+        if (!asFirst) {
+          newBucket.add(entry, false);
+        }
+        this.buckets.put(key, newBucket);
+      } else {
+        bucket.add(entry, asFirst);
+      }
+    }
+  }
+
+  /**
+   * Notify that an entry has been marked as removed.
+   *
+   * @param entry removed entry, must not be null
+   */
+  void remove(final ClauseEntry entry) {
+    this.modifications++;
+    final Object key = keyOf(entry.getItem().getRightHandSide(), this.argument);
+    if (key == null) {
+      this.wildcards.onRemoved();
+      this.buckets.values().forEach(ClauseStore::onRemoved);
+    } else {
+      final ClauseStore bucket = this.buckets.get(key);
+      if (bucket != null) {
+        bucket.onRemoved();
+      }
+    }
+  }
+
+  /**
+   * Drop removed entries and buckets which contain only wildcards. Buckets are not dropped on
+   * removal because readers of earlier generations still can see removed entries in them.
+   */
+  void compact() {
+    this.buckets.values().removeIf(x -> x.size() == this.wildcards.size());
+    this.wildcards.compact();
+    this.buckets.values().forEach(ClauseStore::compact);
+  }
+}
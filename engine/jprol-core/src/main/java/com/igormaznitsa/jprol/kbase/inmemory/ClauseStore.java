@@ -0,0 +1,283 @@
+package com.igormaznitsa.jprol.kbase.inmemory;
+
+import com.igormaznitsa.jprol.kbase.inmemory.items.InMemoryItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Append only store of clause entries. Clauses added as first and as last are kept in two chunked
+ * arrays, chunks are never moved or changed below published size, so adding is amortized O(1) and
+ * a reader takes snapshot by one volatile read and iterates it without copying and locks. Removed
+ * entries are not deleted but marked by generation of removal (tombstone) and filtered out by
+ * snapshots made after it, tombstones are dropped by {@link #compact()}.
+ * Store is modified only under lock of its predicate.
+ */
+final class ClauseStore {
+
+  private static final int FIRST_CHUNK_SIZE = 8;
+  private static final int MAX_CHUNK_SIZE = 1024;
+
+  private volatile State state = State.EMPTY;
+
+  static Snapshot emptySnapshot() {
+    return new Snapshot(State.EMPTY, 0L);
+  }
+
+  private static Side append(final Side side, final ClauseEntry entry) {
+    ClauseEntry[][] chunks = side.chunks;
+    int chunkCount = side.chunkCount;
+    int lastFill = side.lastFill;
+    if (chunkCount == 0 || lastFill == chunks[chunkCount - 1].length) {
+      if (chunkCount == chunks.length) {
+        chunks = Arrays.copyOf(chunks, Math.max(4, chunks.length * 2));
+      }
+      final int size = chunkCount == 0 ? FIRST_CHUNK_SIZE : Math.min(MAX_CHUNK_SIZE, chunks[chunkCount - 1].length * 2);
+      chunks[chunkCount++] = new ClauseEntry[size];
+      lastFill = 0;
+    }
+    chunks[chunkCount - 1][lastFill++] = entry;
+    return new Side(chunks, chunkCount, lastFill);
+  }
+
+  private static Side appendChunk(final Side side, final List<ClauseEntry> entries) {
+    ClauseEntry[][] chunks = side.chunks;
+    if (side.chunkCount == chunks.length) {
+      chunks = Arrays.copyOf(chunks, Math.max(4, chunks.length * 2));
+    }
+    chunks[side.chunkCount] = entries.toArray(new ClauseEntry[0]);
+    return new Side(chunks, side.chunkCount + 1, entries.size());
+  }
+
+  int size() {
+    return this.state.live;
+  }
+
+  boolean isEmpty() {
+    return this.state.live == 0;
+  }
+
+  Snapshot snapshot(final long generation) {
+    return new Snapshot(this.state, generation);
+  }
+
+  void add(final ClauseEntry entry, final boolean asFirst) {
+    final State current = this.state;
+    this.state = asFirst
+        ? new State(append(current.front, entry), current.back, current.live + 1)
+        : new State(current.front, append(current.back, entry), current.live + 1);
+  }
+
+  /**
+   * Add entries as last ones, free space of the last chunk is filled and the rest of entries is
+   * placed into a new chunk of exact size.
+   *
+   * @param entries entries to add, must not be null
+   */
+  void addAll(final List<ClauseEntry> entries) {
+    final State current = this.state;
+    Side back = current.back;
+    int index = 0;
+    while (index < entries.size()
+        && back.chunkCount > 0
+        && back.lastFill < back.chunks[back.chunkCount - 1].length) {
+      back = append(back, entries.get(index++));
+    }
+    if (index < entries.size()) {
+      back = appendChunk(back, entries.subList(index, entries.size()));
+    }
+    this.state = new State(current.front, back, current.live + entries.size());
+  }
+
+  /**
+   * Notify that one of entries of the store has been marked as removed.
+   */
+  void onRemoved() {
+    final State current = this.state;
+    this.state = new State(current.front, current.back, current.live - 1);
+  }
+
+  /**
+   * Rebuild the store with only alive entries, snapshots made before keep their content.
+   */
+  void compact() {
+    Side back = Side.EMPTY;
+    int live = 0;
+    for (final ClauseEntry entry : new Snapshot(this.state, Long.MAX_VALUE - 1)) {
+      back = append(back, entry);
+      live++;
+    }
+    this.state = new State(Side.EMPTY, back, live);
+  }
+
+  /**
+   * Entry of a clause, shared by store of predicate and stores of its indexes.
+   */
+  static final class ClauseEntry {
+
+    private final InMemoryItem item;
+    private final long born;
+    private volatile long died = Long.MAX_VALUE;
+
+    ClauseEntry(final InMemoryItem item, final long born) {
+      this.item = item;
+      this.born = born;
+    }
+
+    InMemoryItem getItem() {
+      return this.item;
+    }
+
+    long getBorn() {
+      return this.born;
+    }
+
+    long getDied() {
+      return this.died;
+    }
+
+    boolean isAlive() {
+      return this.died == Long.MAX_VALUE;
+    }
+
+    void markDied(final long generation) {
+      this.died = generation;
+    }
+
+    boolean isVisible(final long generation) {
+      return this.born <= generation && generation < this.died;
+    }
+  }
+
+  private static final class Side {
+
+    private static final Side EMPTY = new Side(new ClauseEntry[0][], 0, 0);
+
+    private final ClauseEntry[][] chunks;
+    private final int chunkCount;
+    private final int lastFill;
+
+    private Side(final ClauseEntry[][] chunks, final int chunkCount, final int lastFill) {
+      this.chunks = chunks;
+      this.chunkCount = chunkCount;
+      this.lastFill = lastFill;
+    }
+
+    private int fill(final int chunk) {
+      return chunk == this.chunkCount - 1 ? this.lastFill : this.chunks[chunk].length;
+    }
+  }
+
+  private static final class State {
+
+    private static final State EMPTY = new State(Side.EMPTY, Side.EMPTY, 0);
+
+    private final Side front;
+    private final Side back;
+    private final int live;
+
+    private State(final Side front, final Side back, final int live) {
+      this.front = front;
+      this.back = back;
+      this.live = live;
+    }
+  }
+
+  /**
+   * Stable view of the store for a generation: entries added as first in reverse order of adding,
+   * then entries added as last, only entries alive in the generation are visible.
+   */
+  static final class Snapshot implements Iterable<ClauseEntry> {
+
+    private final State state;
+    private final long generation;
+
+    private Snapshot(final State state, final long generation) {
+      this.state = state;
+      this.generation = generation;
+    }
+
+    /**
+     * Number of alive entries when the snapshot was made, it can count entries not visible in the
+     * generation of the snapshot.
+     */
+    int size() {
+      return this.state.live;
+    }
+
+    boolean isEmpty() {
+      return this.state.live == 0;
+    }
+
+    long getGeneration() {
+      return this.generation;
+    }
+
+    List<InMemoryItem> toItems() {
+      final List<InMemoryItem> result = new ArrayList<>(this.state.live);
+      this.forEach(x -> result.add(x.getItem()));
+      return result;
+    }
+
+    @Override
+    public Iterator<ClauseEntry> iterator() {
+      return new Iterator<ClauseEntry>() {
+        private final Side front = state.front;
+        private final Side back = state.back;
+        private boolean inFront = true;
+        private int chunk = this.front.chunkCount - 1;
+        private int position = chunk < 0 ? -1 : this.front.fill(chunk) - 1;
+        private ClauseEntry next = this.findNext();
+
+        private ClauseEntry findNext() {
+          while (this.inFront) {
+            if (this.position < 0) {
+              if (--this.chunk < 0) {
+                this.inFront = false;
+                this.chunk = 0;
+                this.position = 0;
+                break;
+              }
+              this.position = this.front.chunks[this.chunk].length - 1;
+            } else {
+              final ClauseEntry entry = this.front.chunks[this.chunk][this.position--];
+              if (entry.isVisible(generation)) {
+                return entry;
+              }
+            }
+          }
+          while (this.chunk < this.back.chunkCount) {
+            if (this.position >= this.back.fill(this.chunk)) {
+              this.chunk++;
+              this.position = 0;
+            } else {
+              final ClauseEntry entry = this.back.chunks[this.chunk][this.position++];
+              if (entry.isVisible(generation)) {
+                return entry;
+              }
+            }
+          }
+          return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+          return this.next != null;
+        }
+
+        @Override
+        public ClauseEntry next() {
+          final ClauseEntry result = this.next;
+          if (result == null) {
+            throw new NoSuchElementException();
+          }
+          this.next = this.findNext();
+          return result;
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,555 @@
+package com.igormaznitsa.jprol.kbase.inmemory;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermDouble;
+import com.igormaznitsa.jprol.data.TermLong;
+import com.igormaznitsa.jprol.data.TermStruct;
+import com.igormaznitsa.jprol.data.TermType;
+import com.igormaznitsa.jprol.data.Terms;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ground facts of a predicate kept in columns of primitive values: integers, floats and ids of
+ * atoms. Type of every column is defined by the first fact, facts are materialized only for found
+ * rows. A column gets hash index just in time, on the first search with bound value in the column.
+ * Rows are only appended, removed rows are marked by generation of removal and dropped by
+ * compaction into new arrays, so a snapshot iterates its arrays without locks.
+ * Table is modified only under lock of its predicate.
+ */
+final class ColumnarTable {
+
+  private static final int MIN_CAPACITY = 16;
+
+  private final Term functor;
+  private final int arity;
+  private final Map<String, Integer> atomIds = new ConcurrentHashMap<>();
+  private volatile Data data;
+
+  ColumnarTable(final Term functor, final int arity) {
+    this.functor = functor;
+    this.arity = arity;
+    this.data = new Data(null, new Object[arity], new long[0], new Term[MIN_CAPACITY], 0, 0,
+        new AtomicReferenceArray<>(arity));
+  }
+
+  private static ColumnType typeOf(final Term term) {
+    if (term instanceof TermLong) {
+      return ColumnType.LONG;
+    } else if (term instanceof TermDouble) {
+      return ColumnType.DOUBLE;
+    } else if (term.getTermType() == TermType.ATOM && term.getClass() == Term.class) {
+      return ColumnType.ATOM;
+    } else {
+      return null;
+    }
+  }
+
+  private static Object makeColumn(final ColumnType type, final int capacity) {
+    switch (type) {
+      case LONG:
+        return new long[capacity];
+      case DOUBLE:
+        return new double[capacity];
+      default:
+        return new int[capacity];
+    }
+  }
+
+  private static Object copyColumn(final Object column, final int capacity) {
+    if (column instanceof long[]) {
+      return Arrays.copyOf((long[]) column, capacity);
+    } else if (column instanceof double[]) {
+      return Arrays.copyOf((double[]) column, capacity);
+    } else {
+      return Arrays.copyOf((int[]) column, capacity);
+    }
+  }
+
+  private static long keyAt(final Object column, final int row) {
+    if (column instanceof long[]) {
+      return ((long[]) column)[row];
+    } else if (column instanceof double[]) {
+      return Double.doubleToLongBits(((double[]) column)[row]);
+    } else {
+      return ((int[]) column)[row];
+    }
+  }
+
+  int size() {
+    return this.data.live;
+  }
+
+  int getRemoved() {
+    final Data current = this.data;
+    return current.rowCount - current.live;
+  }
+
+  Snapshot snapshot(final long generation) {
+    return new Snapshot(this.data, generation);
+  }
+
+  /**
+   * Check that fact can be kept in the table.
+   *
+   * @param fact fact with functor of the table, must not be null
+   * @return true if all arguments of the fact are values of column types
+   */
+  boolean fits(final TermStruct fact) {
+    if (fact.getArity() != this.arity || fact.isClause()) {
+      return false;
+    }
+    final ColumnType[] types = this.data.types;
+    for (int i = 0; i < this.arity; i++) {
+      final ColumnType type = typeOf(fact.getElement(i).findNonVarOrSame());
+      if (type == null || (types != null && types[i] != type)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  synchronized void add(final TermStruct fact) {
+    final Data current = this.ensureCapacity(fact, 1);
+    this.write(current, current.rowCount, fact);
+    this.data = current.withRows(current.rowCount + 1, current.live + 1);
+  }
+
+  synchronized void addAll(final List<TermStruct> facts) {
+    if (facts.isEmpty()) {
+      return;
+    }
+    final Data current = this.ensureCapacity(facts.get(0), facts.size());
+    int row = current.rowCount;
+    for (final TermStruct fact : facts) {
+      this.write(current, row++, fact);
+    }
+    this.data = current.withRows(row, current.live + facts.size());
+  }
+
+  private Data ensureCapacity(final TermStruct fact, final int rows) {
+    Data current = this.data;
+    ColumnType[] types = current.types;
+    Object[] columns = current.columns;
+    if (types == null) {
+      types = new ColumnType[this.arity];
+      for (int i = 0; i < this.arity; i++) {
+        types[i] = typeOf(fact.getElement(i).findNonVarOrSame());
+        columns[i] = makeColumn(types[i], MIN_CAPACITY);
+      }
+    }
+    final int required = current.rowCount + rows;
+    if (required > current.died.length) {
+      final int capacity = Math.max(MIN_CAPACITY, Math.max(required, current.died.length * 2));
+      final Object[] newColumns = new Object[this.arity];
+      for (int i = 0; i < this.arity; i++) {
+        newColumns[i] = copyColumn(columns[i], capacity);
+      }
+      columns = newColumns;
+      final long[] died = Arrays.copyOf(current.died, capacity);
+      Arrays.fill(died, current.rowCount, capacity, Long.MAX_VALUE);
+      current = new Data(types, columns, died, current.atoms, current.rowCount, current.live, current.indexes);
+    } else if (current.types == null) {
+      current = new Data(types, columns, current.died, current.atoms, current.rowCount, current.live, current.indexes);
+    }
+    return current;
+  }
+
+  private void write(final Data target, final int row, final TermStruct fact) {
+    for (int i = 0; i < this.arity; i++) {
+      final Term value = fact.getElement(i).findNonVarOrSame();
+      final Object column = target.columns[i];
+      switch (target.types[i]) {
+        case LONG:
+          ((long[]) column)[row] = value.toNumber().longValue();
+          break;
+        case DOUBLE:
+          ((double[]) column)[row] = value.toNumber().doubleValue();
+          break;
+        default:
+          ((int[]) column)[row] = this.internAtom(target, value);
+          break;
+      }
+      final ColumnIndex index = target.indexes.get(i);
+      if (index != null) {
+        index.add(keyAt(column, row), row);
+      }
+    }
+  }
+
+  private int internAtom(final Data target, final Term atom) {
+    final Integer found = this.atomIds.get(atom.getText());
+    if (found != null) {
+      return found;
+    }
+    final int id = this.atomIds.size();
+    Term[] atoms = target.atoms;
+    if (id == atoms.length) {
+      atoms = Arrays.copyOf(atoms, atoms.length * 2);
+      target.atoms = atoms;
+    }
+    atoms[id] = atom;
+    this.atomIds.put(atom.getText(), id);
+    return id;
+  }
+
+  /**
+   * Mark row as removed.
+   *
+   * @param row        row index in current data
+   * @param generation generation of removal
+   * @return true if the row was alive
+   */
+  synchronized boolean remove(final int row, final long generation) {
+    final Data current = this.data;
+    if (current.died[row] != Long.MAX_VALUE) {
+      return false;
+    }
+    current.died[row] = generation;
+    this.data = current.withRows(current.rowCount, current.live - 1);
+    return true;
+  }
+
+  /**
+   * Move alive rows into new arrays, indexes are built again on demand.
+   */
+  synchronized void compact() {
+    final Data current = this.data;
+    if (current.types == null) {
+      return;
+    }
+    final int capacity = Math.max(MIN_CAPACITY, current.live);
+    final Object[] columns = new Object[this.arity];
+    for (int i = 0; i < this.arity; i++) {
+      columns[i] = makeColumn(current.types[i], capacity);
+    }
+    final long[] died = new long[capacity];
+    Arrays.fill(died, Long.MAX_VALUE);
+    int target = 0;
+    for (int row = 0; row < current.rowCount; row++) {
+      if (current.died[row] == Long.MAX_VALUE) {
+        for (int i = 0; i < this.arity; i++) {
+          System.arraycopy(current.columns[i], row, columns[i], target, 1);
+        }
+        target++;
+      }
+    }
+    this.data = new Data(current.types, columns, died, current.atoms, target, target,
+        new AtomicReferenceArray<>(this.arity));
+  }
+
+  ColumnarTable makeCopy() {
+    final ColumnarTable result = new ColumnarTable(this.functor, this.arity);
+    final Snapshot snapshot = this.snapshot(Long.MAX_VALUE - 1);
+    final PrimitiveIterator.OfInt rows = snapshot.rows(null);
+    while (rows.hasNext()) {
+      result.add(snapshot.makeFact(rows.nextInt()));
+    }
+    return result;
+  }
+
+  private synchronized ColumnIndex buildIndex(final Data target, final int column) {
+    ColumnIndex result = target.indexes.get(column);
+    if (result == null) {
+      // index shared with current data is filled by writers after publishing, index for data
+      // replaced by compaction is made only for the snapshot
+      final Data current = this.data;
+      result = new ColumnIndex();
+      if (current.indexes == target.indexes) {
+        for (int row = 0; row < current.rowCount; row++) {
+          result.add(keyAt(current.columns[column], row), row);
+        }
+        target.indexes.set(column, result);
+      } else {
+        for (int row = 0; row < target.rowCount; row++) {
+          result.add(keyAt(target.columns[column], row), row);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get numbers of indexed columns.
+   *
+   * @return map of indexed columns to number of distinct values
+   */
+  Map<Integer, Integer> getIndexedColumns() {
+    final Data current = this.data;
+    final Map<Integer, Integer> result = new LinkedHashMap<>();
+    for (int i = 0; i < this.arity; i++) {
+      final ColumnIndex index = current.indexes.get(i);
+      if (index != null) {
+        result.put(i, index.buckets.size());
+      }
+    }
+    return result;
+  }
+
+  enum ColumnType {
+    LONG,
+    DOUBLE,
+    ATOM
+  }
+
+  private static final class Bucket {
+
+    private final int[] rows;
+    private final int size;
+
+    private Bucket(final int[] rows, final int size) {
+      this.rows = rows;
+      this.size = size;
+    }
+  }
+
+  private static final class ColumnIndex {
+
+    private final Map<Long, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private void add(final long key, final int row) {
+      final Bucket bucket = this.buckets.get(key);
+      if (bucket == null) {
+        final int[] rows = new int[4];
+        rows[0] = row;
+        this.buckets.put(key, new Bucket(rows, 1));
+      } else {
+        int[] rows = bucket.rows;
+        if (bucket.size == rows.length) {
+          rows = Arrays.copyOf(rows, rows.length * 2);
+        }
+        rows[bucket.size] = row;
+        this.buckets.put(key, new Bucket(rows, bucket.size + 1));
+      }
+    }
+  }
+
+  private static final class Data {
+
+    private final ColumnType[] types;
+    private final Object[] columns;
+    private final long[] died;
+    private final int rowCount;
+    private final int live;
+    private final AtomicReferenceArray<ColumnIndex> indexes;
+    private volatile Term[] atoms;
+
+    private Data(
+        final ColumnType[] types,
+        final Object[] columns,
+        final long[] died,
+        final Term[] atoms,
+        final int rowCount,
+        final int live,
+        final AtomicReferenceArray<ColumnIndex> indexes
+    ) {
+      this.types = types;
+      this.columns = columns;
+      this.died = died;
+      this.atoms = atoms;
+      this.rowCount = rowCount;
+      this.live = live;
+      this.indexes = indexes;
+    }
+
+    private Data withRows(final int rowCount, final int live) {
+      return new Data(this.types, this.columns, this.died, this.atoms, rowCount, live, this.indexes);
+    }
+  }
+
+  /**
+   * Stable view of the table for a generation.
+   */
+  final class Snapshot {
+
+    private final Data data;
+    private final long generation;
+
+    private Snapshot(final Data data, final long generation) {
+      this.data = data;
+      this.generation = generation;
+    }
+
+    int size() {
+      return this.data.live;
+    }
+
+    private boolean isVisible(final int row) {
+      return this.generation < this.data.died[row];
+    }
+
+    /**
+     * Make fact for a row.
+     *
+     * @param row row of the snapshot
+     * @return new fact, must not be null
+     */
+    TermStruct makeFact(final int row) {
+      final Term[] arguments = new Term[arity];
+      for (int i = 0; i < arity; i++) {
+        final Object column = this.data.columns[i];
+        switch (this.data.types[i]) {
+          case LONG:
+            arguments[i] = Terms.newLong(((long[]) column)[row]);
+            break;
+          case DOUBLE:
+            arguments[i] = Terms.newDouble(((double[]) column)[row]);
+            break;
+          default:
+            arguments[i] = this.data.atoms[((int[]) column)[row]];
+            break;
+        }
+      }
+      return arguments.length == 0 ? Terms.newStruct(functor) : Terms.newStruct(functor, arguments);
+    }
+
+    /**
+     * Find visible facts which can match template.
+     *
+     * @param template template, can be null to iterate all facts
+     * @return iterator of new facts
+     */
+    Iterator<TermStruct> facts(final TermStruct template) {
+      final PrimitiveIterator.OfInt rows = this.rows(template);
+      return new Iterator<TermStruct>() {
+        @Override
+        public boolean hasNext() {
+          return rows.hasNext();
+        }
+
+        @Override
+        public TermStruct next() {
+          return makeFact(rows.nextInt());
+        }
+      };
+    }
+
+    /**
+     * Find visible rows which can match template, values of bound arguments are compared with
+     * columns without making facts.
+     *
+     * @param template template, can be null to iterate all rows
+     * @return iterator of rows in order of adding
+     */
+    PrimitiveIterator.OfInt rows(final TermStruct template) {
+      final long[] keys = new long[arity];
+      final boolean[] bound = new boolean[arity];
+      int indexedColumn = -1;
+      int variables = 0;
+      if (template != null && this.data.types != null) {
+        for (int i = 0; i < arity; i++) {
+          final Term value = template.getElement(i).findNonVarOrSame();
+          if (value.getTermType() == TermType.VAR) {
+            variables++;
+            continue;
+          }
+          if (typeOf(value) != this.data.types[i]) {
+            return EmptyRows.INSTANCE;
+          }
+          switch (this.data.types[i]) {
+            case LONG:
+              keys[i] = value.toNumber().longValue();
+              break;
+            case DOUBLE:
+              keys[i] = Double.doubleToLongBits(value.toNumber().doubleValue());
+              break;
+            default: {
+              final Integer id = atomIds.get(value.getText());
+              if (id == null) {
+                return EmptyRows.INSTANCE;
+              }
+              keys[i] = id;
+            }
+            break;
+          }
+          bound[i] = true;
+          if (indexedColumn < 0) {
+            indexedColumn = i;
+          }
+        }
+      }
+
+      final int[] candidates;
+      final int candidateCount;
+      if (indexedColumn < 0) {
+        candidates = null;
+        candidateCount = this.data.rowCount;
+      } else {
+        ColumnIndex index = this.data.indexes.get(indexedColumn);
+        if (index == null) {
+          index = buildIndex(this.data, indexedColumn);
+        }
+        final Bucket bucket = index.buckets.get(keys[indexedColumn]);
+        if (bucket == null) {
+          return EmptyRows.INSTANCE;
+        }
+        candidates = bucket.rows;
+        candidateCount = bucket.size;
+      }
+      final boolean checkUnification = variables > 1;
+
+      return new PrimitiveIterator.OfInt() {
+        private int position;
+        private int next = this.findNext();
+
+        private int findNext() {
+          while (this.position < candidateCount) {
+            final int row = candidates == null ? this.position : candidates[this.position];
+            this.position++;
+            if (row < data.rowCount && isVisible(row) && this.matches(row)) {
+              return row;
+            }
+          }
+          return -1;
+        }
+
+        private boolean matches(final int row) {
+          for (int i = 0; i < arity; i++) {
+            if (bound[i] && keyAt(data.columns[i], row) != keys[i]) {
+              return false;
+            }
+          }
+          return !checkUnification || template.dryUnifyTo(makeFact(row));
+        }
+
+        @Override
+        public boolean hasNext() {
+          return this.next >= 0;
+        }
+
+        @Override
+        public int nextInt() {
+          if (this.next < 0) {
+            throw new NoSuchElementException();
+          }
+          final int result = this.next;
+          this.next = this.findNext();
+          return result;
+        }
+      };
+    }
+  }
+
+  private static final class EmptyRows implements PrimitiveIterator.OfInt {
+
+    private static final EmptyRows INSTANCE = new EmptyRows();
+
+    @Override
+    public boolean hasNext() {
+      return false;
+    }
+
+    @Override
+    public int nextInt() {
+      throw new NoSuchElementException();
+    }
+  }
+}
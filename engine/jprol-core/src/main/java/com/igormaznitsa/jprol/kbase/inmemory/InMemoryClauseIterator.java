@@ -20,41 +20,56 @@ import com.igormaznitsa.jprol.data.Term;
 import com.igormaznitsa.jprol.data.TermStruct;
 import com.igormaznitsa.jprol.data.Terms;
 import com.igormaznitsa.jprol.kbase.IteratorType;
+import com.igormaznitsa.jprol.kbase.inmemory.ClauseStore.ClauseEntry;
+import com.igormaznitsa.jprol.kbase.inmemory.items.HeadShape;
 import com.igormaznitsa.jprol.kbase.inmemory.items.InMemoryItem;
 import com.igormaznitsa.jprol.utils.CloseableIterator;
 
 import java.util.Iterator;
-import java.util.List;
 import java.util.NoSuchElementException;
 
 public final class InMemoryClauseIterator implements CloseableIterator<TermStruct> {
 
-  private final Iterator<InMemoryItem> iterator;
+  private final Iterator<ClauseEntry> iterator;
   private final Term search;
+  private final HeadShape searchShape;
   private final IteratorType type;
-  private InMemoryItem next;
+  private ClauseEntry next;
 
   InMemoryClauseIterator(
       final IteratorType type,
-      final List<InMemoryItem> list,
+      final Iterable<ClauseEntry> list,
       final TermStruct search
   ) {
     this(type, list, search.makeClone());
   }
 
+  /**
+   * Make iterator which uses the template as is, the template must not be changed during
+   * iteration.
+   */
+  static InMemoryClauseIterator forTemplate(
+      final IteratorType type,
+      final Iterable<ClauseEntry> list,
+      final TermStruct template
+  ) {
+    return new InMemoryClauseIterator(type, list, (Term) template);
+  }
+
   InMemoryClauseIterator(
       final IteratorType type,
-      final List<InMemoryItem> list
+      final Iterable<ClauseEntry> list
   ) {
     this(type, list, Terms.newVar());
   }
 
   private InMemoryClauseIterator(
       final IteratorType type,
-      final List<InMemoryItem> list,
+      final Iterable<ClauseEntry> list,
       final Term search
   ) {
     this.search = search;
+    this.searchShape = HeadShape.of(search);
     this.type = type;
     this.iterator = list.iterator();
     this.next = findNext();
@@ -74,28 +89,32 @@ public final class InMemoryClauseIterator implements CloseableIterator<TermStruc
 
   }
 
-  private InMemoryItem findNext() {
+  private ClauseEntry findNext() {
 
-    InMemoryItem result = null;
+    ClauseEntry result = null;
 
     while (this.iterator.hasNext() && result == null) {
-      final InMemoryItem nextItem = this.iterator.next();
+      final ClauseEntry nextEntry = this.iterator.next();
+      final InMemoryItem nextItem = nextEntry.getItem();
+      if (!this.searchShape.mayMatch(nextItem.getHeadShape())) {
+        continue;
+      }
         switch (this.type) {
           case ANY: {
             if (nextItem.matches(this.search)) {
-              result = nextItem;
+              result = nextEntry;
             }
           }
           break;
           case FACTS: {
             if (nextItem.isFact() && nextItem.matches(this.search)) {
-              result = nextItem;
+              result = nextEntry;
             }
           }
           break;
           case RULES: {
             if (nextItem.isRule() && nextItem.matches(this.search)) {
-              result = nextItem;
+              result = nextEntry;
             }
           }
           break;
@@ -106,15 +125,33 @@ public final class InMemoryClauseIterator implements CloseableIterator<TermStruc
     return result;
   }
 
-  InMemoryItem nextItem() {
+  ClauseEntry nextEntry() {
     if (this.next == null) {
       throw new NoSuchElementException();
     }
-    final InMemoryItem result = this.next;
+    final ClauseEntry result = this.next;
     this.next = findNext();
     return result;
   }
 
+  Iterator<ClauseEntry> entries() {
+    return new Iterator<ClauseEntry>() {
+      @Override
+      public boolean hasNext() {
+        return InMemoryClauseIterator.this.hasNext();
+      }
+
+      @Override
+      public ClauseEntry next() {
+        return nextEntry();
+      }
+    };
+  }
+
+  InMemoryItem nextItem() {
+    return this.nextEntry().getItem();
+  }
+
   @Override
   public TermStruct next() {
     final InMemoryItem item = this.nextItem();
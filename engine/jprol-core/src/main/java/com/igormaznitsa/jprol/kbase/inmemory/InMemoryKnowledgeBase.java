@@ -21,8 +21,10 @@ import com.igormaznitsa.jprol.exceptions.ProlInstantiationErrorException;
 import com.igormaznitsa.jprol.exceptions.ProlKnowledgeBaseException;
 import com.igormaznitsa.jprol.kbase.IteratorType;
 import com.igormaznitsa.jprol.kbase.KnowledgeBase;
+import com.igormaznitsa.jprol.kbase.inmemory.ClauseStore.ClauseEntry;
 import com.igormaznitsa.jprol.kbase.inmemory.items.InMemoryItem;
 import com.igormaznitsa.jprol.logic.JProlContext;
+import com.igormaznitsa.jprol.logic.compiler.CompiledClause;
 import com.igormaznitsa.jprol.logic.triggers.JProlTriggerType;
 import com.igormaznitsa.jprol.utils.CloseableIterator;
 import com.igormaznitsa.jprol.utils.OperatorIterator;
@@ -34,49 +36,102 @@ import java.io.PrintWriter;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.igormaznitsa.jprol.data.TermType.ATOM;
 import static com.igormaznitsa.jprol.data.TermType.VAR;
 import static com.igormaznitsa.jprol.data.Terms.newStruct;
 import static com.igormaznitsa.jprol.utils.Utils.makeCloseableIterator;
-import static java.lang.Integer.parseInt;
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Knowledge base keeping clauses in memory. Copies are snapshots which share tables and predicates
+ * with the original base, so a copy is made in constant time and a table or a predicate is copied
+ * by a base only before its first modification. Modifications are serialized by the base monitor,
+ * reading is lock free.
+ */
 public final class InMemoryKnowledgeBase implements KnowledgeBase {
 
   private final String knowledgeBaseId;
-  private final Map<String, TermOperatorContainer> operatorTable = new ConcurrentHashMap<>();
-  private final Map<String, List<InMemoryItem>> predicateTable = new ConcurrentHashMap<>();
+  private volatile Map<String, TermOperatorContainer> operatorTable;
+  private volatile Map<Functor, InMemoryPredicate> predicateTable;
+  private boolean operatorTableShared;
+  private boolean predicateTableShared;
+  private Object owner = new Object();
 
   public InMemoryKnowledgeBase(final String id) {
     this.knowledgeBaseId = requireNonNull(id, "Id must not be null");
+    this.operatorTable = new ConcurrentHashMap<>();
+    this.predicateTable = new ConcurrentHashMap<>();
   }
 
   private InMemoryKnowledgeBase(final String baseId, final InMemoryKnowledgeBase etalon) {
     this.knowledgeBaseId = baseId;
-    for (final Entry<String, TermOperatorContainer> item : etalon.operatorTable.entrySet()) {
-      operatorTable.put(item.getKey(), item.getValue().makeCopy());
+    this.operatorTable = etalon.operatorTable;
+    this.predicateTable = etalon.predicateTable;
+    this.operatorTableShared = true;
+    this.predicateTableShared = true;
+  }
+
+  private Map<String, TermOperatorContainer> writableOperatorTable() {
+    if (this.operatorTableShared) {
+      final Map<String, TermOperatorContainer> copy = new ConcurrentHashMap<>();
+      for (final Entry<String, TermOperatorContainer> item : this.operatorTable.entrySet()) {
+        copy.put(item.getKey(), item.getValue().makeCopy());
+      }
+      this.operatorTable = copy;
+      this.operatorTableShared = false;
+    }
+    return this.operatorTable;
+  }
+
+  private Map<Functor, InMemoryPredicate> writablePredicateTable() {
+    if (this.predicateTableShared) {
+      this.predicateTable = new ConcurrentHashMap<>(this.predicateTable);
+      this.predicateTableShared = false;
     }
-    etalon.predicateTable.forEach((key, value) -> this.predicateTable.put(key, makeClone(value)));
+    return this.predicateTable;
   }
 
-  private static List<InMemoryItem> makeClone(final List<InMemoryItem> src) {
-    return new CopyOnWriteArrayList<>(src);
+  private InMemoryPredicate writablePredicate(final Functor key) {
+    InMemoryPredicate result = this.predicateTable.get(key);
+    if (result != null && !result.isOwnedBy(this.owner)) {
+      result = result.makeCopy(this.owner);
+      this.writablePredicateTable().put(key, result);
+    }
+    return result;
   }
 
   public long printStateAsSrc(final PrintWriter writer) {
     return this.predicateTable.entrySet().stream()
-        .peek(e -> writer.println(String.format("%n%% signature '%s'", e.getKey())))
-        .flatMap(e -> e.getValue().stream())
+        .peek(e -> writer.println(String.format("%n%% signature '%s'", e.getKey().getSignature())))
+        .flatMap(e -> e.getValue().getClauses().stream())
         .peek(i -> writer.println(String.format("%s.", i.getClause().toSrcString())))
         .count();
   }
 
   public Map<String, List<InMemoryItem>> getStorage() {
-    return Collections.unmodifiableMap(this.predicateTable);
+    final Map<String, List<InMemoryItem>> result = new LinkedHashMap<>();
+    this.predicateTable.forEach((key, value) -> result.put(key.getSignature(), Collections.unmodifiableList(value.getClauses())));
+    return Collections.unmodifiableMap(result);
+  }
+
+  @Override
+  public Map<String, Integer> countClauses() {
+    final Map<String, Integer> result = new LinkedHashMap<>();
+    this.predicateTable.forEach((key, value) -> result.put(key.getSignature(), value.size()));
+    return result;
+  }
+
+  InMemoryPredicate findPredicate(final String signature) {
+    final Functor key = Functor.fromSignature(signature);
+    return key == null ? null : this.predicateTable.get(key);
+  }
+
+  public Optional<PredicateIndexInfo> findIndexInfo(final String signature) {
+    return Optional.ofNullable(this.findPredicate(signature)).map(x -> x.makeIndexInfo(signature));
   }
 
   @Override
@@ -85,9 +140,9 @@ public final class InMemoryKnowledgeBase implements KnowledgeBase {
   }
 
   @Override
-  public boolean removeOperator(final String name, final OpAssoc type) {
-    TermOperatorContainer opContainer;
-    opContainer = this.operatorTable.get(name);
+  public synchronized boolean removeOperator(final String name, final OpAssoc type) {
+    final TermOperatorContainer opContainer =
+        this.operatorTable.containsKey(name) ? this.writableOperatorTable().get(name) : null;
 
     boolean result = false;
 
@@ -104,13 +159,16 @@ public final class InMemoryKnowledgeBase implements KnowledgeBase {
       throw new SecurityException("Attemption to override a system operator [" + operator.getText() + ']');
     }
 
-    TermOperatorContainer list = this.operatorTable.get(operatorName);
-    if (list == null) {
-      list = new TermOperatorContainer(operator);
-      this.operatorTable.put(operatorName, list);
-    } else {
-      if (!list.setOperator(operator)) {
-        throw new SecurityException("Such or a compatible operator is already presented [" + operatorName + ']');
+    synchronized (this) {
+      final Map<String, TermOperatorContainer> table = this.writableOperatorTable();
+      TermOperatorContainer list = table.get(operatorName);
+      if (list == null) {
+        list = new TermOperatorContainer(operator);
+        table.put(operatorName, list);
+      } else {
+        if (!list.setOperator(operator)) {
+          throw new SecurityException("Such or a compatible operator is already presented [" + operatorName + ']');
+        }
       }
     }
   }
@@ -151,7 +209,7 @@ public final class InMemoryKnowledgeBase implements KnowledgeBase {
 
   private boolean assertClause(final JProlContext context, final TermStruct clause, final boolean asFirst) {
     try {
-      final String uid;
+      final Functor uid;
       if (clause.isClause()) {
         Term leftPart = clause.getElement(0).findNonVarOrSame();
         final Term rightPart = clause.getArity() == 2 ? clause.getElement(1).findNonVarOrSame() : null;
@@ -170,17 +228,24 @@ public final class InMemoryKnowledgeBase implements KnowledgeBase {
           leftPart = newStruct(leftPart);
           clause.setElement(0, leftPart);
         }
-        uid = leftPart.getSignature();
+        if (!(leftPart instanceof TermStruct)) {
+          throw new IllegalArgumentException("Clause head must be callable");
+        }
+        uid = ((TermStruct) leftPart).getFunctorKey();
       } else {
-        uid = clause.getSignature();
+        uid = clause.getFunctorKey();
       }
 
-      final List<InMemoryItem> list = this.predicateTable.computeIfAbsent(uid, x -> new CopyOnWriteArrayList<>());
-      if (asFirst) {
-        list.add(0, InMemoryItem.fromClause(clause));
-      } else {
-        list.add(InMemoryItem.fromClause(clause));
+      final InMemoryItem item = InMemoryItem.fromClause(clause);
+      synchronized (this) {
+        InMemoryPredicate predicate = this.writablePredicate(uid);
+        if (predicate == null) {
+          predicate = new InMemoryPredicate(this.owner, item.getRightHandSide());
+          this.writablePredicateTable().put(uid, predicate);
+        }
+        predicate.add(item, asFirst);
       }
+      context.getMetrics().onAssert();
       // notify triggers if they are presented
       if (context.hasRegisteredTriggersForSignature(uid, JProlTriggerType.TRIGGER_ASSERT)) {
         context.notifyTriggersForSignature(uid, JProlTriggerType.TRIGGER_ASSERT);
@@ -199,26 +264,82 @@ public final class InMemoryKnowledgeBase implements KnowledgeBase {
       final TermStruct template,
       final Consumer<String> unknownPredicateConsumer
   ) {
-    final String uid = template.getSignature();
-    final List<InMemoryItem> list = this.predicateTable.get(uid);
-    if (list == null) {
-      unknownPredicateConsumer.accept(uid);
+    final Functor uid = template.getFunctorKey();
+    final InMemoryPredicate predicate = this.predicateTable.get(uid);
+    if (predicate == null) {
+      unknownPredicateConsumer.accept(uid.getSignature());
+      return new InMemoryClauseIterator(type, ClauseStore.emptySnapshot(), template);
     }
-    return new InMemoryClauseIterator(type, list == null ? Collections.emptyList() : list, template);
+    return predicate.view(template,
+        x -> new InMemoryClauseIterator(type, x, template),
+        x -> makeCloseableIterator(type == IteratorType.RULES
+            ? Collections.emptyIterator()
+            : x.facts((TermStruct) template.makeClone()), () -> {
+        }));
+  }
+
+  @Override
+  public CloseableIterator<TermStruct> iterateShared(
+      final TermStruct template,
+      final Consumer<String> unknownPredicateConsumer
+  ) {
+    final Functor uid = template.getFunctorKey();
+    final InMemoryPredicate predicate = this.predicateTable.get(uid);
+    if (predicate == null) {
+      unknownPredicateConsumer.accept(uid.getSignature());
+      return makeCloseableIterator(Collections.emptyIterator(), () -> {
+      });
+    }
+    return predicate.view(template,
+        x -> iterateItems(x, template, InMemoryItem::getClause),
+        x -> makeCloseableIterator(x.facts(template), () -> {
+        }));
+  }
+
+  @Override
+  public CloseableIterator<CompiledClause> iterateCompiled(
+      final TermStruct template,
+      final Consumer<String> unknownPredicateConsumer
+  ) {
+    final Functor uid = template.getFunctorKey();
+    final InMemoryPredicate predicate = this.predicateTable.get(uid);
+    if (predicate == null) {
+      unknownPredicateConsumer.accept(uid.getSignature());
+      return makeCloseableIterator(Collections.emptyIterator(), () -> {
+      });
+    }
+    // facts of columnar table are not compiled, they are provided by iterateShared
+    return predicate.view(template, x -> iterateItems(x, template, InMemoryItem::getCompiledClause), x -> null);
+  }
+
+  private static <T> CloseableIterator<T> iterateItems(
+      final ClauseStore.Snapshot candidates,
+      final TermStruct template,
+      final Function<InMemoryItem, T> mapper
+  ) {
+    final InMemoryClauseIterator iterator = InMemoryClauseIterator.forTemplate(IteratorType.ANY, candidates, template);
+    return makeCloseableIterator(new Iterator<T>() {
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public T next() {
+        return mapper.apply(iterator.nextItem());
+      }
+    }, iterator::close);
   }
 
   @Override
   public CloseableIterator<TermStruct> iterateSignatures(final TermStruct indicator) {
     return makeCloseableIterator(this.predicateTable.keySet()
         .stream()
-        .map(key -> {
-          final int index = key.lastIndexOf('/');
-          return newStruct(Utils.SIGNATURE_OPERATOR,
-              new Term[] {
-                  Terms.newAtom(key.substring(0, index)),
-                  Terms.newLong(parseInt(key.substring(index + 1)))
-              });
-        })
+        .map(key -> newStruct(Utils.SIGNATURE_OPERATOR,
+            new Term[] {
+                key.getAtom(),
+                Terms.newLong(key.getArity())
+            }))
         .filter(indicator::dryUnifyTo)
         .collect(Collectors.toList()).iterator(), () -> {
     });
@@ -228,30 +349,34 @@ public final class InMemoryKnowledgeBase implements KnowledgeBase {
   public CloseableIterator<TermStruct> iterate(
       final String signature,
       final Consumer<String> unknownPredicateConsumer) {
-    final List<InMemoryItem> list = this.predicateTable.get(signature);
+    final Functor key = Functor.fromSignature(signature);
+    final InMemoryPredicate predicate = key == null ? null : this.predicateTable.get(key);
 
-    if (list == null) {
+    if (predicate == null) {
       unknownPredicateConsumer.accept(signature);
       return makeCloseableIterator(Collections.emptyIterator(), () -> {
       });
     } else {
-      final Iterator<InMemoryItem> items = list.iterator();
-      return new CloseableIterator<TermStruct>() {
-        @Override
-        public void close() {
+      return predicate.view(null, x -> {
+        final Iterator<ClauseEntry> items = x.iterator();
+        return new CloseableIterator<TermStruct>() {
+          @Override
+          public void close() {
 
-        }
+          }
 
-        @Override
-        public boolean hasNext() {
-          return items.hasNext();
-        }
+          @Override
+          public boolean hasNext() {
+            return items.hasNext();
+          }
 
-        @Override
-        public TermStruct next() {
-          return items.next().getClause();
-        }
-      };
+          @Override
+          public TermStruct next() {
+            return items.next().getItem().getClause();
+          }
+        };
+      }, x -> makeCloseableIterator(x.facts(null), () -> {
+      }));
     }
   }
 
@@ -266,6 +391,63 @@ public final class InMemoryKnowledgeBase implements KnowledgeBase {
     return assertClause(context, clause, true);
   }
 
+  /**
+   * Add facts in one pass: clause items are made without checks made for usual clauses, the
+   * predicate and its indexes are updated by one modification and triggers are notified once.
+   */
+  @Override
+  public long bulkLoad(final JProlContext context, final String signature, final Iterator<Term[]> rows) {
+    final Functor uid = Functor.fromSignature(Utils.normalizeSignature(signature));
+    if (uid == null) {
+      throw new IllegalArgumentException("Wrong signature format '" + signature + '\'');
+    }
+    final List<TermStruct> facts = new ArrayList<>();
+    while (rows.hasNext()) {
+      facts.add(Utils.makeFact(uid, rows.next()));
+    }
+    if (facts.isEmpty()) {
+      return 0L;
+    }
+
+    synchronized (this) {
+      InMemoryPredicate predicate = this.writablePredicate(uid);
+      if (predicate == null) {
+        predicate = new InMemoryPredicate(this.owner, uid.getArity());
+        this.writablePredicateTable().put(uid, predicate);
+      }
+      predicate.addAll(facts);
+    }
+    context.getMetrics().onAssert(facts.size());
+    if (context.hasRegisteredTriggersForSignature(uid, JProlTriggerType.TRIGGER_ASSERT)) {
+      context.notifyTriggersForSignature(uid, JProlTriggerType.TRIGGER_ASSERT);
+    }
+    return facts.size();
+  }
+
+  /**
+   * Keep ground facts of a predicate in columns of primitive values, terms of facts are made only
+   * when they are found. The predicate is made if it doesn't exist, it is moved back to usual
+   * storage when a rule, a non-ground fact, a fact with value of other type or a clause added as
+   * first is asserted.
+   */
+  @Override
+  public synchronized boolean declareColumnar(final String signature) {
+    final Functor uid = Functor.fromSignature(Utils.normalizeSignature(signature));
+    if (uid == null) {
+      throw new IllegalArgumentException("Wrong signature format '" + signature + '\'');
+    }
+    final InMemoryPredicate current = this.predicateTable.get(uid);
+    if (current != null && current.isColumnar()) {
+      return true;
+    }
+    InMemoryPredicate predicate = this.writablePredicate(uid);
+    if (predicate == null) {
+      predicate = new InMemoryPredicate(this.owner, uid.getArity());
+      this.writablePredicateTable().put(uid, predicate);
+    }
+    return predicate.makeColumnar(uid.getAtom());
+  }
+
   @Override
   public boolean retractAll(final JProlContext context, final TermStruct clause) {
     TermStruct struct = clause;
@@ -274,17 +456,11 @@ public final class InMemoryKnowledgeBase implements KnowledgeBase {
       struct = struct.getElement(0);
     }
 
-    boolean result = false;
-
-    final String signature = struct.getSignature();
-    final List<InMemoryItem> list = this.predicateTable.get(signature);
+    final Functor signature = struct.getFunctorKey();
+    final boolean result = this.removeItems(signature, struct, Selection.ALL);
 
-    if (list != null) {
-      result = internalRetractAll(list, struct);
-      if (result && list.isEmpty()) {
-        // delete from base
-        this.predicateTable.remove(signature);
-      }
+    if (result) {
+      context.getMetrics().onRetract();
     }
 
     // notify triggers if they are presented
@@ -295,32 +471,46 @@ public final class InMemoryKnowledgeBase implements KnowledgeBase {
     return result;
   }
 
-  private boolean internalRetractAll(final List<InMemoryItem> list, final TermStruct clause) {
-    final InMemoryClauseIterator iterator = new InMemoryClauseIterator(IteratorType.ANY, list, clause);
-    final List<InMemoryItem> toRemove = new ArrayList<>();
-    while (iterator.hasNext()) {
-      toRemove.add(iterator.nextItem());
-    }
-    return list.removeAll(toRemove);
-  }
-
-  private boolean internalRetractA(final List<InMemoryItem> list, final TermStruct clause) {
-    final InMemoryClauseIterator iterator = new InMemoryClauseIterator(IteratorType.ANY, list, clause);
-    if (iterator.hasNext()) {
-      final InMemoryItem item = iterator.nextItem();
-      return list.remove(item);
-    } else {
+  /**
+   * Remove selected clauses of a predicate. Clauses are selected in current state of the predicate,
+   * so a shared predicate is copied only if there is something to remove, clauses of the copy are
+   * selected again because removal marks entries of the predicate. Predicate declared as columnar
+   * is kept when it becomes empty.
+   */
+  private synchronized boolean removeItems(
+      final Functor key,
+      final TermStruct template,
+      final Selection selection
+  ) {
+    final InMemoryPredicate current = this.predicateTable.get(key);
+    if (current == null) {
       return false;
     }
-  }
-
-  private boolean internalRetractZ(final List<InMemoryItem> list, final TermStruct clause) {
-    final InMemoryClauseIterator iterator = new InMemoryClauseIterator(IteratorType.ANY, list, clause);
-    InMemoryItem toRemove = null;
-    while (iterator.hasNext()) {
-      toRemove = iterator.nextItem();
+    final boolean result;
+    if (current.isColumnar()) {
+      if (selection.select(current.columnarSnapshot().rows(template)).isEmpty()) {
+        return false;
+      }
+      final InMemoryPredicate predicate = this.writablePredicate(key);
+      result = predicate.removeRows(selection.select(predicate.columnarSnapshot().rows(template)));
+    } else {
+      List<ClauseEntry> found = selection.select(
+          new InMemoryClauseIterator(IteratorType.ANY, current.findCandidates(template), template).entries());
+      if (found.isEmpty()) {
+        return false;
+      }
+      final InMemoryPredicate predicate = this.writablePredicate(key);
+      if (predicate != current) {
+        found = selection.select(
+            new InMemoryClauseIterator(IteratorType.ANY, predicate.findCandidates(template), template).entries());
+      }
+      result = selection == Selection.ALL ? predicate.removeAll(found) : predicate.remove(found.get(0));
+      if (result && predicate.isEmpty()) {
+        // delete from base
+        this.writablePredicateTable().remove(key);
+      }
     }
-    return toRemove != null && list.remove(toRemove);
+    return result;
   }
 
   @Override
@@ -332,16 +522,11 @@ public final class InMemoryKnowledgeBase implements KnowledgeBase {
       struct = (TermStruct) head;
     }
 
-    boolean result = false;
-    final String signature = struct.getSignature();
-    final List<InMemoryItem> list = predicateTable.get(signature);
+    final Functor signature = struct.getFunctorKey();
+    final boolean result = this.removeItems(signature, struct, Selection.FIRST);
 
-    if (list != null) {
-      result = internalRetractA(list, struct);
-      if (result && list.isEmpty()) {
-        // delete from base
-        predicateTable.remove(signature);
-      }
+    if (result) {
+      context.getMetrics().onRetract();
     }
 
     // notify triggers if they are presented
@@ -360,17 +545,11 @@ public final class InMemoryKnowledgeBase implements KnowledgeBase {
       struct = struct.getElement(0);
     }
 
-    boolean result = false;
-    String signature;
-    signature = struct.getSignature();
-    final List<InMemoryItem> list = this.predicateTable.get(signature);
+    final Functor signature = struct.getFunctorKey();
+    final boolean result = this.removeItems(signature, struct, Selection.LAST);
 
-    if (list != null) {
-      result = internalRetractZ(list, struct);
-      if (result && list.isEmpty()) {
-        // delete from base
-        this.predicateTable.remove(signature);
-      }
+    if (result) {
+      context.getMetrics().onRetract();
     }
 
     // notify triggers if they are presented
@@ -385,20 +564,56 @@ public final class InMemoryKnowledgeBase implements KnowledgeBase {
   public void abolish(final JProlContext context, final String signature) {
     boolean result;
 
-    final String normalSignature = Utils.normalizeSignature(signature);
+    final Functor normalSignature = Functor.fromSignature(Utils.normalizeSignature(signature));
     if (normalSignature == null) {
       throw new IllegalArgumentException("Wrong signature format \'" + signature + '\'');
     }
 
-    result = predicateTable.remove(normalSignature) != null;
+    synchronized (this) {
+      result = this.predicateTable.containsKey(normalSignature)
+          && this.writablePredicateTable().remove(normalSignature) != null;
+    }
+
+    if (result) {
+      context.getMetrics().onRetract();
+    }
 
     if (result && context.hasRegisteredTriggersForSignature(normalSignature, JProlTriggerType.TRIGGER_RETRACT)) {
       context.notifyTriggersForSignature(normalSignature, JProlTriggerType.TRIGGER_RETRACT);
     }
   }
 
+  private enum Selection {
+    ALL,
+    FIRST,
+    LAST;
+
+    <T> List<T> select(final Iterator<T> iterator) {
+      switch (this) {
+        case ALL: {
+          final List<T> result = new ArrayList<>();
+          iterator.forEachRemaining(result::add);
+          return result;
+        }
+        case FIRST:
+          return iterator.hasNext() ? Collections.singletonList(iterator.next()) : Collections.emptyList();
+        default: {
+          T last = null;
+          while (iterator.hasNext()) {
+            last = iterator.next();
+          }
+          return last == null ? Collections.emptyList() : Collections.singletonList(last);
+        }
+      }
+    }
+  }
+
   @Override
-  public KnowledgeBase makeCopy() {
+  public synchronized KnowledgeBase makeCopy() {
+    // predicates owned by this base become shared with the copy
+    this.owner = new Object();
+    this.operatorTableShared = true;
+    this.predicateTableShared = true;
     return new InMemoryKnowledgeBase(knowledgeBaseId + "_copy", this);
   }
 }
@@ -0,0 +1,453 @@
+package com.igormaznitsa.jprol.kbase.inmemory;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermStruct;
+import com.igormaznitsa.jprol.kbase.inmemory.ClauseStore.ClauseEntry;
+import com.igormaznitsa.jprol.kbase.inmemory.items.InMemoryItem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Clauses of a predicate together with their argument indexes. The first argument index is always
+ * maintained, indexes for other arguments are built just in time when calls with bound value in the
+ * argument are observed often enough and dropped when the predicate is heavily modified.
+ * A predicate is modified only by knowledge base which owns it, snapshots of the base share it and
+ * make own copy before the first modification.
+ * Clauses follow logical update view: every modification increments generation of the predicate,
+ * a reader pins the current generation when it starts and sees clauses added not later and removed
+ * after it, so assert and retract don't disturb started iterations. Removed clauses are dropped from
+ * stores by the retract which makes them as many as live clauses, readers which started before keep
+ * arrays of the stores they iterate, so removed clauses are reclaimed when no reader can see them.
+ * A predicate declared as columnar keeps its ground facts in {@link ColumnarTable} and is moved back
+ * to usual storage when a clause which doesn't fit the table is added.
+ */
+final class InMemoryPredicate {
+
+  static final int JIT_CALL_THRESHOLD = 16;
+  static final int JIT_MIN_CLAUSES = 16;
+  static final int COMPACTION_MIN_REMOVED = 64;
+
+  private final Object owner;
+  private final int arity;
+  private final ClauseStore clauses;
+  private final AtomicReferenceArray<ArgumentIndex> indexes;
+  private final AtomicIntegerArray boundCalls;
+  private volatile long generation;
+  private volatile long storageChanges;
+  private volatile ColumnarTable columnar;
+  private int removed;
+
+  InMemoryPredicate(final Object owner, final Term head) {
+    this(owner, head instanceof TermStruct ? ((TermStruct) head).getArity() : 0);
+  }
+
+  InMemoryPredicate(final Object owner, final int arity) {
+    this.owner = owner;
+    this.arity = arity;
+    this.clauses = new ClauseStore();
+    this.indexes = new AtomicReferenceArray<>(arity);
+    this.boundCalls = new AtomicIntegerArray(arity);
+    if (arity > 0) {
+      this.indexes.set(0, new ArgumentIndex(0));
+    }
+  }
+
+  private InMemoryPredicate(final Object owner, final InMemoryPredicate etalon) {
+    this.owner = owner;
+    this.arity = etalon.arity;
+    this.clauses = new ClauseStore();
+    for (final ClauseEntry entry : etalon.snapshot()) {
+      this.clauses.add(new ClauseEntry(entry.getItem(), 0L), false);
+    }
+    this.indexes = new AtomicReferenceArray<>(this.arity);
+    this.boundCalls = new AtomicIntegerArray(this.arity);
+    for (int i = 0; i < this.arity; i++) {
+      if (etalon.indexes.get(i) != null) {
+        this.indexes.set(i, new ArgumentIndex(i, this.snapshot()));
+      }
+      this.boundCalls.set(i, etalon.boundCalls.get(i));
+    }
+    this.columnar = etalon.columnar == null ? null : etalon.columnar.makeCopy();
+  }
+
+  private static InMemoryItem makeItem(final TermStruct fact) {
+    return fact.isGround() ? InMemoryItem.fromGroundFact(fact) : InMemoryItem.fromClause(fact);
+  }
+
+  List<InMemoryItem> getClauses() {
+    return this.view(null, ClauseStore.Snapshot::toItems, x -> {
+      final List<InMemoryItem> result = new ArrayList<>(x.size());
+      final PrimitiveIterator.OfInt rows = x.rows(null);
+      while (rows.hasNext()) {
+        result.add(InMemoryItem.fromGroundFact(x.makeFact(rows.nextInt())));
+      }
+      return result;
+    });
+  }
+
+  /**
+   * Make view of clauses which can match template, clauses of columnar table and of clause store
+   * are provided by different views. Generation, storage and store are read again if the predicate
+   * was compacted or converted meanwhile.
+   *
+   * @param template   template, null for all clauses
+   * @param clauseView maker of view for clause store
+   * @param rowView    maker of view for columnar table
+   * @param <T>        type of view
+   * @return view made for pinned generation
+   */
+  <T> T view(
+      final TermStruct template,
+      final Function<ClauseStore.Snapshot, T> clauseView,
+      final Function<ColumnarTable.Snapshot, T> rowView
+  ) {
+    boolean firstAttempt = true;
+    while (true) {
+      final long epoch = this.storageChanges;
+      final long current = this.generation;
+      final ColumnarTable table = this.columnar;
+      final T result;
+      if (table == null) {
+        final ClauseStore store = template == null ? this.clauses : this.selectStore(template, firstAttempt);
+        result = clauseView.apply(store.snapshot(current));
+      } else {
+        result = rowView.apply(table.snapshot(current));
+      }
+      if (epoch == this.storageChanges && (table == null || current == this.generation)) {
+        return result;
+      }
+      firstAttempt = false;
+    }
+  }
+
+  boolean isColumnar() {
+    return this.columnar != null;
+  }
+
+  ColumnarTable.Snapshot columnarSnapshot() {
+    return this.view(null, x -> null, x -> x);
+  }
+
+  /**
+   * Move ground facts of the predicate into columnar table.
+   *
+   * @param functor functor of the predicate
+   * @return true if the predicate is columnar, false if it has clauses which can't be moved
+   */
+  synchronized boolean makeColumnar(final Term functor) {
+    if (this.columnar != null) {
+      return true;
+    }
+    final ColumnarTable table = new ColumnarTable(functor, this.arity);
+    final List<ClauseEntry> entries = new ArrayList<>();
+    for (final ClauseEntry entry : this.snapshot()) {
+      final TermStruct fact = entry.getItem().getClause();
+      if (!table.fits(fact)) {
+        return false;
+      }
+      table.add(fact);
+      entries.add(entry);
+    }
+    this.storageChanges++;
+    this.columnar = table;
+    if (!entries.isEmpty()) {
+      this.removeAll(entries);
+    }
+    return true;
+  }
+
+  private void dropColumnar() {
+    final ColumnarTable.Snapshot table = this.columnar.snapshot(this.generation);
+    final List<ClauseEntry> entries = new ArrayList<>(table.size());
+    final PrimitiveIterator.OfInt rows = table.rows(null);
+    while (rows.hasNext()) {
+      entries.add(new ClauseEntry(InMemoryItem.fromGroundFact(table.makeFact(rows.nextInt())), 0L));
+    }
+    this.clauses.addAll(entries);
+    for (int i = 0; i < this.arity; i++) {
+      final ArgumentIndex index = this.indexes.get(i);
+      if (index != null) {
+        for (final ClauseEntry entry : entries) {
+          index.add(entry, false, this.generation);
+        }
+      }
+    }
+    this.storageChanges++;
+    this.columnar = null;
+  }
+
+  ClauseStore.Snapshot snapshot() {
+    while (true) {
+      final long epoch = this.storageChanges;
+      final ClauseStore.Snapshot result = this.clauses.snapshot(this.generation);
+      if (epoch == this.storageChanges) {
+        return result;
+      }
+    }
+  }
+
+  int size() {
+    final ColumnarTable table = this.columnar;
+    return this.clauses.size() + (table == null ? 0 : table.size());
+  }
+
+  boolean isEmpty() {
+    return this.size() == 0;
+  }
+
+  long getGeneration() {
+    return this.generation;
+  }
+
+  ClauseStore.Snapshot findCandidates(final Term template) {
+    return template instanceof TermStruct ? this.findCandidates((TermStruct) template) : this.snapshot();
+  }
+
+  /**
+   * Find clauses which can match template in the current generation. Generation and store are read
+   * again if compaction happened meanwhile, because compacted store doesn't keep clauses removed
+   * before the compaction.
+   */
+  ClauseStore.Snapshot findCandidates(final TermStruct template) {
+    boolean firstAttempt = true;
+    while (true) {
+      final long epoch = this.storageChanges;
+      final long current = this.generation;
+      final ClauseStore.Snapshot result = this.selectStore(template, firstAttempt).snapshot(current);
+      if (epoch == this.storageChanges) {
+        return result;
+      }
+      firstAttempt = false;
+    }
+  }
+
+  private ClauseStore selectStore(final TermStruct template, final boolean countCall) {
+    ClauseStore result = this.clauses;
+    final int args = Math.min(template.getArity(), this.arity);
+    for (int i = 0; i < args && !result.isEmpty(); i++) {
+      final Object key = ArgumentIndex.keyOf(template.getElement(i).findNonVarOrSame());
+      if (key != null) {
+        ArgumentIndex index = this.indexes.get(i);
+        if (countCall
+            && this.boundCalls.incrementAndGet(i) >= JIT_CALL_THRESHOLD
+            && index == null
+            && this.clauses.size() >= JIT_MIN_CLAUSES) {
+          index = this.buildIndex(i);
+        }
+        if (index != null) {
+          final ClauseStore found = index.find(key);
+          if (found.size() < result.size()) {
+            result = found;
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private synchronized ArgumentIndex buildIndex(final int argument) {
+    ArgumentIndex result = this.indexes.get(argument);
+    if (result == null) {
+      result = new ArgumentIndex(argument, this.snapshot());
+      this.indexes.set(argument, result);
+    }
+    return result;
+  }
+
+  private void dropIndex(final int argument) {
+    this.indexes.set(argument, null);
+    this.boundCalls.set(argument, 0);
+  }
+
+  private void dropChurnedIndexes() {
+    final int limit = Math.max(JIT_MIN_CLAUSES, this.clauses.size());
+    for (int i = 1; i < this.arity; i++) {
+      final ArgumentIndex index = this.indexes.get(i);
+      if (index != null && index.getModifications() > limit) {
+        this.dropIndex(i);
+      }
+    }
+  }
+
+  synchronized void add(final InMemoryItem item, final boolean asFirst) {
+    if (this.columnar != null) {
+      if (!asFirst && this.columnar.fits(item.getClause())) {
+        this.columnar.add(item.getClause());
+        this.generation++;
+        return;
+      }
+      this.dropColumnar();
+    }
+    final long next = this.generation + 1;
+    final ClauseEntry entry = new ClauseEntry(item, next);
+    this.clauses.add(entry, asFirst);
+    for (int i = 0; i < this.arity; i++) {
+      final ArgumentIndex index = this.indexes.get(i);
+      if (index != null) {
+        index.add(entry, asFirst, next);
+      }
+    }
+    this.generation = next;
+    this.dropChurnedIndexes();
+  }
+
+  /**
+   * Add facts after all clauses as one modification.
+   *
+   * @param facts facts to add, must not be null
+   */
+  synchronized void addAll(final List<TermStruct> facts) {
+    if (this.columnar != null) {
+      if (facts.stream().allMatch(this.columnar::fits)) {
+        this.columnar.addAll(facts);
+        this.generation++;
+        return;
+      }
+      this.dropColumnar();
+    }
+    final long next = this.generation + 1;
+    final List<ClauseEntry> entries = new ArrayList<>(facts.size());
+    for (final TermStruct fact : facts) {
+      entries.add(new ClauseEntry(makeItem(fact), next));
+    }
+    this.clauses.addAll(entries);
+    for (int i = 0; i < this.arity; i++) {
+      final ArgumentIndex index = this.indexes.get(i);
+      if (index != null) {
+        for (final ClauseEntry entry : entries) {
+          index.add(entry, false, next);
+        }
+      }
+    }
+    this.generation = next;
+    this.dropChurnedIndexes();
+  }
+
+  synchronized boolean remove(final ClauseEntry entry) {
+    if (!entry.isAlive()) {
+      return false;
+    }
+    final long next = this.generation + 1;
+    this.markRemoved(entry, next);
+    this.generation = next;
+    this.dropChurnedIndexes();
+    this.onRemoved(1);
+    return true;
+  }
+
+  synchronized boolean removeAll(final Collection<ClauseEntry> entries) {
+    final long next = this.generation + 1;
+    int counter = 0;
+    for (final ClauseEntry entry : entries) {
+      if (entry.isAlive()) {
+        this.markRemoved(entry, next);
+        counter++;
+      }
+    }
+    if (counter > 0) {
+      this.generation = next;
+      for (int i = 1; i < this.arity; i++) {
+        this.dropIndex(i);
+      }
+      this.onRemoved(counter);
+    }
+    return counter > 0;
+  }
+
+  /**
+   * Remove rows of columnar table.
+   *
+   * @param rows rows selected in current state of the table
+   * @return true if any row has been removed
+   */
+  synchronized boolean removeRows(final List<Integer> rows) {
+    final long next = this.generation + 1;
+    int counter = 0;
+    for (final Integer row : rows) {
+      if (this.columnar.remove(row, next)) {
+        counter++;
+      }
+    }
+    if (counter > 0) {
+      this.generation = next;
+      if (this.columnar.getRemoved() >= Math.max(COMPACTION_MIN_REMOVED, this.columnar.size())) {
+        this.storageChanges++;
+        this.columnar.compact();
+      }
+    }
+    return counter > 0;
+  }
+
+  private void markRemoved(final ClauseEntry entry, final long died) {
+    entry.markDied(died);
+    this.clauses.onRemoved();
+    for (int i = 0; i < this.arity; i++) {
+      final ArgumentIndex index = this.indexes.get(i);
+      if (index != null) {
+        index.remove(entry);
+      }
+    }
+  }
+
+  private void onRemoved(final int number) {
+    this.removed += number;
+    // cost of compaction is shared by removals which have made it needed
+    if (this.removed >= Math.max(COMPACTION_MIN_REMOVED, this.clauses.size())) {
+      this.compact();
+    }
+  }
+
+  /**
+   * Drop removed clauses from stores of the predicate and its indexes.
+   */
+  synchronized void compact() {
+    if (this.removed > 0) {
+      this.storageChanges++;
+      this.clauses.compact();
+      for (int i = 0; i < this.arity; i++) {
+        final ArgumentIndex index = this.indexes.get(i);
+        if (index != null) {
+          index.compact();
+        }
+      }
+      this.removed = 0;
+    }
+  }
+
+  int getRemoved() {
+    return this.removed;
+  }
+
+  PredicateIndexInfo makeIndexInfo(final String signature) {
+    final ColumnarTable table = this.columnar;
+    if (table != null) {
+      return new PredicateIndexInfo(signature, this.size(), table.getIndexedColumns(), new int[this.arity]);
+    }
+    final Map<Integer, Integer> indexed = new LinkedHashMap<>();
+    final int[] calls = new int[this.arity];
+    for (int i = 0; i < this.arity; i++) {
+      final ArgumentIndex index = this.indexes.get(i);
+      if (index != null) {
+        indexed.put(i, index.size());
+      }
+      calls[i] = this.boundCalls.get(i);
+    }
+    return new PredicateIndexInfo(signature, this.size(), indexed, calls);
+  }
+
+  boolean isOwnedBy(final Object owner) {
+    return this.owner == owner;
+  }
+
+  InMemoryPredicate makeCopy(final Object owner) {
+    return new InMemoryPredicate(owner, this);
+  }
+}
@@ -0,0 +1,64 @@
+package com.igormaznitsa.jprol.kbase.inmemory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Snapshot of index state for a predicate in the in-memory knowledge base.
+ * Argument positions are zero based.
+ */
+public final class PredicateIndexInfo {
+  private final String signature;
+  private final int clauses;
+  private final Map<Integer, Integer> indexedArguments;
+  private final int[] boundCalls;
+
+  PredicateIndexInfo(final String signature, final int clauses, final Map<Integer, Integer> indexedArguments, final int[] boundCalls) {
+    this.signature = signature;
+    this.clauses = clauses;
+    this.indexedArguments = Collections.unmodifiableMap(indexedArguments);
+    this.boundCalls = boundCalls;
+  }
+
+  public String getSignature() {
+    return this.signature;
+  }
+
+  public int getClauses() {
+    return this.clauses;
+  }
+
+  /**
+   * Get indexed argument positions.
+   *
+   * @return map of indexed argument position to number of keys in its index
+   */
+  public Map<Integer, Integer> getIndexedArguments() {
+    return this.indexedArguments;
+  }
+
+  public boolean isIndexed(final int argument) {
+    return this.indexedArguments.containsKey(argument);
+  }
+
+  /**
+   * Get number of observed calls with bound value for an argument position.
+   *
+   * @param argument zero based argument position
+   * @return number of calls, counter is reset when index for the position is dropped
+   */
+  public int getBoundCalls(final int argument) {
+    return this.boundCalls[argument];
+  }
+
+  @Override
+  public String toString() {
+    return "PredicateIndexInfo{" +
+        "signature='" + this.signature + '\'' +
+        ", clauses=" + this.clauses +
+        ", indexedArguments=" + this.indexedArguments +
+        ", boundCalls=" + Arrays.toString(this.boundCalls) +
+        '}';
+  }
+}
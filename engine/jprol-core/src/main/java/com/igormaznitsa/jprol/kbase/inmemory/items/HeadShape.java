@@ -0,0 +1,125 @@
+package com.igormaznitsa.jprol.kbase.inmemory.items;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermDouble;
+import com.igormaznitsa.jprol.data.TermList;
+import com.igormaznitsa.jprol.data.TermLong;
+import com.igormaznitsa.jprol.data.TermStruct;
+
+/**
+ * Cheap fingerprint of first arguments of a clause head or a goal. Every argument is described by
+ * 16 bit lane which keeps kind of the argument and hash of its functor, arity or value, four lanes
+ * are packed into a long. Arguments which can't be described (variables, operators) have zero mask
+ * and match any argument, so if shapes don't match then terms are not unifiable.
+ */
+public final class HeadShape {
+
+  public static final HeadShape ANY = new HeadShape(0L, 0L, 0L, 0L);
+
+  private static final int LANE_BITS = 16;
+  private static final int LANES_PER_LONG = Long.SIZE / LANE_BITS;
+  private static final int MAX_ARGUMENTS = LANES_PER_LONG * 2;
+  private static final int HASH_MASK = 0x1FFF;
+  private static final long LANE_MASK = 0xFFFFL;
+
+  private static final int KIND_ATOM = 1;
+  private static final int KIND_LONG = 2;
+  private static final int KIND_DOUBLE = 3;
+  private static final int KIND_STRUCT = 4;
+  private static final int KIND_LIST = 5;
+  private static final int KIND_NULL_LIST = 6;
+
+  private final long lanesLow;
+  private final long lanesHigh;
+  private final long maskLow;
+  private final long maskHigh;
+
+  private HeadShape(final long lanesLow, final long lanesHigh, final long maskLow, final long maskHigh) {
+    this.lanesLow = lanesLow;
+    this.lanesHigh = lanesHigh;
+    this.maskLow = maskLow;
+    this.maskHigh = maskHigh;
+  }
+
+  /**
+   * Make shape for current state of a term.
+   *
+   * @param term clause head or goal, can be variable
+   * @return shape of the term arguments
+   */
+  public static HeadShape of(final Term term) {
+    final Term value = term.findNonVarOrSame();
+    if (!(value instanceof TermStruct) || value instanceof TermList) {
+      return ANY;
+    }
+
+    final TermStruct struct = (TermStruct) value;
+    final int arguments = Math.min(struct.getArity(), MAX_ARGUMENTS);
+    long lanesLow = 0L;
+    long lanesHigh = 0L;
+    long maskLow = 0L;
+    long maskHigh = 0L;
+    for (int i = 0; i < arguments; i++) {
+      final int lane = describe(struct.getElement(i).findNonVarOrSame());
+      if (lane != 0) {
+        final int shift = (i % LANES_PER_LONG) * LANE_BITS;
+        if (i < LANES_PER_LONG) {
+          lanesLow |= (long) lane << shift;
+          maskLow |= LANE_MASK << shift;
+        } else {
+          lanesHigh |= (long) lane << shift;
+          maskHigh |= LANE_MASK << shift;
+        }
+      }
+    }
+    return maskLow == 0L && maskHigh == 0L ? ANY : new HeadShape(lanesLow, lanesHigh, maskLow, maskHigh);
+  }
+
+  private static int lane(final int kind, final int hash) {
+    return kind << 13 | (hash ^ hash >>> 13 ^ hash >>> 26) & HASH_MASK;
+  }
+
+  private static int describe(final Term term) {
+    final int result;
+    switch (term.getTermType()) {
+      case ATOM: {
+        if (term.getClass() == Term.class) {
+          result = lane(KIND_ATOM, term.getText().hashCode());
+        } else if (term instanceof TermLong) {
+          result = lane(KIND_LONG, Long.hashCode(term.toNumber().longValue()));
+        } else if (term instanceof TermDouble) {
+          result = lane(KIND_DOUBLE, 0);
+        } else {
+          result = 0;
+        }
+      }
+      break;
+      case STRUCT: {
+        final TermStruct struct = (TermStruct) term;
+        result = struct.getArity() == 0
+            ? 0
+            : lane(KIND_STRUCT, struct.getFunctor().getText().hashCode() * 31 + struct.getArity());
+      }
+      break;
+      case LIST: {
+        result = ((TermList) term).isNullList() ? lane(KIND_NULL_LIST, 0) : lane(KIND_LIST, 0);
+      }
+      break;
+      default:
+        result = 0;
+        break;
+    }
+    return result;
+  }
+
+  /**
+   * Check that terms described by shapes can be unified.
+   *
+   * @param that shape of other term with the same signature
+   * @return false if terms are not unifiable, true if they can be unifiable
+   */
+  public boolean mayMatch(final HeadShape that) {
+    return ((this.lanesLow ^ that.lanesLow) & this.maskLow & that.maskLow) == 0L
+        && ((this.lanesHigh ^ that.lanesHigh) & this.maskHigh & that.maskHigh) == 0L;
+  }
+}
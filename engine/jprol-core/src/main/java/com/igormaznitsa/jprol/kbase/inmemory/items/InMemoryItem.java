@@ -4,7 +4,12 @@ import com.igormaznitsa.jprol.data.Term;
 import com.igormaznitsa.jprol.data.TermStruct;
 import com.igormaznitsa.jprol.data.TermType;
 import com.igormaznitsa.jprol.data.TermVar;
+import com.igormaznitsa.jprol.logic.compiler.ClauseCompiler;
+import com.igormaznitsa.jprol.logic.compiler.CompiledClause;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Setter;
 
 import java.io.PrintWriter;
 import java.util.List;
@@ -17,6 +22,11 @@ public abstract class InMemoryItem {
   protected final TermStruct clause;
   protected final Term rightHandSide;
   protected final boolean leftHandSidePresented;
+  @EqualsAndHashCode.Exclude
+  private final HeadShape headShape;
+  @EqualsAndHashCode.Exclude
+  @Setter(AccessLevel.NONE)
+  private volatile CompiledClause compiledClause;
 
   InMemoryItem(final TermStruct clause) {
     this.clause = clause;
@@ -28,6 +38,7 @@ public abstract class InMemoryItem {
       this.leftHandSidePresented = false;
       this.rightHandSide = clause;
     }
+    this.headShape = HeadShape.of(this.rightHandSide);
   }
 
   public static InMemoryItem fromClause(final TermStruct clause) {
@@ -46,8 +57,27 @@ public abstract class InMemoryItem {
     return complex ? new RhsItemComplex(clause) : new RhsItemSimple(clause);
   }
 
+  /**
+   * Make item for a fact without variables, variables of the fact are not searched.
+   *
+   * @param fact ground fact, must not be null
+   * @return item, must not be null
+   */
+  public static InMemoryItem fromGroundFact(final TermStruct fact) {
+    return new RhsItemSimple(fact);
+  }
+
   public abstract boolean matches(final Term rightHandSide);
 
+  public CompiledClause getCompiledClause() {
+    CompiledClause result = this.compiledClause;
+    if (result == null) {
+      result = ClauseCompiler.compile(this.clause);
+      this.compiledClause = result;
+    }
+    return result;
+  }
+
   public void write(final PrintWriter writer) {
     requireNonNull(writer, "Writer must not be null")
         .write(String.format("%s.%n", this.clause.toSrcString()));
@@ -0,0 +1,314 @@
+package com.igormaznitsa.jprol.kbase.mapped;
+
+import com.igormaznitsa.jprol.data.Functor;
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermOperator;
+import com.igormaznitsa.jprol.data.TermOperatorContainer;
+import com.igormaznitsa.jprol.data.TermStruct;
+import com.igormaznitsa.jprol.data.TermType;
+import com.igormaznitsa.jprol.data.Terms;
+import com.igormaznitsa.jprol.exceptions.ProlPermissionErrorException;
+import com.igormaznitsa.jprol.kbase.IteratorType;
+import com.igormaznitsa.jprol.kbase.KnowledgeBase;
+import com.igormaznitsa.jprol.kbase.inmemory.InMemoryKnowledgeBase;
+import com.igormaznitsa.jprol.logic.JProlContext;
+import com.igormaznitsa.jprol.logic.compiler.CompiledClause;
+import com.igormaznitsa.jprol.utils.CloseableIterator;
+import com.igormaznitsa.jprol.utils.Utils;
+import com.igormaznitsa.prologparser.tokenizer.OpAssoc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static com.igormaznitsa.jprol.data.Terms.newAtom;
+import static com.igormaznitsa.jprol.data.Terms.newStruct;
+import static com.igormaznitsa.jprol.utils.Utils.makeCloseableIterator;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Knowledge base with static predicates kept in memory mapped file made by
+ * {@link MappedKnowledgeBaseWriter}. Opening maps regions of the file without reading clauses, so
+ * it takes time only for directory of predicates and pages of the file are shared through page
+ * cache by all processes which open it. Clauses are decoded directly from mapped pages only when
+ * they are found by index of the first argument or by scan. Mapped predicates can't be changed,
+ * operators and other predicates are kept in in-memory overlay.
+ */
+public final class MappedKnowledgeBase implements KnowledgeBase {
+
+  private final String knowledgeBaseId;
+  private final Map<Functor, MappedPredicate> predicates;
+  private final KnowledgeBase overlay;
+
+  private MappedKnowledgeBase(
+      final String id,
+      final Map<Functor, MappedPredicate> predicates,
+      final KnowledgeBase overlay
+  ) {
+    this.knowledgeBaseId = id;
+    this.predicates = predicates;
+    this.overlay = overlay;
+  }
+
+  /**
+   * Open mapped file, the file must not be changed while it is mapped.
+   *
+   * @param id   identifier of knowledge base, must not be null
+   * @param file file made by writer, must not be null
+   * @return knowledge base, must not be null
+   * @throws IOException if file can't be mapped or has wrong format
+   */
+  public static MappedKnowledgeBase open(final String id, final Path file) throws IOException {
+    requireNonNull(id, "Id must not be null");
+    final Map<Functor, MappedPredicate> predicates = new LinkedHashMap<>();
+    // mapping stays valid after the channel is closed
+    try (FileChannel channel = FileChannel.open(requireNonNull(file, "File is null"), StandardOpenOption.READ)) {
+      final long fileSize = channel.size();
+      if (fileSize < MappedKnowledgeBaseWriter.HEADER_SIZE) {
+        throw new IOException("Wrong format of mapped file: " + file);
+      }
+      final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0L, MappedKnowledgeBaseWriter.HEADER_SIZE);
+      if (header.getInt() != MappedKnowledgeBaseWriter.MAGIC) {
+        throw new IOException("Wrong format of mapped file: " + file);
+      }
+      if (header.getInt() != MappedKnowledgeBaseWriter.VERSION) {
+        throw new IOException("Unsupported version of mapped file: " + file);
+      }
+      final long directoryOffset = header.getLong();
+      if (directoryOffset < MappedKnowledgeBaseWriter.HEADER_SIZE || directoryOffset >= fileSize) {
+        throw new IOException("Mapped file is not completed: " + file);
+      }
+
+      final ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset, fileSize - directoryOffset);
+      final int count = directory.getInt();
+      for (int i = 0; i < count; i++) {
+        final String name = TermCodec.readText(directory);
+        final Functor functor = Functor.of(name, directory.getInt());
+        final int clauseCount = (int) directory.getLong();
+        final ByteBuffer data = map(channel, directory.getLong(), directory.getLong());
+        final ByteBuffer index = map(channel, directory.getLong(), directory.getLong());
+        predicates.put(functor, new MappedPredicate(functor, clauseCount, data, index));
+      }
+    }
+    return new MappedKnowledgeBase(id, Collections.unmodifiableMap(predicates), new InMemoryKnowledgeBase(id + "_overlay"));
+  }
+
+  private static ByteBuffer map(final FileChannel channel, final long offset, final long length) throws IOException {
+    return length == 0L ? ByteBuffer.allocate(0) : channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+  }
+
+  private static TermStruct headOf(final TermStruct clause) {
+    if (clause.isClause()) {
+      final Term head = clause.getElement(0).findNonVarOrSame();
+      if (head.getTermType() == TermType.ATOM) {
+        return newStruct(head);
+      }
+      return head instanceof TermStruct ? (TermStruct) head : null;
+    }
+    return clause;
+  }
+
+  private void assertNotMapped(final Functor functor) {
+    if (functor != null && this.predicates.containsKey(functor)) {
+      throw new ProlPermissionErrorException("modify", "static_procedure", newAtom(functor.getSignature()));
+    }
+  }
+
+  private void assertNotMapped(final TermStruct clause) {
+    final TermStruct head = headOf(clause);
+    if (head != null) {
+      this.assertNotMapped(head.getFunctorKey());
+    }
+  }
+
+  /**
+   * Check that predicate is kept in mapped file.
+   *
+   * @param signature signature of predicate in format name/arity
+   * @return true if the predicate is mapped
+   */
+  public boolean isMapped(final String signature) {
+    final Functor functor = Functor.fromSignature(Utils.normalizeSignature(signature));
+    return functor != null && this.predicates.containsKey(functor);
+  }
+
+  @Override
+  public String getId() {
+    return this.knowledgeBaseId;
+  }
+
+  @Override
+  public boolean removeOperator(final String name, final OpAssoc type) {
+    return this.overlay.removeOperator(name, type);
+  }
+
+  @Override
+  public void addOperator(final JProlContext context, final TermOperator operator) {
+    this.overlay.addOperator(context, operator);
+  }
+
+  @Override
+  public TermOperatorContainer findOperatorForName(final JProlContext context, final String name) {
+    return this.overlay.findOperatorForName(context, name);
+  }
+
+  @Override
+  public boolean hasOperatorStartsWith(final JProlContext context, final String str) {
+    return this.overlay.hasOperatorStartsWith(context, str);
+  }
+
+  @Override
+  public CloseableIterator<TermStruct> iterate(
+      final IteratorType type,
+      final TermStruct template,
+      final Consumer<String> unknownPredicateConsumer
+  ) {
+    final MappedPredicate predicate = this.predicates.get(template.getFunctorKey());
+    if (predicate == null) {
+      return this.overlay.iterate(type, template, unknownPredicateConsumer);
+    }
+    return makeCloseableIterator(predicate.find(type, (TermStruct) template.makeClone()), () -> {
+    });
+  }
+
+  /**
+   * Decoded clauses are new terms, so they are provided as shared ones.
+   */
+  @Override
+  public CloseableIterator<TermStruct> iterateShared(
+      final TermStruct template,
+      final Consumer<String> unknownPredicateConsumer
+  ) {
+    final MappedPredicate predicate = this.predicates.get(template.getFunctorKey());
+    if (predicate == null) {
+      return this.overlay.iterateShared(template, unknownPredicateConsumer);
+    }
+    return makeCloseableIterator(predicate.find(IteratorType.ANY, template), () -> {
+    });
+  }
+
+  @Override
+  public CloseableIterator<CompiledClause> iterateCompiled(
+      final TermStruct template,
+      final Consumer<String> unknownPredicateConsumer
+  ) {
+    // clauses of mapped predicates are not compiled, they are provided by iterateShared
+    return this.predicates.containsKey(template.getFunctorKey())
+        ? null
+        : this.overlay.iterateCompiled(template, unknownPredicateConsumer);
+  }
+
+  @Override
+  public CloseableIterator<TermStruct> iterate(
+      final String signature,
+      final Consumer<String> unknownPredicateConsumer
+  ) {
+    final Functor functor = Functor.fromSignature(signature);
+    final MappedPredicate predicate = functor == null ? null : this.predicates.get(functor);
+    if (predicate == null) {
+      return this.overlay.iterate(signature, unknownPredicateConsumer);
+    }
+    return makeCloseableIterator(predicate.find(IteratorType.ANY, null), () -> {
+    });
+  }
+
+  @Override
+  public CloseableIterator<TermStruct> iterateSignatures(final TermStruct indicator) {
+    final List<TermStruct> result = new ArrayList<>();
+    for (final Functor functor : this.predicates.keySet()) {
+      final TermStruct signature = newStruct(Utils.SIGNATURE_OPERATOR,
+          new Term[] {
+              functor.getAtom(),
+              Terms.newLong(functor.getArity())
+          });
+      if (indicator.dryUnifyTo(signature)) {
+        result.add(signature);
+      }
+    }
+    try (CloseableIterator<TermStruct> overlaySignatures = this.overlay.iterateSignatures(indicator)) {
+      overlaySignatures.forEachRemaining(result::add);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return makeCloseableIterator(result.iterator(), () -> {
+    });
+  }
+
+  @Override
+  public CloseableIterator<TermOperator> makeOperatorIterator() {
+    return this.overlay.makeOperatorIterator();
+  }
+
+  @Override
+  public Map<String, Integer> countClauses() {
+    final Map<String, Integer> result = new LinkedHashMap<>();
+    this.predicates.forEach((key, value) -> result.put(key.getSignature(), value.size()));
+    result.putAll(this.overlay.countClauses());
+    return result;
+  }
+
+  @Override
+  public boolean assertZ(final JProlContext context, final TermStruct clause) {
+    this.assertNotMapped(clause);
+    return this.overlay.assertZ(context, clause);
+  }
+
+  @Override
+  public boolean assertA(final JProlContext context, final TermStruct clause) {
+    this.assertNotMapped(clause);
+    return this.overlay.assertA(context, clause);
+  }
+
+  @Override
+  public long bulkLoad(final JProlContext context, final String signature, final Iterator<Term[]> rows) {
+    this.assertNotMapped(Functor.fromSignature(Utils.normalizeSignature(signature)));
+    return this.overlay.bulkLoad(context, signature, rows);
+  }
+
+  @Override
+  public boolean declareColumnar(final String signature) {
+    return !this.isMapped(signature) && this.overlay.declareColumnar(signature);
+  }
+
+  @Override
+  public boolean retractAll(final JProlContext context, final TermStruct clause) {
+    this.assertNotMapped(clause);
+    return this.overlay.retractAll(context, clause);
+  }
+
+  @Override
+  public boolean retractA(final JProlContext context, final TermStruct clause) {
+    this.assertNotMapped(clause);
+    return this.overlay.retractA(context, clause);
+  }
+
+  @Override
+  public boolean retractZ(final JProlContext context, final TermStruct clause) {
+    this.assertNotMapped(clause);
+    return this.overlay.retractZ(context, clause);
+  }
+
+  @Override
+  public void abolish(final JProlContext context, final String signature) {
+    this.assertNotMapped(Functor.fromSignature(Utils.normalizeSignature(signature)));
+    this.overlay.abolish(context, signature);
+  }
+
+  /**
+   * Copy shares mapped predicates, the overlay is copied.
+   */
+  @Override
+  public KnowledgeBase makeCopy() {
+    return new MappedKnowledgeBase(this.knowledgeBaseId + "_copy", this.predicates, this.overlay.makeCopy());
+  }
+}
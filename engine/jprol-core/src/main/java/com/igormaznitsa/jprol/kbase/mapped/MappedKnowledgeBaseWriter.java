@@ -0,0 +1,222 @@
+package com.igormaznitsa.jprol.kbase.mapped;
+
+import com.igormaznitsa.jprol.data.Functor;
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermStruct;
+import com.igormaznitsa.jprol.data.TermType;
+import com.igormaznitsa.jprol.kbase.KnowledgeBase;
+import com.igormaznitsa.jprol.utils.CloseableIterator;
+import com.igormaznitsa.jprol.utils.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.igormaznitsa.jprol.data.Terms.newStruct;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writer of file opened by {@link MappedKnowledgeBase}. File has header
+ * {@code [int magic][int version][long directory offset]}, then data and index regions of
+ * predicates and directory of predicates at the end, the header is completed by {@link #close()}.
+ * Every region must be less than 2 GB.
+ */
+public final class MappedKnowledgeBaseWriter implements Closeable {
+
+  static final int MAGIC = 0x4A504B42;
+  static final int VERSION = 2;
+  static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES;
+
+  private final FileChannel channel;
+  private final DataOutputStream out;
+  private final Map<Functor, long[]> directory = new LinkedHashMap<>();
+  private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+  private final DataOutputStream recordOut = new DataOutputStream(this.record);
+  private long position;
+  private boolean closed;
+
+  public MappedKnowledgeBaseWriter(final Path file) throws IOException {
+    this.channel = FileChannel.open(requireNonNull(file, "File is null"),
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(this.channel), 65536));
+    this.out.writeInt(MAGIC);
+    this.out.writeInt(VERSION);
+    this.out.writeLong(0L);
+    this.position = HEADER_SIZE;
+  }
+
+  private static TermStruct headOf(final TermStruct clause) {
+    if (clause.isClause()) {
+      if (clause.getArity() != 2) {
+        throw new IllegalArgumentException("Directive can't be stored: " + clause);
+      }
+      final Term head = clause.getElement(0).findNonVarOrSame();
+      if (head.getTermType() == TermType.ATOM) {
+        return newStruct(head);
+      }
+      if (head instanceof TermStruct) {
+        return (TermStruct) head;
+      }
+      throw new IllegalArgumentException("Clause head must be callable: " + clause);
+    }
+    return clause;
+  }
+
+  private static int tableSize(final int keys) {
+    int result = 2;
+    while (result < keys * 2L) {
+      result <<= 1;
+    }
+    return result;
+  }
+
+  /**
+   * Write all clauses of a predicate of knowledge base.
+   *
+   * @param base      knowledge base, must not be null
+   * @param signature signature of predicate in format name/arity
+   * @return number of written clauses
+   * @throws IOException if it can't be written
+   */
+  public int write(final KnowledgeBase base, final String signature) throws IOException {
+    try (CloseableIterator<TermStruct> clauses = base.iterate(signature, x -> {
+    })) {
+      return this.write(signature, clauses);
+    }
+  }
+
+  /**
+   * Write clauses of a predicate, every predicate can be written only once.
+   *
+   * @param signature signature of predicate in format name/arity
+   * @param clauses   clauses of the predicate in source order, must not be null
+   * @return number of written clauses
+   * @throws IOException              if it can't be written
+   * @throws IllegalArgumentException if signature is wrong, predicate is already written or clause
+   *                                  has other signature
+   */
+  public int write(final String signature, final Iterator<? extends Term> clauses) throws IOException {
+    if (this.closed) {
+      throw new IllegalStateException("Writer is closed");
+    }
+    final Functor functor = Functor.fromSignature(Utils.normalizeSignature(signature));
+    if (functor == null) {
+      throw new IllegalArgumentException("Wrong signature format '" + signature + '\'');
+    }
+    if (this.directory.containsKey(functor)) {
+      throw new IllegalArgumentException("Predicate is already written: " + signature);
+    }
+
+    final long dataOffset = this.position;
+    int[] keys = new int[16];
+    int[] offsets = new int[16];
+    boolean indexable = functor.getArity() > 0;
+    int count = 0;
+    long dataLength = 0L;
+
+    while (clauses.hasNext()) {
+      final Term term = clauses.next().findNonVarOrSame();
+      final TermStruct clause = term.getTermType() == TermType.ATOM ? newStruct(term) : (TermStruct) term;
+      final TermStruct head = headOf(clause);
+      if (!functor.equals(head.getFunctorKey())) {
+        throw new IllegalArgumentException("Clause has wrong signature: " + clause);
+      }
+
+      this.record.reset();
+      this.recordOut.writeByte(clause.isClause() ? MappedPredicate.KIND_RULE : MappedPredicate.KIND_FACT);
+      TermCodec.encode(clause.isClause() ? newStruct(clause.getFunctor(), new Term[] {head, clause.getElement(1)}) : clause, this.recordOut);
+      if (dataLength + Integer.BYTES + this.record.size() > Integer.MAX_VALUE) {
+        throw new IOException("Predicate is too big for mapped file: " + signature);
+      }
+
+      if (count == keys.length) {
+        keys = Arrays.copyOf(keys, count * 2);
+        offsets = Arrays.copyOf(offsets, count * 2);
+      }
+      if (indexable && TermCodec.isIndexable(head.getElement(0))) {
+        keys[count] = TermCodec.keyOf(head.getElement(0));
+      } else {
+        indexable = false;
+      }
+      offsets[count++] = (int) dataLength;
+
+      this.out.writeInt(this.record.size());
+      this.record.writeTo(this.out);
+      dataLength += Integer.BYTES + this.record.size();
+      // written bytes are counted at once, so failed predicate doesn't break offsets of next ones
+      this.position += Integer.BYTES + this.record.size();
+    }
+
+    final long indexOffset = this.position;
+    long indexLength = 0L;
+    if (indexable && count > 0) {
+      final int slots = tableSize(count);
+      if ((long) slots * MappedPredicate.SLOT_SIZE > Integer.MAX_VALUE) {
+        throw new IOException("Index is too big for mapped file: " + signature);
+      }
+      final int[] table = new int[slots * 2];
+      for (int i = 0; i < slots; i++) {
+        table[i * 2 + 1] = MappedPredicate.EMPTY_SLOT;
+      }
+      final int mask = slots - 1;
+      for (int i = 0; i < count; i++) {
+        int slot = keys[i] & mask;
+        while (table[slot * 2 + 1] != MappedPredicate.EMPTY_SLOT) {
+          slot = (slot + 1) & mask;
+        }
+        table[slot * 2] = keys[i];
+        table[slot * 2 + 1] = offsets[i];
+      }
+      for (final int value : table) {
+        this.out.writeInt(value);
+      }
+      indexLength = (long) slots * MappedPredicate.SLOT_SIZE;
+      this.position += indexLength;
+    }
+
+    this.directory.put(functor, new long[] {count, dataOffset, dataLength, indexOffset, indexLength});
+    return count;
+  }
+
+  /**
+   * Write directory of predicates and complete header of file.
+   *
+   * @throws IOException if it can't be written
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    try {
+      final long directoryOffset = this.position;
+      this.out.writeInt(this.directory.size());
+      for (final Map.Entry<Functor, long[]> entry : this.directory.entrySet()) {
+        TermCodec.writeText(this.out, entry.getKey().getName());
+        this.out.writeInt(entry.getKey().getArity());
+        for (final long value : entry.getValue()) {
+          this.out.writeLong(value);
+        }
+      }
+      this.out.flush();
+      final ByteBuffer offset = ByteBuffer.allocate(Long.BYTES);
+      offset.putLong(0, directoryOffset);
+      this.channel.write(offset, Integer.BYTES * 2);
+      this.channel.force(true);
+    } finally {
+      this.out.close();
+    }
+  }
+}
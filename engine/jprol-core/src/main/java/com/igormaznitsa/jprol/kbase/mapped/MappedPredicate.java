@@ -0,0 +1,181 @@
+package com.igormaznitsa.jprol.kbase.mapped;
+
+import com.igormaznitsa.jprol.data.Functor;
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermStruct;
+import com.igormaznitsa.jprol.kbase.IteratorType;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Clauses of a predicate in mapped regions of file. Data region is sequence of records
+ * {@code [int length][byte kind][term]}, index region is open addressing hash table of
+ * {@code [int key][int record offset]} slots by the first argument, it is empty if some clause
+ * has free first argument. Linear probing keeps records with the same key in order of writing, so
+ * found clauses are in source order. Buffers are only read through their duplicates, so the
+ * predicate can be used by many threads.
+ */
+final class MappedPredicate {
+
+  static final byte KIND_FACT = 0;
+  static final byte KIND_RULE = 1;
+  static final int SLOT_SIZE = 8;
+  static final int EMPTY_SLOT = -1;
+
+  private final Functor functor;
+  private final int clauseCount;
+  private final ByteBuffer data;
+  private final ByteBuffer index;
+  private final int slotCount;
+
+  MappedPredicate(final Functor functor, final int clauseCount, final ByteBuffer data, final ByteBuffer index) {
+    this.functor = functor;
+    this.clauseCount = clauseCount;
+    this.data = data;
+    this.index = index;
+    this.slotCount = index.capacity() / SLOT_SIZE;
+  }
+
+  Functor getFunctor() {
+    return this.functor;
+  }
+
+  int size() {
+    return this.clauseCount;
+  }
+
+  boolean isIndexed() {
+    return this.slotCount > 0;
+  }
+
+  /**
+   * Find clauses which can match template, records are decoded only when iterated.
+   *
+   * @param type     type of clauses
+   * @param template template, null for all clauses
+   * @return iterator of decoded clauses
+   */
+  Iterator<TermStruct> find(final IteratorType type, final TermStruct template) {
+    final Iterator<Integer> offsets;
+    if (template != null
+        && this.isIndexed()
+        && template.getArity() > 0
+        && TermCodec.isIndexable(template.getElement(0))) {
+      offsets = this.probe(TermCodec.keyOf(template.getElement(0)));
+    } else {
+      offsets = this.scan();
+    }
+    return new ClauseIterator(offsets, type, template);
+  }
+
+  private Iterator<Integer> scan() {
+    final ByteBuffer buffer = this.data.duplicate();
+    return new Iterator<Integer>() {
+      private int offset = 0;
+
+      @Override
+      public boolean hasNext() {
+        return this.offset < buffer.capacity();
+      }
+
+      @Override
+      public Integer next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        final int result = this.offset;
+        this.offset += Integer.BYTES + buffer.getInt(result);
+        return result;
+      }
+    };
+  }
+
+  private Iterator<Integer> probe(final int key) {
+    final ByteBuffer buffer = this.index.duplicate();
+    final int mask = this.slotCount - 1;
+    return new Iterator<Integer>() {
+      private int slot = key & mask;
+      private int next = this.findNext();
+
+      private int findNext() {
+        while (true) {
+          final int position = this.slot * SLOT_SIZE;
+          final int offset = buffer.getInt(position + Integer.BYTES);
+          if (offset == EMPTY_SLOT) {
+            return EMPTY_SLOT;
+          }
+          this.slot = (this.slot + 1) & mask;
+          if (buffer.getInt(position) == key) {
+            return offset;
+          }
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        return this.next != EMPTY_SLOT;
+      }
+
+      @Override
+      public Integer next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        final int result = this.next;
+        this.next = this.findNext();
+        return result;
+      }
+    };
+  }
+
+  private final class ClauseIterator implements Iterator<TermStruct> {
+
+    private final ByteBuffer buffer = data.duplicate();
+    private final Iterator<Integer> offsets;
+    private final IteratorType type;
+    private final TermStruct template;
+    private TermStruct next;
+
+    private ClauseIterator(final Iterator<Integer> offsets, final IteratorType type, final TermStruct template) {
+      this.offsets = offsets;
+      this.type = type;
+      this.template = template;
+      this.next = this.findNext();
+    }
+
+    private TermStruct findNext() {
+      while (this.offsets.hasNext()) {
+        final int offset = this.offsets.next();
+        final byte kind = this.buffer.get(offset + Integer.BYTES);
+        if ((this.type == IteratorType.FACTS && kind != KIND_FACT)
+            || (this.type == IteratorType.RULES && kind != KIND_RULE)) {
+          continue;
+        }
+        this.buffer.position(offset + Integer.BYTES + 1);
+        final TermStruct clause = (TermStruct) TermCodec.decode(this.buffer);
+        final Term head = kind == KIND_RULE ? clause.getElement(0) : clause;
+        if (this.template == null || head.dryUnifyTo(this.template)) {
+          return clause;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return this.next != null;
+    }
+
+    @Override
+    public TermStruct next() {
+      final TermStruct result = this.next;
+      if (result == null) {
+        throw new NoSuchElementException();
+      }
+      this.next = this.findNext();
+      return result;
+    }
+  }
+}
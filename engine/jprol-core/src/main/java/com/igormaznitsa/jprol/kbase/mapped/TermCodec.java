@@ -0,0 +1,251 @@
+package com.igormaznitsa.jprol.kbase.mapped;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermDouble;
+import com.igormaznitsa.jprol.data.TermList;
+import com.igormaznitsa.jprol.data.TermLong;
+import com.igormaznitsa.jprol.data.TermOperator;
+import com.igormaznitsa.jprol.data.TermStruct;
+import com.igormaznitsa.jprol.data.TermVar;
+import com.igormaznitsa.jprol.data.Terms;
+import com.igormaznitsa.prologparser.tokenizer.OpAssoc;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.igormaznitsa.jprol.data.Terms.newAtom;
+import static com.igormaznitsa.jprol.data.Terms.newDouble;
+import static com.igormaznitsa.jprol.data.Terms.newList;
+import static com.igormaznitsa.jprol.data.Terms.newLong;
+import static com.igormaznitsa.jprol.data.Terms.newStruct;
+import static com.igormaznitsa.jprol.data.Terms.newVar;
+
+/**
+ * Binary form of terms kept in mapped file. Variables are numbered in order of the first
+ * occurrence inside a clause, elements of a list are written one after another, so neither
+ * encoding nor decoding of long lists goes deep into stack. Operators are written with their type
+ * and priority, because an operator doesn't unify with plain atom of the same name.
+ */
+final class TermCodec {
+
+  private static final byte TAG_ATOM = 1;
+  private static final byte TAG_LONG = 2;
+  private static final byte TAG_DOUBLE = 3;
+  private static final byte TAG_VAR = 4;
+  private static final byte TAG_NEW_VAR = 5;
+  private static final byte TAG_STRUCT = 6;
+  private static final byte TAG_LIST = 7;
+  private static final byte TAG_NULL_LIST = 8;
+  private static final byte TAG_OPERATOR = 9;
+  private static final byte TAG_OPERATOR_STRUCT = 10;
+
+  private static final OpAssoc[] OPERATOR_TYPES = OpAssoc.values();
+
+  private static final int KEY_ATOM = 1;
+  private static final int KEY_LONG = 2;
+  private static final int KEY_DOUBLE = 3;
+  private static final int KEY_STRUCT = 4;
+  private static final int KEY_NULL_LIST = 5;
+  private static final int KEY_LIST = 6;
+
+  private TermCodec() {
+  }
+
+  /**
+   * Check that term can be used as key of index, only bound terms can.
+   *
+   * @param term term to check, must not be null
+   * @return true if the term is not free variable
+   */
+  static boolean isIndexable(final Term term) {
+    return !(term.findNonVarOrSame() instanceof TermVar);
+  }
+
+  /**
+   * Make hash key of bound term, terms which can be unified have the same key.
+   *
+   * @param term bound term, must not be null
+   * @return hash key
+   */
+  static int keyOf(final Term term) {
+    final Term value = term.findNonVarOrSame();
+    final int result;
+    if (value instanceof TermLong) {
+      result = Long.hashCode(value.toNumber().longValue()) * 31 + KEY_LONG;
+    } else if (value instanceof TermDouble) {
+      result = Double.hashCode(value.toNumber().doubleValue()) * 31 + KEY_DOUBLE;
+    } else if (value instanceof TermList) {
+      result = ((TermList) value).isNullList() ? KEY_NULL_LIST : KEY_LIST;
+    } else if (value instanceof TermStruct && ((TermStruct) value).getArity() > 0) {
+      final TermStruct struct = (TermStruct) value;
+      result = (struct.getFunctor().getText().hashCode() * 31 + struct.getArity()) * 31 + KEY_STRUCT;
+    } else {
+      result = value.getText().hashCode() * 31 + KEY_ATOM;
+    }
+    // spread bits because keys are used by power of two tables
+    int hash = result ^ (result >>> 16);
+    hash *= 0x85EBCA6B;
+    hash ^= hash >>> 13;
+    hash *= 0xC2B2AE35;
+    return hash ^ (hash >>> 16);
+  }
+
+  static void encode(final Term term, final DataOutput out) throws IOException {
+    encode(term, out, new HashMap<>());
+  }
+
+  private static void encode(final Term term, final DataOutput out, final Map<Integer, Integer> vars) throws IOException {
+    final Term value = term.findNonVarOrSame();
+    if (value instanceof TermVar) {
+      final TermVar var = (TermVar) value;
+      final Integer index = vars.get(var.getVarUid());
+      if (index == null) {
+        vars.put(var.getVarUid(), vars.size());
+        out.writeByte(TAG_NEW_VAR);
+        writeText(out, var.isAnonymous() ? "" : var.getText());
+      } else {
+        out.writeByte(TAG_VAR);
+        out.writeInt(index);
+      }
+    } else if (value instanceof TermLong) {
+      out.writeByte(TAG_LONG);
+      out.writeLong(value.toNumber().longValue());
+    } else if (value instanceof TermDouble) {
+      out.writeByte(TAG_DOUBLE);
+      out.writeDouble(value.toNumber().doubleValue());
+    } else if (value instanceof TermList) {
+      TermList list = (TermList) value;
+      if (list.isNullList()) {
+        out.writeByte(TAG_NULL_LIST);
+        return;
+      }
+      final List<Term> elements = new ArrayList<>();
+      Term tail = list;
+      while (tail instanceof TermList && !((TermList) tail).isNullList()) {
+        list = (TermList) tail;
+        elements.add(list.getHead());
+        tail = list.getTail().findNonVarOrSame();
+      }
+      out.writeByte(TAG_LIST);
+      out.writeInt(elements.size());
+      for (final Term element : elements) {
+        encode(element, out, vars);
+      }
+      encode(tail, out, vars);
+    } else if (value instanceof TermStruct) {
+      final TermStruct struct = (TermStruct) value;
+      final Term functor = struct.getFunctor();
+      if (functor instanceof TermOperator) {
+        out.writeByte(TAG_OPERATOR_STRUCT);
+        writeOperator(out, (TermOperator) functor);
+      } else {
+        out.writeByte(TAG_STRUCT);
+        writeText(out, functor.getText());
+      }
+      out.writeInt(struct.getArity());
+      for (final Term element : struct.getElementArray()) {
+        encode(element, out, vars);
+      }
+    } else if (value instanceof TermOperator) {
+      out.writeByte(TAG_OPERATOR);
+      writeOperator(out, (TermOperator) value);
+    } else {
+      switch (value.getTermType()) {
+        case ATOM:
+        case OPERATORS: {
+          out.writeByte(TAG_ATOM);
+          writeText(out, value.getText());
+        }
+        break;
+        default:
+          throw new IllegalArgumentException("Term can't be stored: " + value);
+      }
+    }
+  }
+
+  /**
+   * Decode term from current position of buffer, the position is moved to the end of the term.
+   *
+   * @param buffer buffer positioned to start of term, must not be null
+   * @return decoded term with new variables
+   */
+  static Term decode(final ByteBuffer buffer) {
+    return decode(buffer, new ArrayList<>());
+  }
+
+  private static Term decode(final ByteBuffer buffer, final List<TermVar> vars) {
+    final byte tag = buffer.get();
+    switch (tag) {
+      case TAG_ATOM:
+        return newAtom(readText(buffer));
+      case TAG_LONG:
+        return newLong(buffer.getLong());
+      case TAG_DOUBLE:
+        return newDouble(buffer.getDouble());
+      case TAG_NEW_VAR: {
+        final String name = readText(buffer);
+        final TermVar var = name.isEmpty() ? newVar() : newVar(name);
+        vars.add(var);
+        return var;
+      }
+      case TAG_VAR:
+        return vars.get(buffer.getInt());
+      case TAG_NULL_LIST:
+        return Terms.NULL_LIST;
+      case TAG_LIST: {
+        final Term[] elements = new Term[buffer.getInt()];
+        for (int i = 0; i < elements.length; i++) {
+          elements[i] = decode(buffer, vars);
+        }
+        Term result = decode(buffer, vars);
+        for (int i = elements.length - 1; i >= 0; i--) {
+          result = newList(elements[i], result);
+        }
+        return result;
+      }
+      case TAG_OPERATOR:
+        return readOperator(buffer);
+      case TAG_STRUCT:
+      case TAG_OPERATOR_STRUCT: {
+        final Term functor = tag == TAG_STRUCT ? newAtom(readText(buffer)) : readOperator(buffer);
+        final Term[] elements = new Term[buffer.getInt()];
+        for (int i = 0; i < elements.length; i++) {
+          elements[i] = decode(buffer, vars);
+        }
+        return elements.length == 0 ? newStruct(functor) : newStruct(functor, elements);
+      }
+      default:
+        throw new IllegalStateException("Unexpected tag in mapped file: " + tag);
+    }
+  }
+
+  private static void writeOperator(final DataOutput out, final TermOperator operator) throws IOException {
+    writeText(out, operator.getText());
+    out.writeByte(operator.getOperatorType().ordinal());
+    out.writeInt(operator.getPriority());
+  }
+
+  private static TermOperator readOperator(final ByteBuffer buffer) {
+    final String name = readText(buffer);
+    final OpAssoc type = OPERATOR_TYPES[buffer.get()];
+    return new TermOperator(buffer.getInt(), type, name);
+  }
+
+  static void writeText(final DataOutput out, final String text) throws IOException {
+    final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static String readText(final ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -41,14 +41,13 @@ import java.util.stream.Collectors;
 import static com.igormaznitsa.jprol.data.TermType.VAR;
 import static com.igormaznitsa.jprol.data.Terms.*;
 import static com.igormaznitsa.jprol.utils.Utils.SIGNATURE_OPERATOR;
-import static java.lang.Integer.parseInt;
 
 public abstract class AbstractJProlLibrary {
 
   private final String libraryUid;
   private final Map<String, TermOperatorContainer> systemOperators;
-  private final Map<String, PredicateInvoker> predicateMethodsMap;
-  private final Set<String> zeroArityPredicateNames;
+  private final Map<Functor, PredicateInvoker> predicateMethodsMap;
+  private final Set<Functor> zeroArityPredicateNames;
 
   private final Map<JProlContext, Map<String, Object>> contextNamedObjects = new ConcurrentHashMap<>();
 
@@ -60,7 +59,7 @@ public abstract class AbstractJProlLibrary {
     this.libraryUid = libraryUid;
 
     this.systemOperators = Collections.unmodifiableMap(loadStaticOperators(this.getClass()));
-    final Set<String> zeroArityPredicates = new HashSet<>();
+    final Set<Functor> zeroArityPredicates = new HashSet<>();
     this.predicateMethodsMap = Collections.unmodifiableMap(extractAnnotatedMethodsAsPredicates(libraryUid, zeroArityPredicates));
     this.zeroArityPredicateNames = Collections.unmodifiableSet(zeroArityPredicates);
   }
@@ -100,6 +99,25 @@ public abstract class AbstractJProlLibrary {
     return result;
   }
 
+  /**
+   * Find processor of structure, structures made at runtime (for instance decoded by knowledge
+   * base) don't have processor set by parser, they are resolved through dispatch table.
+   *
+   * @param goal   current goal, must not be null
+   * @param struct structure, must not be null
+   * @return found processor or NULL_PROCESSOR
+   */
+  protected static PredicateInvoker findProcessor(final JProlChoicePoint goal, final TermStruct struct) {
+    PredicateInvoker processor = struct.getPredicateProcessor();
+    if (processor == PredicateInvoker.NULL_PROCESSOR) {
+      processor = goal.getContext().findProcessor(struct);
+      if (processor != PredicateInvoker.NULL_PROCESSOR) {
+        struct.setPredicateProcessor(processor);
+      }
+    }
+    return processor;
+  }
+
   protected static NumericTerm calculatEvaluable(final JProlChoicePoint goal, final Term term) {
     try {
       if (term.getTermType() == VAR) {
@@ -115,7 +133,7 @@ public abstract class AbstractJProlLibrary {
         }
         break;
         case STRUCT: {
-          final PredicateInvoker processor = ((TermStruct) term).getPredicateProcessor();
+          final PredicateInvoker processor = findProcessor(goal, (TermStruct) term);
           if (processor.isEvaluable()) {
             result = (NumericTerm) processor.executeEvaluable(goal, (TermStruct) term);
           } else {
@@ -161,30 +179,32 @@ public abstract class AbstractJProlLibrary {
   public List<TermStruct> findAllForPredicateIndicator(final Term predicateIndicator) {
     return this.predicateMethodsMap.keySet()
         .stream()
-        .map(key -> {
-          final int index = key.lastIndexOf('/');
-          return newStruct(SIGNATURE_OPERATOR,
-              new Term[] {
-                  newAtom(key.substring(0, index)),
-                  newLong(parseInt(key.substring(index + 1)))
-              });
-        })
+        .map(key -> newStruct(SIGNATURE_OPERATOR,
+            new Term[] {
+                key.getAtom(),
+                newLong(key.getArity())
+            }))
         .filter(predicateIndicator::dryUnifyTo)
         .collect(Collectors.toList());
   }
 
   public boolean hasPredicateForSignature(final String signature) {
-    return this.predicateMethodsMap.containsKey(signature);
+    final Functor key = Functor.fromSignature(signature);
+    return key != null && this.predicateMethodsMap.containsKey(key);
   }
 
   public PredicateInvoker findProcessorForPredicate(final TermStruct predicate) {
-    final String signture = predicate.getSignature();
-    PredicateInvoker result = onBeforeFindProcessorForPredicate(signture);
-    return result == null ? this.predicateMethodsMap.get(predicate.getSignature()) : result;
+    final Functor key = predicate.getFunctorKey();
+    PredicateInvoker result = onBeforeFindProcessorForPredicate(key.getSignature());
+    return result == null ? this.predicateMethodsMap.get(key) : result;
   }
 
   public boolean hasZeroArityPredicate(final String predicateName) {
-    return this.onBeforeHasZeroArityPredicate(predicateName) || this.zeroArityPredicateNames.contains(predicateName);
+    return this.hasZeroArityPredicate(Functor.of(predicateName, 0));
+  }
+
+  public boolean hasZeroArityPredicate(final Functor predicate) {
+    return this.onBeforeHasZeroArityPredicate(predicate.getName()) || this.zeroArityPredicateNames.contains(predicate);
   }
 
   protected boolean onBeforeHasZeroArityPredicate(final String predicateName) {
@@ -233,8 +253,8 @@ public abstract class AbstractJProlLibrary {
     this.contextNamedObjects.remove(context);
   }
 
-  private Map<String, PredicateInvoker> extractAnnotatedMethodsAsPredicates(final String libraryUID, final Set<String> foundZeroArityPredicates) {
-    final Map<String, PredicateInvoker> result = new HashMap<>();
+  private Map<Functor, PredicateInvoker> extractAnnotatedMethodsAsPredicates(final String libraryUID, final Set<Functor> foundZeroArityPredicates) {
+    final Map<Functor, PredicateInvoker> result = new HashMap<>();
 
     final Method[] methods = this.getClass().getMethods();
     for (final Method method : methods) {
@@ -243,26 +263,30 @@ public abstract class AbstractJProlLibrary {
       if (predicateAnnotation != null) {
         final String signature = Utils.normalizeSignature(predicateAnnotation.signature());
 
-        if (signature == null) {
+        final Functor key = Functor.fromSignature(signature);
+        if (key == null) {
           throw new ProlCriticalError("Wrong signature of a predicate method " + method.getName() + " at " + libraryUID);
         }
 
-        if (result.containsKey(signature)) {
+        if (result.containsKey(key)) {
           throw new ProlCriticalError("Duplicated predicate method " + signature + " at " + libraryUID);
         }
 
         final PredicateInvoker invoker = new PredicateInvoker(this, predicateAnnotation.determined(), predicateAnnotation.evaluable(), predicateAnnotation.changesChooseChain(), signature, method);
-        result.put(signature, invoker);
-        if (signature.endsWith("/0")) {
-          foundZeroArityPredicates.add(signature.substring(0, signature.lastIndexOf('/')));
+        result.put(key, invoker);
+        if (key.getArity() == 0) {
+          foundZeroArityPredicates.add(key);
         }
 
         final String[] synonimSignatures = predicateAnnotation.synonims();
           for (String synonimSignature : synonimSignatures) {
-            final String sig = synonimSignature.trim();
-            result.put(sig, invoker);
-            if (sig.endsWith("/0")) {
-              foundZeroArityPredicates.add(sig.substring(0, sig.lastIndexOf('/')));
+            final Functor synonim = Functor.fromSignature(synonimSignature.trim());
+            if (synonim == null) {
+              throw new ProlCriticalError("Wrong synonim signature of a predicate method " + method.getName() + " at " + libraryUID);
+            }
+            result.put(synonim, invoker);
+            if (synonim.getArity() == 0) {
+              foundZeroArityPredicates.add(synonim);
             }
           }
       }
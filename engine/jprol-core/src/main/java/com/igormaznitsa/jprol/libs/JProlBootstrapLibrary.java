@@ -116,6 +116,9 @@ public class JProlBootstrapLibrary extends AbstractJProlLibrary {
     final Term right = predicate.getElement(1).findNonVarOrSame();
 
     if (cpoint.isArgsValidate()) {
+      if (right.getTermType() == TermType.STRUCT) {
+        findProcessor(cpoint, (TermStruct) right);
+      }
       ProlAssertions.assertEvaluable(right);
     }
 
@@ -23,10 +23,12 @@ import com.igormaznitsa.jprol.data.*;
 import com.igormaznitsa.jprol.exceptions.*;
 import com.igormaznitsa.jprol.kbase.IteratorType;
 import com.igormaznitsa.jprol.kbase.KnowledgeBase;
+import com.igormaznitsa.jprol.logic.AnswerTables;
 import com.igormaznitsa.jprol.logic.JProlChoicePoint;
 import com.igormaznitsa.jprol.logic.JProlContext;
 import com.igormaznitsa.jprol.logic.JProlTreeBuilder;
 import com.igormaznitsa.jprol.logic.PredicateInvoker;
+import com.igormaznitsa.jprol.logic.ResourceLimits;
 import com.igormaznitsa.jprol.logic.triggers.JProlTriggerType;
 import com.igormaznitsa.jprol.logic.triggers.JProlTriggeringEventObserver;
 import com.igormaznitsa.jprol.utils.ProlAssertions;
@@ -37,6 +39,7 @@ import com.igormaznitsa.prologparser.tokenizer.OpAssoc;
 import java.io.StringReader;
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.igormaznitsa.jprol.data.TermType.*;
@@ -46,6 +49,7 @@ import static com.igormaznitsa.prologparser.tokenizer.OpAssoc.*;
 
 @SuppressWarnings("EmptyMethod")
 @JProlOperators(operators = {
+    @JProlOperator(priority = 1150, type = FX, name = "table"),
     @JProlOperator(priority = 1050, type = XFY, name = "->"),
     @JProlOperator(priority = 900, type = FY, name = "\\+"),
     @JProlOperator(priority = 700, type = XFX, name = ">"),
@@ -728,13 +732,82 @@ public final class JProlCoreLibrary extends AbstractJProlLibrary {
     return result;
   }
 
-  @JProlPredicate(determined = true, signature = "once/1", args = {"+callable"}, reference = "once(Term) is true. once/1 is not re-executable.")
+  @JProlPredicate(signature = "call_with_limits/2", args = {"+callable,+list"}, reference = "call_with_limits(Goal, Limits) is true if call(Goal) is true and it doesn't exceed limits from list of inferences(N), depth(N), time(Milliseconds) and memory(Bytes), else resource_error is thrown. Limit values must be positive, time is counted only while Goal is being proved so time spent between its solutions is not counted.")
+  public static boolean predicateCALLWITHLIMITS(final JProlChoicePoint goal, final TermStruct predicate) {
+    final Term argument = predicate.getElement(0).findNonVarOrSame();
+
+    JProlChoicePoint newChoicePoint = goal.getPayload();
+    if (newChoicePoint == null) {
+      final Term limits = predicate.getElement(1).findNonVarOrSame();
+      if (goal.isArgsValidate()) {
+        ProlAssertions.assertCallable(argument);
+        ProlAssertions.assertList(limits);
+      }
+
+      newChoicePoint = goal.makeForGoal(argument).setResourceLimits(makeResourceLimits(limits));
+      goal.setPayload(newChoicePoint);
+    }
+    final Term nextResult = newChoicePoint.prove();
+
+    boolean result = false;
+
+    if (nextResult != null) {
+      result = assertUnify(argument, nextResult);
+      if (newChoicePoint.isCompleted()) {
+        goal.cutVariants();
+      }
+    }
+    return result;
+  }
+
+  private static ResourceLimits makeResourceLimits(final Term limitList) {
+    final ResourceLimits.Builder builder = ResourceLimits.builder();
+    Term list = limitList;
+    while (list.getTermType() == LIST && !((TermList) list).isNullList()) {
+      final Term limit = ((TermList) list).getHead().findNonVarOrSame();
+      if (limit.getTermType() != STRUCT || ((TermStruct) limit).getArity() != 1) {
+        throw new ProlDomainErrorException("resource_limit", limit);
+      }
+      final Term value = ((TermStruct) limit).getElement(0).findNonVarOrSame();
+      ProlAssertions.assertInteger(value);
+      final long number = value.toNumber().longValue();
+      if (number <= 0L) {
+        // zero means unlimited for ResourceLimits, so it is not accepted as limit of goal
+        throw new ProlDomainErrorException("positive_integer", value);
+      }
+      switch (((TermStruct) limit).getFunctor().getText()) {
+        case "inferences":
+          builder.maxInferences(number);
+          break;
+        case "depth":
+          builder.maxDepth((int) Math.min(Integer.MAX_VALUE, number));
+          break;
+        case "time":
+          builder.timeout(number, TimeUnit.MILLISECONDS);
+          break;
+        case "memory":
+          builder.maxAllocatedBytes(number);
+          break;
+        default:
+          throw new ProlDomainErrorException("resource_limit", limit);
+      }
+      list = ((TermList) list).getTail().findNonVarOrSame();
+    }
+    return builder.build();
+  }
+
+  @JProlPredicate(determined = true, signature = "once/1", args = {"+callable"}, reference = "once(Term) is true. once/1 is not re-executable. If flag or_parallel is true then the goal is proved by or-parallel search like par_once/1.")
   public static boolean predicateONCE(final JProlChoicePoint goal, final TermStruct predicate) {
     final Term argument = predicate.getElement(0).findNonVarOrSame();
     if (goal.isArgsValidate()) {
       ProlAssertions.assertCallable(argument);
     }
 
+    if (goal.getContext().isOrParallel() && !goal.isOrParallelBranch()) {
+      final Term solution = goal.getContext().proveOnceOrParallel(argument);
+      return solution != null && argument.unifyTo(solution);
+    }
+
     final JProlChoicePoint currentgoal = new JProlChoicePoint(argument, goal.getContext());
     final Term nextResult = currentgoal.prove();
 
@@ -1570,6 +1643,83 @@ public final class JProlCoreLibrary extends AbstractJProlLibrary {
     return true;
   }
 
+  @JProlPredicate(determined = true, signature = "columnar/1", args = {"+predicate_indicator"}, reference = "Keep ground facts of the predicate in columns of integers, floats and atoms, facts are made only when found. Can be used as directive ':- columnar(price/3).'. True if the knowledge base supports it and current clauses of the predicate are such facts. The predicate is moved back to usual storage when other clause is added.")
+  public static boolean predicateCOLUMNAR1(final JProlChoicePoint goal, final TermStruct predicate) {
+    final Term arg = predicate.getElement(0).findNonVarOrSame();
+    if (goal.isArgsValidate()) {
+      ProlAssertions.assertIndicator(arg);
+    }
+    final String signature = Utils.extractPredicateSignatureFromStructure(arg);
+    if (goal.getContext().hasPredicateAtLibraryForSignature(signature)) {
+      throw new ProlPermissionErrorException("modify", "static_procedure", newAtom(signature));
+    }
+    return goal.getContext().getKnowledgeBase().declareColumnar(signature);
+  }
+
+  @JProlPredicate(determined = true, signature = "table/1", args = {"+predicate_indicator", "+list"}, reference = "Declare predicates as tabled, calls of tabled predicate are answered from tables of their variants. Can be used as directive ':- table path/2.', indicators can be combined by comma or provided as a list.")
+  public static boolean predicateTABLE1(final JProlChoicePoint goal, final TermStruct predicate) {
+    Term indicators = predicate.getElement(0).findNonVarOrSame();
+    final JProlContext context = goal.getContext();
+    final List<Term> found = new ArrayList<>();
+    while (indicators.getTermType() == STRUCT
+        && ((TermStruct) indicators).getArity() == 2
+        && ",".equals(((TermStruct) indicators).getFunctor().getText())) {
+      found.add(((TermStruct) indicators).getElement(0).findNonVarOrSame());
+      indicators = ((TermStruct) indicators).getElement(1).findNonVarOrSame();
+    }
+    if (indicators.getTermType() == LIST) {
+      TermList list = (TermList) indicators;
+      while (!list.isNullList()) {
+        found.add(list.getHead().findNonVarOrSame());
+        final Term tail = list.getTail().findNonVarOrSame();
+        ProlAssertions.assertList(tail);
+        list = (TermList) tail;
+      }
+    } else {
+      found.add(indicators);
+    }
+
+    for (final Term indicator : found) {
+      ProlAssertions.assertIndicator(indicator);
+      final String signature = Utils.extractPredicateSignatureFromStructure(indicator);
+      if (context.hasPredicateAtLibraryForSignature(signature)) {
+        throw new ProlPermissionErrorException("modify", "static_procedure", newAtom(signature));
+      }
+      context.getAnswerTables().declare(Functor.fromSignature(signature));
+    }
+    return true;
+  }
+
+  @JProlPredicate(determined = true, signature = "abolish_all_tables/0", reference = "Remove all answer tables, tabled predicates are evaluated again on next call.")
+  public static void predicateABOLISHALLTABLES(final JProlChoicePoint goal, final TermStruct predicate) {
+    goal.getContext().getAnswerTables().abolishAll();
+  }
+
+  @JProlPredicate(signature = "table_statistics/3", args = {"?callable,?integer,?integer"}, reference = "table_statistics(Variant, Answers, Hits) is true for every answer table where Variant is the tabled call, Answers is number of answers in the table and Hits is number of calls answered from the table.")
+  public static boolean predicateTABLESTATISTICS3(final JProlChoicePoint goal, final TermStruct predicate) {
+    final Term variant = predicate.getElement(0).findNonVarOrSame();
+    final Term answers = predicate.getElement(1).findNonVarOrSame();
+    final Term hits = predicate.getElement(2).findNonVarOrSame();
+
+    Iterator<AnswerTables.Table> iterator = goal.getPayload();
+    if (iterator == null) {
+      iterator = new ArrayList<>(goal.getContext().getAnswerTables().getTables()).iterator();
+      goal.setPayload(iterator);
+    }
+
+    while (iterator.hasNext()) {
+      final AnswerTables.Table table = iterator.next();
+      final Term tableVariant = table.getVariant().makeClone();
+      final Term tableAnswers = newLong(table.getAnswerCount());
+      final Term tableHits = newLong(table.getHits());
+      if (variant.dryUnifyTo(tableVariant) && answers.dryUnifyTo(tableAnswers) && hits.dryUnifyTo(tableHits)) {
+        return assertUnify(variant, tableVariant) && assertUnify(answers, tableAnswers) && assertUnify(hits, tableHits);
+      }
+    }
+    goal.cutVariants();
+    return false;
+  }
+
   @JProlPredicate(determined = true, signature = "sort/2", args = {"+list,?list"}, reference = "True if Sorted can be unified with a list holding the elements of List, sorted to the standard order of terms")
   public static boolean predicateSORT2(final JProlChoicePoint cpoint, final TermStruct predicate) {
     final Term termList = predicate.getElement(0).findNonVarOrSame();
@@ -1955,6 +2105,51 @@ public final class JProlCoreLibrary extends AbstractJProlLibrary {
     return true;
   }
 
+  @JProlPredicate(determined = true, signature = "load_facts/2", args = {"+predicate_indicator,+list"}, reference = "load_facts(Name/Arity,Rows) adds facts made from rows after all clauses of the predicate, every row is list of arguments. Facts are added at once and triggers are notified once. Always true.")
+  public static boolean predicateLOADFACTS2(final JProlChoicePoint goal, final TermStruct predicate) {
+    final Term indicator = predicate.getElement(0).findNonVarOrSame();
+    final Term rows = predicate.getElement(1).findNonVarOrSame();
+    if (goal.isArgsValidate()) {
+      ProlAssertions.assertIndicator(indicator);
+      ProlAssertions.assertList(rows);
+    }
+    final String signature = Utils.extractPredicateSignatureFromStructure(indicator);
+    if (goal.getContext().hasPredicateAtLibraryForSignature(signature)) {
+      throw new ProlPermissionErrorException("modify", "static_procedure", newAtom(signature));
+    }
+    final int arity = Functor.fromSignature(signature).getArity();
+
+    final Iterator<Term[]> iterator = new Iterator<Term[]>() {
+      private Term rest = rows.makeCloneAndVarBound();
+
+      @Override
+      public boolean hasNext() {
+        return this.rest.getTermType() == LIST && !((TermList) this.rest).isNullList();
+      }
+
+      @Override
+      public Term[] next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        final TermList list = (TermList) this.rest;
+        final Term row = list.getHead().findNonVarOrSame();
+        this.rest = list.getTail().findNonVarOrSame();
+        if (row.getTermType() != LIST) {
+          throw new ProlTypeErrorException("list", "Row must be list of arguments: " + row, row);
+        }
+        final Term[] arguments = ((TermList) row).toArray();
+        if (arguments.length != arity) {
+          throw new ProlDomainErrorException("Row must contain " + arity + " arguments", row);
+        }
+        return arguments;
+      }
+    };
+
+    goal.getContext().getKnowledgeBase().bulkLoad(goal.getContext(), signature, iterator);
+    return true;
+  }
+
   @JProlPredicate(determined = true, signature = "retract/1", synonims = {"retracta/1"}, args = {"+callable"}, reference = "Retract the first clause which can be unified with argument. True if there is such clause in the knowledge base.")
   public static boolean predicateRETRACT1(final JProlChoicePoint goal, final TermStruct predicate) {
     final KnowledgeBase base = goal.getContext().getKnowledgeBase();
@@ -2118,6 +2313,10 @@ public final class JProlCoreLibrary extends AbstractJProlLibrary {
       throw new ProlEvaluationErrorException(predicate.getElement(0).forWrite(), predicate);
     }
 
+    if ("resource_error/1".equals(exceptionSignature)) {
+      throw new ProlResourceErrorException(predicate.getElement(0).forWrite(), predicate);
+    }
+
     // all other errors make as custom
     //-------------------------------------
     Term arg = predicate.getElement(0);
@@ -2135,7 +2334,7 @@ public final class JProlCoreLibrary extends AbstractJProlLibrary {
     }
     final long milliseconds = term.toNumber().longValue();
     if (milliseconds > 0) {
-      Thread.sleep(milliseconds);
+      Utils.sleepManaged(milliseconds);
     }
   }
 
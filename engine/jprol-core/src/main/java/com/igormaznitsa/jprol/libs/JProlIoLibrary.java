@@ -384,6 +384,18 @@ public class JProlIoLibrary extends AbstractJProlLibrary {
     }).orElseThrow(() -> new ProlPermissionErrorException("write", "text_stream", predicate));
   }
 
+  @JProlPredicate(determined = true, signature = "profile_report/0", reference = "Print data collected by profiler of the context (flag profile) into current output stream, predicates are sorted by exclusive time.")
+  public final boolean predicatePROFILEREPORT(final JProlChoicePoint goal, final TermStruct predicate) {
+    return this.findCurrentOutput(goal.getContext(), predicate).map(writer -> {
+      try {
+        goal.getContext().getProfiler().writeReport(writer);
+        return true;
+      } catch (IOException ex) {
+        throw new ProlPermissionErrorException("write", "text_stream", predicate, ex);
+      }
+    }).orElseThrow(() -> new ProlPermissionErrorException("write", "text_stream", predicate));
+  }
+
   @JProlPredicate(determined = true, signature = "tab/1", args = {"+integer"}, reference = "Out a number of space symbols into current output stream")
   public final boolean predicateTAB(final JProlChoicePoint goal, final TermStruct predicate) throws IOException {
     final long spaces = predicate.getElement(0).toNumber().longValue();
@@ -4,19 +4,35 @@ import com.igormaznitsa.jprol.annotations.JProlPredicate;
 import com.igormaznitsa.jprol.data.Term;
 import com.igormaznitsa.jprol.data.TermList;
 import com.igormaznitsa.jprol.data.TermStruct;
+import com.igormaznitsa.jprol.data.TermType;
+import com.igormaznitsa.jprol.exceptions.ProlDomainErrorException;
 import com.igormaznitsa.jprol.exceptions.ProlExistenceErrorException;
 import com.igormaznitsa.jprol.exceptions.ProlForkExecutionException;
 import com.igormaznitsa.jprol.exceptions.ProlInstantiationErrorException;
 import com.igormaznitsa.jprol.exceptions.ProlPermissionErrorException;
+import com.igormaznitsa.jprol.kbase.IteratorType;
 import com.igormaznitsa.jprol.logic.JProlChoicePoint;
+import com.igormaznitsa.jprol.logic.JProlContext;
+import com.igormaznitsa.jprol.logic.PredicateInvoker;
 import com.igormaznitsa.jprol.utils.ProlAssertions;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
+import static com.igormaznitsa.jprol.data.Terms.NULL_LIST;
+import static com.igormaznitsa.jprol.data.Terms.newAtom;
+import static com.igormaznitsa.jprol.data.Terms.newList;
+import static com.igormaznitsa.jprol.data.Terms.newLong;
+import static com.igormaznitsa.jprol.data.Terms.newStruct;
+import static com.igormaznitsa.jprol.utils.Utils.createOrAppendToList;
 import static com.igormaznitsa.jprol.utils.Utils.extractErrors;
 
 public class JProlThreadLibrary extends AbstractJProlLibrary {
@@ -32,6 +48,225 @@ public class JProlThreadLibrary extends AbstractJProlLibrary {
         .collect(Collectors.toList());
   }
 
+  private static int findParallelism(final JProlContext context) {
+    final ExecutorService executor = context.getContextExecutorService();
+    return executor instanceof ForkJoinPool
+        ? ((ForkJoinPool) executor).getParallelism()
+        : Runtime.getRuntime().availableProcessors();
+  }
+
+  private static boolean hasCut(final Term term) {
+    final Term value = term.findNonVarOrSame();
+    if (value.getTermType() == TermType.ATOM) {
+      return "!".equals(value.getText());
+    } else if (value.getTermType() == TermType.STRUCT) {
+      final TermStruct struct = (TermStruct) value;
+      if (struct.getArity() == 0) {
+        return "!".equals(struct.getFunctor().getText());
+      }
+      for (int i = 0; i < struct.getArity(); i++) {
+        if (hasCut(struct.getElement(i))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean hasCutOrCondition(final Term term) {
+    final Term value = term.findNonVarOrSame();
+    if (value.getTermType() == TermType.STRUCT && ((TermStruct) value).getArity() == 2) {
+      if ("->".equals(((TermStruct) value).getFunctor().getText())) {
+        return true;
+      }
+      return hasCutOrCondition(((TermStruct) value).getElement(0)) || hasCutOrCondition(((TermStruct) value).getElement(1));
+    }
+    return hasCut(value);
+  }
+
+  private static Term and(final Term left, final Term right) {
+    return right == null ? left : newStruct(newAtom(","), new Term[] {left, right});
+  }
+
+  /**
+   * Split goal into independent branches which give all solutions of the goal being proved one by
+   * one. Leftmost for/3 counter is split into sub-ranges, leftmost call of a not tabled knowledge
+   * base predicate is split into its clauses if they don't contain cut, else the goal is not split.
+   * Every branch gets rest of the conjunction, so the goal is not split if the rest contains cut or
+   * condition which must prune all branches.
+   */
+  private static List<Term> splitIntoBranches(final JProlContext context, final Term goal) {
+    Term first = goal.findNonVarOrSame();
+    Term rest = null;
+    while (first.getTermType() == TermType.STRUCT
+        && ((TermStruct) first).getArity() == 2
+        && ",".equals(((TermStruct) first).getFunctor().getText())) {
+      rest = and(((TermStruct) first).getElement(1), rest);
+      first = ((TermStruct) first).getElement(0).findNonVarOrSame();
+    }
+    if (first.getTermType() != TermType.STRUCT || (rest != null && hasCutOrCondition(rest))) {
+      return Collections.singletonList(goal);
+    }
+
+    final TermStruct call = (TermStruct) first;
+    final List<Term> result = new ArrayList<>();
+    if ("for".equals(call.getFunctor().getText()) && call.getArity() == 3) {
+      final Term low = call.getElement(1).findNonVarOrSame();
+      final Term high = call.getElement(2).findNonVarOrSame();
+      if (low.getTermType() == TermType.ATOM && high.getTermType() == TermType.ATOM) {
+        ProlAssertions.assertInteger(low);
+        ProlAssertions.assertInteger(high);
+        final long from = low.toNumber().longValue();
+        final long to = high.toNumber().longValue();
+        final long step = from <= to ? 1L : -1L;
+        final long count = Math.abs(to - from) + 1L;
+        final long chunks = Math.min(count, findParallelism(context) * 4L);
+        long start = from;
+        for (long i = 0; i < chunks; i++) {
+          final long size = count / chunks + (i < count % chunks ? 1L : 0L);
+          final long end = start + step * (size - 1L);
+          final TermStruct counter = newStruct(call.getFunctor(),
+              new Term[] {call.getElement(0), newLong(start), newLong(end)}, call.getPredicateProcessor());
+          result.add(and(counter, rest));
+          start = end + step;
+        }
+        return result;
+      }
+    } else if (context.findProcessor(call) == PredicateInvoker.NULL_PROCESSOR
+        && !context.getAnswerTables().isTabled(call.getFunctorKey())) {
+      final Iterator<TermStruct> clauses = context.getKnowledgeBase().iterate(IteratorType.ANY, call, x -> {
+      });
+      while (clauses.hasNext()) {
+        final TermStruct clause = clauses.next();
+        if (clause.isClause()) {
+          if (hasCut(clause.getElement(1))) {
+            return Collections.singletonList(goal);
+          }
+          result.add(and(newStruct(newAtom("="), new Term[] {call, clause.getElement(0)}), and(clause.getElement(1), rest)));
+        } else {
+          result.add(and(newStruct(newAtom("="), new Term[] {call, clause}), rest));
+        }
+      }
+      return result;
+    }
+    return Collections.singletonList(goal);
+  }
+
+  private static boolean isOrdered(final Term options) {
+    boolean result = true;
+    TermList list = (TermList) options;
+    while (!list.isNullList()) {
+      final Term option = list.getHead().findNonVarOrSame();
+      if (option.getTermType() == TermType.STRUCT
+          && ((TermStruct) option).getArity() == 1
+          && "ordered".equals(((TermStruct) option).getFunctor().getText())) {
+        final String value = ((TermStruct) option).getElement(0).findNonVarOrSame().getText();
+        if ("true".equals(value)) {
+          result = true;
+        } else if ("false".equals(value)) {
+          result = false;
+        } else {
+          throw new ProlDomainErrorException("par_findall_option", option);
+        }
+      } else {
+        throw new ProlDomainErrorException("par_findall_option", option);
+      }
+      final Term tail = list.getTail().findNonVarOrSame();
+      ProlAssertions.assertList(tail);
+      list = (TermList) tail;
+    }
+    return result;
+  }
+
+  private static boolean parFindAll(
+      final JProlChoicePoint cpoint,
+      final TermStruct predicate,
+      final Term template,
+      final Term goal,
+      final Term instances,
+      final boolean ordered
+  ) {
+    final JProlContext context = cpoint.getContext();
+    final List<Term> branches = splitIntoBranches(context, goal);
+
+    final List<List<Term>> branchResults = new ArrayList<>();
+    final List<Term> unorderedResults = Collections.synchronizedList(new ArrayList<>());
+    final List<CompletableFuture<Term>> startedTasks = new ArrayList<>();
+    for (final Term branch : branches) {
+      // template and branch are cloned together to keep their common variables
+      final TermStruct pair = (TermStruct) newStruct(newAtom("-"), new Term[] {template, branch}).makeClone();
+      final Term branchTemplate = pair.getElement(0);
+      final List<Term> found = ordered ? new ArrayList<>() : unorderedResults;
+      if (ordered) {
+        branchResults.add(found);
+      }
+      startedTasks.add(context.proveAllAsync(pair.getElement(1), x -> found.add(branchTemplate.makeCloneAndVarBound()))
+          .thenApply(x -> branch));
+    }
+
+    CompletableFuture.allOf(startedTasks.toArray(new CompletableFuture<?>[0])).handle((x, e) -> x).join();
+    final Throwable[] errors = extractErrors(startedTasks);
+    if (errors.length != 0) {
+      throw new ProlForkExecutionException("Detected exception during par_findall", predicate, errors);
+    }
+
+    TermList result = null;
+    TermList current = null;
+    for (final List<Term> found : ordered ? branchResults : Collections.singletonList(unorderedResults)) {
+      for (final Term term : found) {
+        if (result == null) {
+          result = newList(term);
+          current = result;
+        } else {
+          current = createOrAppendToList(current, term);
+        }
+      }
+    }
+    return instances.unifyTo(result == null ? NULL_LIST : result);
+  }
+
+  @JProlPredicate(determined = true, signature = "par_findall/3", args = {"?term,+callable,?list"}, reference = "Works like findall/3 but the goal is split into independent branches which are proved in separated threads, results are merged in the order of branches. Leftmost for/3 counter of the goal is split into sub-ranges, leftmost call of a user predicate is split into its clauses (if they don't contain cut). Every branch is proved on a copy of the context like goals of fork/1 so changes of the knowledge base made by branches are not visible.")
+  public static boolean predicatePARFINDALL3(final JProlChoicePoint cpoint, final TermStruct predicate) {
+    final Term template = predicate.getElement(0).findNonVarOrSame();
+    final Term goal = predicate.getElement(1).findNonVarOrSame();
+    final Term instances = predicate.getElement(2).findNonVarOrSame();
+
+    if (cpoint.isArgsValidate()) {
+      ProlAssertions.assertCallable(goal);
+      if (instances.getTermType() != TermType.VAR) {
+        ProlAssertions.assertList(instances);
+      }
+    }
+    return parFindAll(cpoint, predicate, template, goal, instances, true);
+  }
+
+  @JProlPredicate(determined = true, signature = "par_findall/4", args = {"?term,+callable,?list,+list"}, reference = "Works like par_findall/3, the last argument is list of options. Option ordered(false) allows to collect results in the order they are found by threads.")
+  public static boolean predicatePARFINDALL4(final JProlChoicePoint cpoint, final TermStruct predicate) {
+    final Term template = predicate.getElement(0).findNonVarOrSame();
+    final Term goal = predicate.getElement(1).findNonVarOrSame();
+    final Term instances = predicate.getElement(2).findNonVarOrSame();
+    final Term options = predicate.getElement(3).findNonVarOrSame();
+
+    if (cpoint.isArgsValidate()) {
+      ProlAssertions.assertCallable(goal);
+      if (instances.getTermType() != TermType.VAR) {
+        ProlAssertions.assertList(instances);
+      }
+    }
+    ProlAssertions.assertList(options);
+    return parFindAll(cpoint, predicate, template, goal, instances, isOrdered(options));
+  }
+
+  @JProlPredicate(determined = true, signature = "par_once/1", args = {"+callable"}, reference = "Works like once/1 but alternative clauses of knowledge base predicates met during the proof are given to idle threads which search solution simultaneously, the first found solution stops the search. Splitting stops in alternatives of built-in predicates, disjunctions and clauses containing cut, so it suits pure search predicates. Every branch is proved on a copy of the context like goals of fork/1, the found solution can differ from the first solution of once/1.")
+  public static boolean predicatePARONCE1(final JProlChoicePoint cpoint, final TermStruct predicate) {
+    final Term goal = predicate.getElement(0).findNonVarOrSame();
+    if (cpoint.isArgsValidate()) {
+      ProlAssertions.assertCallable(goal);
+    }
+    final Term solution = cpoint.getContext().proveOnceOrParallel(goal);
+    return solution != null && goal.unifyTo(solution);
+  }
+
   @JProlPredicate(determined = true, signature = "fork/1", args = {"+list"}, reference = "Allows to prove a few goals (non linked between each other) in separated threads simultaneously, it is blocking the calling thread until all threads (started by the predicate) are completed. The fork implements AND operation (i.e. all goals have to be true else the predicate will fail).You must not have the same noninstantiated variables in terms that will be executed in different threads. The fork_error/1 will be thrown if any thread will throw an exception.")
   public static boolean predicateFORK1(final JProlChoicePoint cpoint, final TermStruct predicate) {
     final Term arg = predicate.getElement(0).findNonVarOrSame();
@@ -41,7 +276,7 @@ public class JProlThreadLibrary extends AbstractJProlLibrary {
     TermList taskTerms = (TermList) arg;
 
     final List<CompletableFuture<Term>> startedTasks = asyncProveOnce(cpoint, taskTerms);
-    CompletableFuture.allOf(startedTasks.toArray(new CompletableFuture[0])).join();
+    CompletableFuture.allOf(startedTasks.toArray(new CompletableFuture<?>[0])).join();
     final Throwable[] errors = extractErrors(startedTasks);
     if (errors.length != 0) {
       throw new ProlForkExecutionException("Detected exception during fork/1", predicate, errors);
@@ -59,7 +294,7 @@ public class JProlThreadLibrary extends AbstractJProlLibrary {
 
     final List<CompletableFuture<Term>> startedTasks = asyncProveOnce(cpoint, taskTerms);
 
-    CompletableFuture.anyOf(startedTasks.toArray(new CompletableFuture[0])).join();
+    CompletableFuture.anyOf(startedTasks.toArray(new CompletableFuture<?>[0])).join();
     startedTasks.stream().filter(x -> !x.isDone()).forEach(x -> x.cancel(true));
     final Throwable[] errors = extractErrors(startedTasks);
     if (errors.length != 0) {
@@ -0,0 +1,264 @@
+package com.igormaznitsa.jprol.logic;
+
+import com.igormaznitsa.jprol.data.Functor;
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermList;
+import com.igormaznitsa.jprol.data.TermStruct;
+import com.igormaznitsa.jprol.data.TermVar;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Answer tables of tabled predicates of a context. A call of a tabled predicate is answered from
+ * the table of its variant, the table is filled by iterated evaluation of the predicate clauses
+ * (linear tabling): a recursive call of a variant under evaluation consumes answers found so far
+ * and the leader of mutually dependent variants re-evaluates them until no new answer is found,
+ * then all of them are completed. Tables are not invalidated on changes of the knowledge base, use
+ * {@link #abolishAll()} for that.
+ */
+public final class AnswerTables {
+
+  private final Set<Functor> tabledPredicates = ConcurrentHashMap.newKeySet();
+  private final Map<String, Table> tables = new ConcurrentHashMap<>();
+  private final ReentrantLock evaluationLock = new ReentrantLock();
+  private final Deque<Table> evaluationStack = new ArrayDeque<>();
+  private long addedAnswers;
+  private long incompleteConsumptions;
+
+  private static void appendVariantKey(final StringBuilder buffer, final Map<Integer, Integer> vars, final Term term) {
+    final Term value = term.findNonVarOrSame();
+    switch (value.getTermType()) {
+      case VAR: {
+        final int uid = ((TermVar) value).getVarUid();
+        Integer index = vars.get(uid);
+        if (index == null) {
+          index = vars.size();
+          vars.put(uid, index);
+        }
+        buffer.append('_').append(index);
+      }
+      break;
+      case STRUCT: {
+        final TermStruct struct = (TermStruct) value;
+        appendVariantKey(buffer, vars, struct.getFunctor());
+        buffer.append('(');
+        for (int i = 0; i < struct.getArity(); i++) {
+          if (i > 0) {
+            buffer.append(',');
+          }
+          appendVariantKey(buffer, vars, struct.getElement(i));
+        }
+        buffer.append(')');
+      }
+      break;
+      case LIST: {
+        TermList list = (TermList) value;
+        buffer.append('[');
+        while (!list.isNullList()) {
+          appendVariantKey(buffer, vars, list.getHead());
+          final Term tail = list.getTail().findNonVarOrSame();
+          if (tail instanceof TermList) {
+            buffer.append(',');
+            list = (TermList) tail;
+          } else {
+            buffer.append('|');
+            appendVariantKey(buffer, vars, tail);
+            break;
+          }
+        }
+        buffer.append(']');
+      }
+      break;
+      default: {
+        final String text = value.getText();
+        buffer.append(value.getClass().getSimpleName()).append(text.length()).append(':').append(text);
+      }
+      break;
+    }
+  }
+
+  /**
+   * Make key which is the same for variants of a term (terms equal up to renaming of variables).
+   *
+   * @param term term, must not be null
+   * @return variant key
+   */
+  static String makeVariantKey(final Term term) {
+    final StringBuilder buffer = new StringBuilder();
+    appendVariantKey(buffer, new HashMap<>(), term);
+    return buffer.toString();
+  }
+
+  public void declare(final Functor predicate) {
+    this.tabledPredicates.add(predicate);
+  }
+
+  public boolean isTabled(final Functor predicate) {
+    return !this.tabledPredicates.isEmpty() && this.tabledPredicates.contains(predicate);
+  }
+
+  public Set<Functor> getTabledPredicates() {
+    return Collections.unmodifiableSet(this.tabledPredicates);
+  }
+
+  public Collection<Table> getTables() {
+    return Collections.unmodifiableCollection(this.tables.values());
+  }
+
+  /**
+   * Remove all tables. Variants under evaluation keep their tables till end of the evaluation.
+   */
+  public void abolishAll() {
+    this.tables.clear();
+  }
+
+  /**
+   * Find answers for a call of tabled predicate, the table of the call variant is evaluated if it
+   * is not completed.
+   *
+   * @param goal goal making the call
+   * @param call call of tabled predicate
+   * @return answers as facts to be unified with the call
+   */
+  List<TermStruct> findAnswers(final JProlChoicePoint goal, final TermStruct call) {
+    final String key = makeVariantKey(call);
+    Table table = this.tables.get(key);
+    if (table != null && table.complete) {
+      table.hits.incrementAndGet();
+      return table.answers;
+    }
+
+    this.evaluationLock.lock();
+    try {
+      table = this.tables.get(key);
+      if (table == null) {
+        table = new Table((TermStruct) call.makeCloneAndVarBound(), key);
+        this.tables.put(key, table);
+      }
+      if (table.complete) {
+        table.hits.incrementAndGet();
+        return table.answers;
+      }
+      if (table.stackIndex >= 0) {
+        // recursive call of variant under evaluation, consume found answers
+        table.hits.incrementAndGet();
+        this.incompleteConsumptions++;
+        final Table top = this.evaluationStack.peek();
+        if (top != null) {
+          top.leader = Math.min(top.leader, table.stackIndex);
+        }
+        return new ArrayList<>(table.answers);
+      }
+      this.evaluate(goal, table);
+      return table.complete ? table.answers : new ArrayList<>(table.answers);
+    } finally {
+      this.evaluationLock.unlock();
+    }
+  }
+
+  private void evaluate(final JProlChoicePoint goal, final Table table) {
+    table.stackIndex = this.evaluationStack.size();
+    table.leader = table.stackIndex;
+    table.members.clear();
+    this.evaluationStack.push(table);
+    boolean completed = false;
+    try {
+      long answersBefore;
+      long consumptionsBefore;
+      do {
+        answersBefore = this.addedAnswers;
+        consumptionsBefore = this.incompleteConsumptions;
+        final JProlChoicePoint evaluation = goal.makeForTableEvaluation(table.variant.makeClone());
+        Term solution;
+        while ((solution = evaluation.prove()) != null) {
+          final Term answer = solution.makeCloneAndVarBound();
+          if (table.addAnswer((TermStruct) answer, makeVariantKey(answer))) {
+            this.addedAnswers++;
+          }
+        }
+        // if nobody consumed incomplete answers then there is nothing to recompute
+      } while (this.addedAnswers != answersBefore && this.incompleteConsumptions != consumptionsBefore);
+      completed = true;
+    } finally {
+      this.evaluationStack.pop();
+      table.stackIndex = -1;
+      final Table caller = this.evaluationStack.peek();
+      if (!completed) {
+        this.tables.remove(table.key, table);
+        table.members.forEach(x -> this.tables.remove(x.key, x));
+      } else if (table.leader < this.evaluationStack.size() && caller != null) {
+        // depends on a variant under evaluation, will be completed by the leader
+        caller.leader = Math.min(caller.leader, table.leader);
+        caller.members.add(table);
+        caller.members.addAll(table.members);
+      } else {
+        table.complete();
+        table.members.forEach(Table::complete);
+      }
+      table.members.clear();
+    }
+  }
+
+  /**
+   * Answer table of a call variant.
+   */
+  public static final class Table {
+
+    private final TermStruct variant;
+    private final String key;
+    private final Set<String> answerKeys = new HashSet<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final List<Table> members = new ArrayList<>();
+    private volatile List<TermStruct> answers = new ArrayList<>();
+    private volatile boolean complete;
+    private int stackIndex = -1;
+    private int leader;
+
+    private Table(final TermStruct variant, final String key) {
+      this.variant = variant;
+      this.key = key;
+    }
+
+    private boolean addAnswer(final TermStruct answer, final String answerKey) {
+      if (this.answerKeys.add(answerKey)) {
+        this.answers.add(answer);
+        return true;
+      }
+      return false;
+    }
+
+    private void complete() {
+      this.answers = Collections.unmodifiableList(this.answers);
+      this.answerKeys.clear();
+      this.complete = true;
+    }
+
+    public TermStruct getVariant() {
+      return this.variant;
+    }
+
+    public int getAnswerCount() {
+      return this.answers.size();
+    }
+
+    public long getHits() {
+      return this.hits.get();
+    }
+
+    public boolean isComplete() {
+      return this.complete;
+    }
+  }
+}
@@ -0,0 +1,226 @@
+package com.igormaznitsa.jprol.logic;
+
+import com.igormaznitsa.jprol.kbase.KnowledgeBase;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime metrics of a context, they are collected all the time and shared with copies of the
+ * context (so asynchronous goals are counted for the context which started them). Counters are
+ * only increased, rates can be calculated by a metrics system polling them.
+ */
+public final class ContextMetrics {
+
+  private final JProlContext context;
+  private final LongAdder inferences = new LongAdder();
+  private final LongAdder asserts = new LongAdder();
+  private final LongAdder retracts = new LongAdder();
+  private final LongAdder triggerInvocations = new LongAdder();
+  private final LongAdder lockContentions = new LongAdder();
+  private final AtomicInteger runningAsyncTasks = new AtomicInteger();
+  private volatile int maxChoicePointDepth;
+
+  ContextMetrics(final JProlContext context) {
+    this.context = context;
+  }
+
+  void addInferences(final long number) {
+    this.inferences.add(number);
+  }
+
+  void onChoicePointDepth(final int depth) {
+    if (depth > this.maxChoicePointDepth) {
+      synchronized (this) {
+        if (depth > this.maxChoicePointDepth) {
+          this.maxChoicePointDepth = depth;
+        }
+      }
+    }
+  }
+
+  void onTriggersInvoked(final int number) {
+    this.triggerInvocations.add(number);
+  }
+
+  void onLockContention() {
+    this.lockContentions.increment();
+  }
+
+  void onAsyncTaskStarted() {
+    this.runningAsyncTasks.incrementAndGet();
+  }
+
+  void onAsyncTaskFinished() {
+    this.runningAsyncTasks.decrementAndGet();
+  }
+
+  /**
+   * Called by knowledge base when a clause has been asserted.
+   */
+  public void onAssert() {
+    this.asserts.increment();
+  }
+
+  /**
+   * Called by knowledge base when a number of clauses has been asserted at once.
+   *
+   * @param count number of asserted clauses
+   */
+  public void onAssert(final long count) {
+    this.asserts.add(count);
+  }
+
+  /**
+   * Called by knowledge base when clauses have been retracted.
+   */
+  public void onRetract() {
+    this.retracts.increment();
+  }
+
+  public String getContextId() {
+    return this.context.getName();
+  }
+
+  /**
+   * Number of resolved goals (including redo of goals).
+   *
+   * @return total number of inferences
+   */
+  public long getInferences() {
+    return this.inferences.sum();
+  }
+
+  /**
+   * Number of asserted clauses, clauses added by consult are counted too.
+   *
+   * @return total number of asserted clauses
+   */
+  public long getAsserts() {
+    return this.asserts.sum();
+  }
+
+  /**
+   * Number of successful retract and abolish operations.
+   *
+   * @return total number of retract operations
+   */
+  public long getRetracts() {
+    return this.retracts.sum();
+  }
+
+  public long getTriggerInvocations() {
+    return this.triggerInvocations.sum();
+  }
+
+  /**
+   * Number of times when a named locker was requested while locked by another thread.
+   *
+   * @return total number of contentions
+   */
+  public long getLockContentions() {
+    return this.lockContentions.sum();
+  }
+
+  /**
+   * Number of threads waiting for named lockers.
+   *
+   * @return current number of waiting threads
+   */
+  public int getLockWaitingThreads() {
+    return this.context.getLockWaitingThreads();
+  }
+
+  /**
+   * The max nesting level of sub-proofs (clause bodies and meta-calls) met in the context.
+   *
+   * @return high-water mark of choice point depth
+   */
+  public int getMaxChoicePointDepth() {
+    return this.maxChoicePointDepth;
+  }
+
+  /**
+   * Number of asynchronous goals which are executed now.
+   *
+   * @return number of active asynchronous tasks
+   */
+  public int getActiveAsyncTasks() {
+    return Math.max(0, this.runningAsyncTasks.get());
+  }
+
+  /**
+   * Number of asynchronous goals submitted to executor but not started yet.
+   *
+   * @return number of queued asynchronous tasks
+   */
+  public int getQueuedAsyncTasks() {
+    return Math.max(0, this.context.getCurrentAsyncTaskNumber() - this.runningAsyncTasks.get());
+  }
+
+  /**
+   * Number of threads of the context executor which are executing tasks.
+   *
+   * @return number of active threads or -1 if unknown for the executor
+   */
+  public int getExecutorActiveThreads() {
+    final ExecutorService executor = this.context.getContextExecutorService();
+    if (executor instanceof ForkJoinPool) {
+      return ((ForkJoinPool) executor).getActiveThreadCount();
+    } else if (executor instanceof ThreadPoolExecutor) {
+      return ((ThreadPoolExecutor) executor).getActiveCount();
+    }
+    return -1;
+  }
+
+  /**
+   * Number of tasks waiting in queues of the context executor.
+   *
+   * @return number of queued tasks or -1 if unknown for the executor
+   */
+  public long getExecutorQueuedTasks() {
+    final ExecutorService executor = this.context.getContextExecutorService();
+    if (executor instanceof ForkJoinPool) {
+      final ForkJoinPool pool = (ForkJoinPool) executor;
+      return pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount();
+    } else if (executor instanceof ThreadPoolExecutor) {
+      return ((ThreadPoolExecutor) executor).getQueue().size();
+    }
+    return -1L;
+  }
+
+  /**
+   * Saturation of the context executor, it is ratio of active threads to parallelism (max pool
+   * size) of the executor.
+   *
+   * @return saturation from 0.0 to 1.0 or -1.0 if unknown for the executor
+   */
+  public double getExecutorSaturation() {
+    final ExecutorService executor = this.context.getContextExecutorService();
+    final int active = this.getExecutorActiveThreads();
+    final int parallelism;
+    if (executor instanceof ForkJoinPool) {
+      parallelism = ((ForkJoinPool) executor).getParallelism();
+    } else if (executor instanceof ThreadPoolExecutor) {
+      parallelism = ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+    } else {
+      parallelism = 0;
+    }
+    return active < 0 || parallelism <= 0 ? -1.0d : Math.min(1.0d, active / (double) parallelism);
+  }
+
+  /**
+   * Get number of clauses of predicates in the knowledge base, it iterates the knowledge base so it
+   * is not for frequent calls.
+   *
+   * @return map of predicate signatures to number of clauses
+   * @see KnowledgeBase#countClauses()
+   */
+  public Map<String, Integer> getClauseCounts() {
+    return this.context.getKnowledgeBase().countClauses();
+  }
+}
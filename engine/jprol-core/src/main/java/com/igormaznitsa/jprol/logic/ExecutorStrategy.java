@@ -0,0 +1,107 @@
+package com.igormaznitsa.jprol.logic;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Strategy to make executor for asynchronous goals of a context (async/1, fork/1, par_findall/3
+ * etc.). Executor made by the strategy is shut down when the context is disposed, executors provided
+ * by caller are not. Or-parallel search needs fork-join pool, so if the executor is not fork-join
+ * pool then the context makes own pool for the search and shuts it down when it is disposed.
+ */
+public final class ExecutorStrategy {
+
+  private static final String VIRTUAL_THREAD_EXECUTOR_FACTORY = "newVirtualThreadPerTaskExecutor";
+
+  private final Supplier<ExecutorService> factory;
+  private final boolean owned;
+
+  private ExecutorStrategy(final Supplier<ExecutorService> factory, final boolean owned) {
+    this.factory = factory;
+    this.owned = owned;
+  }
+
+  /**
+   * Common fork-join pool of JVM, it is default executor of context.
+   *
+   * @return strategy, must not be null
+   */
+  public static ExecutorStrategy commonPool() {
+    return new ExecutorStrategy(ForkJoinPool::commonPool, false);
+  }
+
+  /**
+   * Dedicated fork-join pool with limited parallelism, threads blocked by nested forks are
+   * compensated by the pool.
+   *
+   * @param parallelism parallelism of the pool, must be positive
+   * @return strategy, must not be null
+   */
+  public static ExecutorStrategy dedicatedPool(final int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
+    return new ExecutorStrategy(() -> new ForkJoinPool(parallelism), true);
+  }
+
+  /**
+   * Executor starting new virtual thread for every task, so blocked goals don't hold platform
+   * threads. If JVM doesn't support virtual threads (before Java 21) then dedicated fork-join pool
+   * with parallelism equal to number of processors is used.
+   *
+   * @return strategy, must not be null
+   */
+  public static ExecutorStrategy virtualThreads() {
+    return new ExecutorStrategy(() -> {
+      final ExecutorService virtualThreadExecutor = makeVirtualThreadExecutor();
+      return virtualThreadExecutor == null
+          ? new ForkJoinPool(Runtime.getRuntime().availableProcessors())
+          : virtualThreadExecutor;
+    }, true);
+  }
+
+  /**
+   * Executor provided by caller, it is not shut down by the context.
+   *
+   * @param executorService executor, must not be null
+   * @return strategy, must not be null
+   */
+  public static ExecutorStrategy of(final ExecutorService executorService) {
+    requireNonNull(executorService, "Executor is null");
+    return new ExecutorStrategy(() -> executorService, false);
+  }
+
+  /**
+   * Check that JVM supports virtual threads.
+   *
+   * @return true if virtual thread executor can be made
+   */
+  public static boolean isVirtualThreadSupported() {
+    try {
+      Executors.class.getMethod(VIRTUAL_THREAD_EXECUTOR_FACTORY);
+      return true;
+    } catch (NoSuchMethodException ex) {
+      return false;
+    }
+  }
+
+  private static ExecutorService makeVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod(VIRTUAL_THREAD_EXECUTOR_FACTORY).invoke(null);
+    } catch (ReflectiveOperationException ex) {
+      return null;
+    }
+  }
+
+  ExecutorService makeExecutor() {
+    return requireNonNull(this.factory.get(), "Executor is null");
+  }
+
+  boolean isOwned() {
+    return this.owned;
+  }
+}
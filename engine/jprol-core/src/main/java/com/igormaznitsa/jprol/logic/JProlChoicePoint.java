@@ -19,18 +19,32 @@ package com.igormaznitsa.jprol.logic;
 import com.igormaznitsa.jprol.data.*;
 import com.igormaznitsa.jprol.exceptions.ProlCriticalError;
 import com.igormaznitsa.jprol.exceptions.ProlHaltExecutionException;
-import com.igormaznitsa.jprol.kbase.IteratorType;
+import com.igormaznitsa.jprol.exceptions.ProlResourceErrorException;
+import com.igormaznitsa.jprol.exceptions.ProlTimeoutException;
+import com.igormaznitsa.jprol.kbase.KnowledgeBase;
+import com.igormaznitsa.jprol.logic.compiler.CompiledClause;
 import com.igormaznitsa.jprol.trace.TraceEvent;
+import com.igormaznitsa.jprol.utils.CloseableIterator;
 import com.igormaznitsa.jprol.utils.ProlAssertions;
+import com.igormaznitsa.jprol.utils.Utils;
 
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.igormaznitsa.jprol.data.TermType.ATOM;
+import static com.igormaznitsa.jprol.data.TermType.STRUCT;
 import static com.igormaznitsa.jprol.data.TermType.VAR;
 import static com.igormaznitsa.jprol.data.Terms.newStruct;
 import static com.igormaznitsa.jprol.trace.TraceEvent.EXIT;
@@ -39,10 +53,14 @@ import static java.util.stream.Collectors.toMap;
 
 public final class JProlChoicePoint implements Comparator<Term> {
 
+  private static final ThreadLocal<JProlChoicePoint> ACTIVE_LIMITED_PROOF = new ThreadLocal<>();
   private static final Consumer<String> NULL_UNDEFINED_PREDICATE_CONSUMER = x -> {
   };
   private final Map<String, TermVar> variables;
-  private final VariableStateSnapshot varSnapshot;
+  private final BindingTrail trail;
+  private final int trailMark;
+  private final boolean nestedProof;
+  private final int lastOuterVarUid;
   private final JProlContext context;
   private final JProlChoicePoint rootChoicePoint;
   private final Term goalTerm;
@@ -55,11 +73,20 @@ public final class JProlChoicePoint implements Comparator<Term> {
   private JProlChoicePoint subCp;
   private Term subChoicePointConnector;
   private Term thisConnector;
-  private Term nextAndTerm;
-  private Term nextAndTermForNextGoal;
+  private Continuation continuation;
   private Iterator<TermStruct> clauseIterator;
+  private RenamingFrame renamingFrame;
+  private Iterator<CompiledClause> compiledClauseIterator;
   private boolean cutMeet;
   private boolean notFirstProve;
+  private boolean tableEvaluation;
+  private OrParallelSearch.Branch orParallelBranch;
+  private JProlChoicePoint proofRoot;
+  private boolean timeLimited;
+  private long deadline;
+  private PredicateProfile profile;
+  private int depth;
+  private ResourceBudget budget;
 
   private JProlChoicePoint(
       final JProlChoicePoint rootChoicePoint,
@@ -74,6 +101,7 @@ public final class JProlChoicePoint implements Comparator<Term> {
     this.debug = debug;
 
     this.rootChoicePoint = rootChoicePoint == null ? this : rootChoicePoint;
+    this.proofRoot = rootChoicePoint == null ? this : rootChoicePoint.proofRoot;
     this.goalTerm = goalToSolve.getTermType() == ATOM ? newStruct(goalToSolve) : goalToSolve;
     this.context = context;
 
@@ -85,24 +113,42 @@ public final class JProlChoicePoint implements Comparator<Term> {
 
     if (rootChoicePoint == null) {
       if (goal.getTermType() == ATOM) {
-        this.varSnapshot = null;
         this.variables = null;
       } else {
         this.variables = goal.allNamedVarsAsMap();
-        this.varSnapshot = new VariableStateSnapshot(goal, presetVarValues);
+        if (presetVarValues != null) {
+          presetVarValues.forEach((name, value) -> {
+            final TermVar variable = this.variables.get(name);
+            if (variable != null) {
+              variable.setThisValue(value);
+            }
+          });
+        }
       }
+      // nested proofs started during a proof share trail of the proof
+      final BindingTrail activeTrail = BindingTrail.findActive();
+      this.nestedProof = activeTrail != null;
+      this.trail = this.nestedProof ? activeTrail : new BindingTrail();
+      if (this.nestedProof) {
+        // nested proof started by a goal with resource limits is charged to the goal
+        final JProlChoicePoint limitedProof = ACTIVE_LIMITED_PROOF.get();
+        if (limitedProof != null) {
+          this.budget = limitedProof.proofRoot.budget;
+          this.depth = limitedProof.depth + 1;
+        }
+      }
+      this.lastOuterVarUid = TermVar.getLastVarUid();
       this.rootLastGoalAtChain = this;
       this.prevCp = null;
     } else {
       this.variables = null;
-      if (goal.getTermType() == ATOM) {
-        this.varSnapshot = null;
-      } else {
-        this.varSnapshot = new VariableStateSnapshot(rootChoicePoint.varSnapshot);
-      }
+      this.trail = rootChoicePoint.trail;
+      this.nestedProof = rootChoicePoint.nestedProof;
+      this.lastOuterVarUid = rootChoicePoint.lastOuterVarUid;
       this.prevCp = rootChoicePoint.rootLastGoalAtChain;
       rootChoicePoint.rootLastGoalAtChain = this;
     }
+    this.trailMark = this.trail.mark();
   }
 
   public JProlChoicePoint(final String goal, final JProlContext context) {
@@ -121,6 +167,62 @@ public final class JProlChoicePoint implements Comparator<Term> {
     return new JProlChoicePoint(null, goal, this.context, this.debug, this.validate, null);
   }
 
+  /**
+   * Make goal which resolves call of tabled predicate through its clauses instead of answer table.
+   */
+  JProlChoicePoint makeForTableEvaluation(final Term call) {
+    final JProlChoicePoint result = this.makeForGoal(call);
+    result.tableEvaluation = true;
+    return result;
+  }
+
+  /**
+   * Set limits of resources which can be spent to prove the goal (all its solutions), resources of
+   * nested proofs of the goal are counted too. If the goal is proved inside of other goal with
+   * limits then the both limits are applied. Exceeding of a limit throws catchable
+   * {@link ProlResourceErrorException}.
+   *
+   * @param limits limits, must not be null
+   * @return the goal
+   * @throws IllegalStateException if the goal is not root goal or its proving has been started
+   */
+  public JProlChoicePoint setResourceLimits(final ResourceLimits limits) {
+    requireNonNull(limits, "Limits are null");
+    if (this.rootChoicePoint != this || this.proofRoot != this || this.notFirstProve) {
+      throw new IllegalStateException("Limits can be set only for root goal before proving");
+    }
+    if (!limits.isUnlimited()) {
+      this.budget = new ResourceBudget(limits, this.budget, this.depth);
+    }
+    return this;
+  }
+
+  void setOrParallelBranch(final OrParallelSearch.Branch branch) {
+    this.orParallelBranch = branch;
+  }
+
+  /**
+   * Check that the goal is proved as a branch of or-parallel search.
+   *
+   * @return true if the goal is proved by or-parallel search branch
+   */
+  public boolean isOrParallelBranch() {
+    return this.rootChoicePoint.orParallelBranch != null;
+  }
+
+  private JProlChoicePoint makeSubProof(final Term goal) {
+    final JProlChoicePoint result = new JProlChoicePoint(goal, this.context);
+    result.orParallelBranch = this.rootChoicePoint.orParallelBranch;
+    result.proofRoot = this.rootChoicePoint.proofRoot;
+    result.depth = this.rootChoicePoint.depth + 1;
+    this.context.getMetrics().onChoicePointDepth(result.depth);
+    final ResourceBudget limits = this.rootChoicePoint.proofRoot.budget;
+    if (limits != null) {
+      limits.checkDepth(result.depth, goal);
+    }
+    return result;
+  }
+
   public boolean isDebug() {
     return this.debug;
   }
@@ -153,9 +255,8 @@ public final class JProlChoicePoint implements Comparator<Term> {
     final JProlChoicePoint newGoal = new JProlChoicePoint(this.rootChoicePoint, goal, this.context, this.debug, this.validate, null);
     final JProlChoicePoint prevGoal = newGoal.prevCp;
     if (prevGoal != null) {
-      newGoal.prevCp = prevGoal.prevCp;
-      newGoal.nextAndTerm = prevGoal.nextAndTerm;
-      newGoal.nextAndTermForNextGoal = prevGoal.nextAndTermForNextGoal;
+      newGoal.prevCp = this.debug ? prevGoal.prevCp : findWithVariants(prevGoal.prevCp);
+      newGoal.continuation = prevGoal.continuation;
     }
     return newGoal;
   }
@@ -185,63 +286,219 @@ public final class JProlChoicePoint implements Comparator<Term> {
     return this.proveNext(NULL_UNDEFINED_PREDICATE_CONSUMER);
   }
 
+  /**
+   * Find next solution in limited time, sub-goals of clause bodies are checked too but nested proofs
+   * of built-in predicates (like findall/3) are not interrupted.
+   *
+   * @param timeoutNanos max time to find the solution in nanoseconds
+   * @return found solution or null if there is no solution
+   * @throws ProlTimeoutException if solution is not found in the time
+   */
+  Term prove(final long timeoutNanos) {
+    this.deadline = System.nanoTime() + timeoutNanos;
+    this.timeLimited = true;
+    try {
+      return this.prove();
+    } finally {
+      this.timeLimited = false;
+    }
+  }
+
+  /**
+   * Make stream of solutions of the goal. The next solution is searched only when requested by the
+   * stream, closing of the stream stops search and undoes bindings of nested proof.
+   *
+   * @return sequential stream of solutions
+   */
+  public Stream<Solution> stream() {
+    return this.stream(0L, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Make stream of solutions of the goal with limited time to search every solution.
+   *
+   * @param timeout  max time to find every solution, zero or negative means unlimited
+   * @param timeUnit time unit of timeout, must not be null
+   * @return sequential stream of solutions, it throws {@link ProlTimeoutException} if solution is
+   * not found in time
+   * @see #stream()
+   */
+  public Stream<Solution> stream(final long timeout, final TimeUnit timeUnit) {
+    final SolutionSpliterator spliterator = this.makeSolutionSpliterator(timeout, timeUnit);
+    return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+  }
+
+  /**
+   * Make iterator over solutions of the goal, closing of the iterator stops search.
+   *
+   * @return closeable iterator of solutions
+   * @see #stream()
+   */
+  public CloseableIterator<Solution> iterator() {
+    final SolutionSpliterator spliterator = this.makeSolutionSpliterator(0L, TimeUnit.MILLISECONDS);
+    return Utils.makeCloseableIterator(Spliterators.iterator(spliterator), spliterator::close);
+  }
+
+  private SolutionSpliterator makeSolutionSpliterator(final long timeout, final TimeUnit timeUnit) {
+    if (this.rootChoicePoint != this) {
+      throw new IllegalStateException("Only root choice point provides solutions");
+    }
+    return new SolutionSpliterator(this, timeout, requireNonNull(timeUnit));
+  }
+
+  /**
+   * Stop search of solutions, bindings made by nested proof are undone.
+   */
+  void abandon() {
+    if (this.rootChoicePoint.rootLastGoalAtChain != null) {
+      this.rootChoicePoint.rootLastGoalAtChain = null;
+      if (this.nestedProof) {
+        this.trail.undo(this.rootChoicePoint.trailMark);
+      }
+    }
+  }
+
+  Set<String> findAllVarNames() {
+    return this.variables == null ? Collections.emptySet() : this.variables.keySet();
+  }
+
   private Term proveNext(final Consumer<String> unknownPredicateConsumer) {
+    final BindingTrail previousTrail = BindingTrail.activate(this.trail);
+    final ResourceBudget budget = this.proofRoot.budget;
+    final boolean limited = budget != null;
+    final JProlChoicePoint previousLimitedProof = limited ? ACTIVE_LIMITED_PROOF.get() : null;
+    if (limited) {
+      ACTIVE_LIMITED_PROOF.set(this);
+      budget.resume();
+    }
+    final boolean notExhausted = this.rootChoicePoint.rootLastGoalAtChain != null;
+    Term result = null;
+    boolean thrown = true;
+    try {
+      result = this.doProveNext(unknownPredicateConsumer);
+      thrown = false;
+    } finally {
+      if ((thrown || result == null) && notExhausted && this.nestedProof) {
+        // no more solutions or exception, make free all variables bound by the nested proof
+        this.trail.undo(this.rootChoicePoint.trailMark);
+      }
+      if (limited) {
+        budget.pause();
+        ACTIVE_LIMITED_PROOF.set(previousLimitedProof);
+      }
+      BindingTrail.restore(previousTrail);
+    }
+    return result;
+  }
+
+  private Term doProveNext(final Consumer<String> unknownPredicateConsumer) {
     Term result = null;
 
     boolean loop = true;
 
-    while (loop && !Thread.currentThread().isInterrupted()) {
-      if (this.context.isDisposed()) {
-        throw new ProlHaltExecutionException();
-      }
+    long inferences = 0L;
+    try {
+      while (loop && !Thread.currentThread().isInterrupted()) {
+        if (this.context.isDisposed()) {
+          throw new ProlHaltExecutionException();
+        }
+        final JProlChoicePoint owner = this.rootChoicePoint.proofRoot;
+        if (owner.timeLimited && System.nanoTime() - owner.deadline > 0L) {
+          throw new ProlTimeoutException("Solution has not been found in time: " + owner.goalTerm);
+        }
 
-      JProlChoicePoint goalToProcess = this.rootChoicePoint.rootLastGoalAtChain;
-      if (goalToProcess == null) {
-        break;
-      } else {
-        if (goalToProcess.thereAreVariants) {
-          switch (goalToProcess.resolve(unknownPredicateConsumer)) {
-            case FAIL: {
-              if (this.debug) {
-                this.context.fireTraceEvent(TraceEvent.FAIL, goalToProcess);
-                this.context.fireTraceEvent(EXIT, goalToProcess);
-              }
-              this.rootChoicePoint.rootLastGoalAtChain = goalToProcess.prevCp;
+        JProlChoicePoint goalToProcess = this.rootChoicePoint.rootLastGoalAtChain;
+        if (goalToProcess == null) {
+          break;
+        } else {
+          if (goalToProcess.thereAreVariants) {
+            inferences++;
+            if (owner.budget != null) {
+              owner.budget.onInference(goalToProcess.goalTerm);
             }
-            break;
-            case SUCCESS: {
-              // we have to renew data about last chain goal because it can be changed during the operation
-              goalToProcess = this.rootChoicePoint.rootLastGoalAtChain;
-
-              if (goalToProcess.nextAndTerm == null) {
-                result = this.rootChoicePoint.goalTerm;
-                loop = false;
-              } else {
-                final JProlChoicePoint nextGoal = new JProlChoicePoint(this.rootChoicePoint, goalToProcess.nextAndTerm, this.context, this.debug, this.validate, null);
-                nextGoal.nextAndTerm = goalToProcess.nextAndTermForNextGoal;
+            switch (goalToProcess.resolve(unknownPredicateConsumer)) {
+              case FAIL: {
+                if (this.debug) {
+                  this.context.fireTraceEvent(TraceEvent.FAIL, goalToProcess);
+                  this.context.fireTraceEvent(EXIT, goalToProcess);
+                }
+                this.rootChoicePoint.rootLastGoalAtChain = goalToProcess.prevCp;
+              }
+              break;
+              case SUCCESS: {
+                // we have to renew data about last chain goal because it can be changed during the operation
+                goalToProcess = this.rootChoicePoint.rootLastGoalAtChain;
+
+                final Continuation next = goalToProcess.continuation;
+                if (next == null) {
+                  result = this.rootChoicePoint.goalTerm;
+                  loop = false;
+                } else {
+                  final JProlChoicePoint nextGoal = new JProlChoicePoint(this.rootChoicePoint, next.goal, this.context, this.debug, this.validate, null);
+                  nextGoal.continuation = next.next;
+                  if (!this.debug) {
+                    nextGoal.prevCp = findWithVariants(nextGoal.prevCp);
+                  }
+                }
               }
+              break;
+              case STACK_CHANGED: {
+              }
+              break;
+              default:
+                throw new Error("Unexpected status");
             }
-            break;
-            case STACK_CHANGED: {
+          } else {
+            if (this.debug) {
+              this.context.fireTraceEvent(EXIT, goalToProcess);
             }
-            break;
-            default:
-              throw new Error("Unexpected status");
+            this.rootChoicePoint.rootLastGoalAtChain = goalToProcess.prevCp;
           }
-        } else {
-          if (this.debug) {
-            this.context.fireTraceEvent(EXIT, goalToProcess);
-          }
-          this.rootChoicePoint.rootLastGoalAtChain = goalToProcess.prevCp;
         }
       }
+    } finally {
+      this.context.getMetrics().addInferences(inferences);
     }
 
     return result;
   }
 
   private JProlChoicePointResult resolve(final Consumer<String> unknownPredicateConsumer) {
-    if (Thread.currentThread().isInterrupted()) {
+    if (!this.context.isProfiling() || isControlConstruction(this.goalTerm)) {
+      return this.doResolve(unknownPredicateConsumer);
+    }
+    final Profiler profiler = this.context.getProfiler();
+    if (this.profile == null) {
+      this.profile = profiler.findProfile(((TermStruct) this.goalTerm).getFunctorKey());
+    }
+    final Profiler.Activation activation = profiler.enter(this.profile, this.notFirstProve);
+    JProlChoicePointResult result = null;
+    try {
+      result = this.doResolve(unknownPredicateConsumer);
+      return result;
+    } finally {
+      profiler.leave(activation, result);
+    }
+  }
+
+  private static boolean isControlConstruction(final Term goal) {
+    if (goal.getTermType() != STRUCT) {
+      return true;
+    }
+    final TermStruct struct = (TermStruct) goal;
+    if (struct.isClause()) {
+      return true;
+    }
+    if (struct.getArity() == 2) {
+      final String functorText = struct.getFunctor().getText();
+      return functorText.length() == 1 && (functorText.charAt(0) == ',' || functorText.charAt(0) == ';');
+    }
+    return false;
+  }
+
+  private JProlChoicePointResult doResolve(final Consumer<String> unknownPredicateConsumer) {
+    final OrParallelSearch.Branch branch = this.rootChoicePoint.orParallelBranch;
+    if (Thread.currentThread().isInterrupted() || (branch != null && branch.isStopped())) {
       return JProlChoicePointResult.FAIL;
     }
     final TraceEvent traceEvent;
@@ -260,9 +517,9 @@ public final class JProlChoicePoint implements Comparator<Term> {
     boolean doLoop = true;
 
     while (doLoop) {
-      // reset variables to their initial state
-      if (this.varSnapshot != null) {
-        this.varSnapshot.resetToState();
+      // bindings of live sub-proofs are undone by the sub-proofs themselves
+      if (this.subCp == null && !this.isPayloadSubProof()) {
+        this.trail.undo(this.trailMark);
       }
 
       if (this.subCp != null) {
@@ -271,15 +528,17 @@ public final class JProlChoicePoint implements Comparator<Term> {
 
         if (this.subCp.cutMeet) {
           this.clauseIterator = null;
+          this.compiledClauseIterator = null;
         }
 
         if (solvedTerm == null) {
           this.subCp = null;
-          if (this.clauseIterator == null) {
+          if (this.clauseIterator == null && this.compiledClauseIterator == null) {
             break;
           }
+          continue;
         } else {
-          if (!this.thisConnector.unifyTo(this.subChoicePointConnector)) {
+          if (this.thisConnector != null && !this.thisConnector.unifyTo(this.subChoicePointConnector)) {
             throw new ProlCriticalError("Critical error #980234");
           }
           result = JProlChoicePointResult.SUCCESS;
@@ -288,35 +547,92 @@ public final class JProlChoicePoint implements Comparator<Term> {
       }
 
       if (this.clauseIterator != null) {
-        // next clause
+        // next clause, stored clauses are not copied but renamed through the frame
         if (this.clauseIterator.hasNext()) {
           final TermStruct nextClause = this.clauseIterator.next();
+          final boolean lastClause = !this.clauseIterator.hasNext();
+          if (this.profile != null) {
+            this.profile.clauseTries.increment();
+          }
+          final boolean rule = nextClause.isClause();
 
-          final Term goalTermForEqu;
-          if (((TermStruct) this.goalTerm).isClause()) {
-            goalTermForEqu = ((TermStruct) this.goalTerm).getElement(0).makeClone();
-          } else {
-            goalTermForEqu = this.goalTerm.makeClone();
+          final RenamingFrame frame = this.renamingFrame;
+          frame.clear();
+          if (!frame.unifyHead(this.goalTerm, rule ? nextClause.getElement(0) : nextClause)) {
+            continue;
           }
 
-          if (!goalTermForEqu.unifyTo(nextClause.isClause() ? nextClause.getElement(0) : nextClause)) {
-            throw new ProlCriticalError("Unexpectedly can't unify term with prvided by knowledge base!");
+          if (!rule) {
+            if (lastClause) {
+              this.clauseIterator = null;
+              this.cutVariants();
+            }
+            result = JProlChoicePointResult.SUCCESS;
+            break;
           }
 
-          if (nextClause.isClause()) {
-            this.thisConnector = goalTerm;
-            this.subChoicePointConnector = nextClause.getElement(0);
-            this.subCp = new JProlChoicePoint(nextClause.getElement(1), this.context);
+          final Term body = nextClause.getElement(1);
+          final boolean cutInside = hasCutInside(body);
+          if (cutInside && branch != null) {
+            // alternatives cut by the body can be already given to other branches
+            branch.freeze();
+          }
+          if (lastClause && !this.debug && !cutInside) {
+            // last call, the goal doesn't have alternatives so its frame is replaced by the clause body
+            this.clauseIterator = null;
+            this.replaceByClauseBody(frame.instantiate(body));
+            result = JProlChoicePointResult.STACK_CHANGED;
+            break;
+          }
+
+          this.thisConnector = null;
+          this.subChoicePointConnector = null;
+          this.subCp = this.makeSubProof(frame.instantiate(body));
+          continue;
+        } else {
+          this.clauseIterator = null;
+          cutVariants();
+          break;
+        }
+      }
+
+      if (this.compiledClauseIterator != null) {
+        // try next compiled clause, the last one is tried without keeping alternatives
+        if (this.compiledClauseIterator.hasNext()) {
+          final CompiledClause nextClause = this.compiledClauseIterator.next();
+          final boolean lastClause = !this.compiledClauseIterator.hasNext();
+          if (this.profile != null) {
+            this.profile.clauseTries.increment();
+          }
+
+          final Term[] registers = nextClause.unifyHead((TermStruct) this.goalTerm);
+          if (registers == null) {
             continue;
-          } else {
-            if (!this.goalTerm.unifyTo(nextClause)) {
-              throw new ProlCriticalError("Impossible situation #0009824");
+          }
+
+          if (nextClause.isFact()) {
+            if (lastClause) {
+              this.compiledClauseIterator = null;
+              this.cutVariants();
             }
             result = JProlChoicePointResult.SUCCESS;
             break;
           }
+
+          final Term body = nextClause.makeBody(registers);
+          if (lastClause && !hasCutInside(body)) {
+            this.compiledClauseIterator = null;
+            this.replaceByClauseBody(body);
+            result = JProlChoicePointResult.STACK_CHANGED;
+            break;
+          }
+
+          this.thisConnector = null;
+          this.subChoicePointConnector = null;
+          this.subCp = this.makeSubProof(body);
+          continue;
         } else {
-          this.clauseIterator = null;
+          this.compiledClauseIterator = null;
           cutVariants();
           break;
         }
@@ -324,8 +640,7 @@ public final class JProlChoicePoint implements Comparator<Term> {
 
       switch (this.goalTerm.getTermType()) {
         case ATOM: {
-          final String text = this.goalTerm.getText();
-          if (this.context.hasZeroArityPredicateForName(text)) {
+          if (this.context.hasZeroArityPredicate(this.goalTerm.asFunctor(0))) {
             result = JProlChoicePointResult.SUCCESS;
           } else {
             this.context.notifyAboutUndefinedPredicate(this, this.goalTerm.getSignature());
@@ -346,9 +661,9 @@ public final class JProlChoicePoint implements Comparator<Term> {
             this.subChoicePointConnector = structClone.getElement(0);
 
             if (arity == 1) {
-              this.subCp = new JProlChoicePoint(structClone.getElement(0), this.context);
+              this.subCp = this.makeSubProof(structClone.getElement(0));
             } else {
-              this.subCp = new JProlChoicePoint(structClone.getElement(1), this.context);
+              this.subCp = this.makeSubProof(structClone.getElement(1));
             }
           } else {
 
@@ -372,8 +687,11 @@ public final class JProlChoicePoint implements Comparator<Term> {
               if (textLen == 1) {
                 if (functorText.charAt(0) == ',') {// and
                   final JProlChoicePoint leftSubgoal = replaceLastGoalAtChain(struct.getElement(0));
-                  leftSubgoal.nextAndTerm = struct.getElement(1);
-                  leftSubgoal.nextAndTermForNextGoal = this.nextAndTerm;
+                  leftSubgoal.continuation = new Continuation(struct.getElement(1), this.continuation);
+                  final ResourceBudget limits = this.rootChoicePoint.proofRoot.budget;
+                  if (limits != null) {
+                    limits.checkDepth(this.rootChoicePoint.depth + leftSubgoal.continuation.depth, struct);
+                  }
 
                   result = JProlChoicePointResult.STACK_CHANGED;
 
@@ -381,8 +699,11 @@ public final class JProlChoicePoint implements Comparator<Term> {
                   nonConsumed = false;
                 } else if (functorText.charAt(0) == ';') {// or
                   if (getPayload() == null) {
+                    if (branch != null) {
+                      branch.freeze();
+                    }
                     final JProlChoicePoint leftSubbranch = new JProlChoicePoint(this.rootChoicePoint, struct.getElement(0), this.context, this.debug, this.validate, null);
-                    leftSubbranch.nextAndTerm = this.nextAndTerm;
+                    leftSubbranch.continuation = this.continuation;
                     setPayload(leftSubbranch);
                   } else {
                     replaceLastGoalAtChain(struct.getElement(1));
@@ -397,12 +718,29 @@ public final class JProlChoicePoint implements Comparator<Term> {
             if (nonConsumed) {
               final PredicateInvoker foundProcessor = findProcessorInLibraries(struct);
               if (foundProcessor == PredicateInvoker.NULL_PROCESSOR) {
-                this.clauseIterator = this.context.getKnowledgeBase().iterate(
-                    IteratorType.ANY,
-                    struct,
-                    unknownPredicateConsumer
-                );
-                if (!this.clauseIterator.hasNext()) {
+                final KnowledgeBase knowledgeBase = this.context.getKnowledgeBase();
+                final AnswerTables answerTables = this.context.getAnswerTables();
+                final boolean noClauses;
+                if (!this.tableEvaluation && answerTables.isTabled(struct.getFunctorKey())) {
+                  // answers of tabled predicate are iterated as facts
+                  this.clauseIterator = answerTables.findAnswers(this, struct).iterator();
+                  this.renamingFrame = new RenamingFrame();
+                } else if (this.context.isCompiledClauses() && !this.debug && branch == null) {
+                  this.compiledClauseIterator = knowledgeBase.iterateCompiled(struct, unknownPredicateConsumer);
+                }
+                if (this.clauseIterator != null) {
+                  noClauses = !this.clauseIterator.hasNext();
+                } else if (this.compiledClauseIterator == null) {
+                  this.clauseIterator = knowledgeBase.iterateShared(struct, unknownPredicateConsumer);
+                  this.renamingFrame = new RenamingFrame();
+                  noClauses = !this.clauseIterator.hasNext();
+                } else {
+                  noClauses = !this.compiledClauseIterator.hasNext();
+                }
+                if (!noClauses && branch != null && !branch.isFrozen() && this.clauseIterator != null) {
+                  this.clauseIterator = chooseClauses(branch, this.clauseIterator);
+                }
+                if (noClauses) {
                   doLoop = false;
                   this.cutVariants();
                   result = JProlChoicePointResult.FAIL;
@@ -418,6 +756,10 @@ public final class JProlChoicePoint implements Comparator<Term> {
                   result = JProlChoicePointResult.FAIL;
                 }
 
+                if (branch != null && (foundProcessor.doesChangeGoalChain() ? hasCutInArguments(struct) : this.thereAreVariants)) {
+                  branch.freeze();
+                }
+
                 if (result == JProlChoicePointResult.SUCCESS && foundProcessor.doesChangeGoalChain()) {
                   result = JProlChoicePointResult.STACK_CHANGED;
                 }
@@ -440,6 +782,79 @@ public final class JProlChoicePoint implements Comparator<Term> {
     return result;
   }
 
+  private void replaceByClauseBody(final Term body) {
+    if (this.prevCp == null) {
+      // nobody can backtrack to bindings of variables created during the proof
+      this.trail.compact(this.rootChoicePoint.trailMark, this.lastOuterVarUid);
+    }
+    this.replaceLastGoalAtChain(body);
+  }
+
+  private static JProlChoicePoint findWithVariants(JProlChoicePoint choicePoint) {
+    while (choicePoint != null && !choicePoint.thereAreVariants) {
+      choicePoint = choicePoint.prevCp;
+    }
+    return choicePoint;
+  }
+
+  private static Iterator<TermStruct> chooseClauses(final OrParallelSearch.Branch branch, final Iterator<TermStruct> clauses) {
+    final List<TermStruct> candidates = new ArrayList<>();
+    boolean splittable = true;
+    while (clauses.hasNext()) {
+      final TermStruct clause = clauses.next();
+      splittable &= !(clause.isClause() && hasCutInside(clause.getElement(1)));
+      candidates.add(clause);
+    }
+    if (candidates.size() > 1) {
+      final int chosen = branch.choose(candidates.size(), splittable);
+      if (chosen >= 0) {
+        return Collections.singletonList(candidates.get(chosen)).iterator();
+      }
+    }
+    return candidates.iterator();
+  }
+
+  private static boolean hasCutInArguments(final TermStruct struct) {
+    if (hasCutInside(struct)) {
+      return true;
+    }
+    for (int i = 0; i < struct.getArity(); i++) {
+      if (hasCutInside(struct.getElement(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static boolean hasCutInside(final Term body) {
+    final Term term = body.findNonVarOrSame();
+    switch (term.getTermType()) {
+      case ATOM:
+        return "!".equals(term.getText());
+      case STRUCT: {
+        final TermStruct struct = (TermStruct) term;
+        final String functor = struct.getFunctor().getText();
+        if (struct.getArity() == 0) {
+          return "!".equals(functor);
+        } else if (struct.getArity() == 2) {
+          if ("->".equals(functor)) {
+            return true;
+          } else if (",".equals(functor) || ";".equals(functor)) {
+            return hasCutInside(struct.getElement(0)) || hasCutInside(struct.getElement(1));
+          }
+        }
+        return false;
+      }
+      default:
+        return false;
+    }
+  }
+
+  private boolean isPayloadSubProof() {
+    return this.payload instanceof JProlChoicePoint
+        && ((JProlChoicePoint) this.payload).rootChoicePoint == this.payload;
+  }
+
   public void cutVariants() {
     this.thereAreVariants = false;
   }
@@ -447,6 +862,7 @@ public final class JProlChoicePoint implements Comparator<Term> {
   public void cut() {
     this.rootChoicePoint.cutMeet = true;
     this.rootChoicePoint.clauseIterator = null;
+    this.rootChoicePoint.compiledClauseIterator = null;
     this.prevCp = null;
   }
 
@@ -456,9 +872,12 @@ public final class JProlChoicePoint implements Comparator<Term> {
 
   private PredicateInvoker findProcessorInLibraries(final TermStruct structure) {
     PredicateInvoker processor = structure.getPredicateProcessor();
-    if (processor == null) {
+    if (processor == null || processor == PredicateInvoker.NULL_PROCESSOR) {
+      // structures made at runtime don't have processor, resolve them through dispatch table
       processor = this.context.findProcessor(structure);
-      structure.setPredicateProcessor(processor);
+      if (processor != PredicateInvoker.NULL_PROCESSOR) {
+        structure.setPredicateProcessor(processor);
+      }
     }
     return processor;
   }
@@ -533,4 +952,17 @@ public final class JProlChoicePoint implements Comparator<Term> {
     }
     return result;
   }
+
+  private static final class Continuation {
+
+    private final Term goal;
+    private final Continuation next;
+    private final int depth;
+
+    private Continuation(final Term goal, final Continuation next) {
+      this.goal = goal;
+      this.next = next;
+      this.depth = next == null ? 1 : next.depth + 1;
+    }
+  }
 }
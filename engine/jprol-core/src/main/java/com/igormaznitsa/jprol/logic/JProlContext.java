@@ -45,7 +45,9 @@ import java.util.Map.Entry;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -61,16 +63,26 @@ import static java.util.stream.Stream.concat;
 public final class JProlContext {
   private final String contextId;
 
-  private final Map<String, List<JProlTrigger>> triggersOnAssert = new ConcurrentHashMap<>();
-  private final Map<String, List<JProlTrigger>> triggersOnRetract = new ConcurrentHashMap<>();
+  private final Map<Functor, List<JProlTrigger>> triggersOnAssert = new ConcurrentHashMap<>();
+  private final Map<Functor, List<JProlTrigger>> triggersOnRetract = new ConcurrentHashMap<>();
   private final Map<String, ReentrantLock> namedLockers = new ConcurrentHashMap<>();
   private final List<AbstractJProlLibrary> libraries = new CopyOnWriteArrayList<>();
+  private volatile Map<Functor, PredicateInvoker> dispatchTable = new ConcurrentHashMap<>();
+  private volatile Map<Functor, Boolean> zeroArityTable = new ConcurrentHashMap<>();
   private final AtomicBoolean disposed = new AtomicBoolean(false);
   private final KnowledgeBase knowledgeBase;
   private final ExecutorService executorService;
+  private final boolean executorOwned;
   private final List<JProlContextListener> contextListeners = new CopyOnWriteArrayList<>();
   private final Map<JProlSystemFlag, Term> systemFlags = new ConcurrentHashMap<>();
   private final AtomicInteger asyncTaskCounter = new AtomicInteger();
+  private final ReentrantLock asyncTaskLock = new ReentrantLock();
+  private final Condition asyncTaskCompleted = this.asyncTaskLock.newCondition();
+  private final AnswerTables answerTables = new AnswerTables();
+  private Profiler profiler = new Profiler();
+  private ContextMetrics metrics = new ContextMetrics(this);
+  private JProlContext orParallelPoolOwner = this;
+  private ForkJoinPool orParallelPool;
 
   private final ParserContext parserContext = new ParserContext() {
     @Override
@@ -96,6 +108,9 @@ public final class JProlContext {
   private final List<IoResourceProvider> ioProviders = new CopyOnWriteArrayList<>();
   private boolean templateValidate;
   private boolean debug;
+  private boolean compiledClauses;
+  private boolean orParallel;
+  private boolean profiling;
   private UndefinedPredicateBehavior undefinedPredicateBehaviour;
 
   public JProlContext(final String name, final AbstractJProlLibrary... libs) {
@@ -103,6 +118,7 @@ public final class JProlContext {
         name,
         new InMemoryKnowledgeBase(name + "_kbase"),
         ForkJoinPool.commonPool(),
+        false,
         emptyMap(),
         emptyList(),
         emptyList(),
@@ -114,6 +130,7 @@ public final class JProlContext {
       final String contextId,
       final KnowledgeBase base,
       final ExecutorService executorService,
+      final boolean executorOwned,
       final Map<JProlSystemFlag, Term> systemFlags,
       final List<JProlContextListener> contextListeners,
       final List<IoResourceProvider> ioProviders,
@@ -122,6 +139,7 @@ public final class JProlContext {
     this.contextId = requireNonNull(contextId, "Context Id is null");
     this.knowledgeBase = requireNonNull(base, "Knowledge base is null");
     this.executorService = requireNonNull(executorService);
+    this.executorOwned = executorOwned;
     this.contextListeners.addAll(contextListeners);
 
     Arrays.stream(JProlSystemFlag.values())
@@ -149,6 +167,18 @@ public final class JProlContext {
     return this.debug;
   }
 
+  public boolean isCompiledClauses() {
+    return this.compiledClauses;
+  }
+
+  public boolean isOrParallel() {
+    return this.orParallel;
+  }
+
+  public boolean isProfiling() {
+    return this.profiling;
+  }
+
   public Term getSystemFlag(final JProlSystemFlag flag) {
     return this.systemFlags.getOrDefault(flag, flag.getDefaultValue());
   }
@@ -166,6 +196,10 @@ public final class JProlContext {
   private void onSystemFlagsUpdated() {
     this.templateValidate = Boolean.parseBoolean(this.systemFlags.get(JProlSystemFlag.VERIFY).getText());
     this.debug = Boolean.parseBoolean(this.systemFlags.get(JProlSystemFlag.DEBUG).getText());
+    this.compiledClauses = Boolean.parseBoolean(this.systemFlags.get(JProlSystemFlag.COMPILED_CLAUSES).getText());
+    this.orParallel = Boolean.parseBoolean(this.systemFlags.get(JProlSystemFlag.OR_PARALLEL).getText());
+    final String profileFlag = this.systemFlags.get(JProlSystemFlag.PROFILE).getText();
+    this.profiling = "on".equals(profileFlag) || Boolean.parseBoolean(profileFlag);
     this.undefinedPredicateBehaviour = UndefinedPredicateBehavior
         .find(this.systemFlags.get(JProlSystemFlag.UNKNOWN).getText())
         .orElseThrow(() -> new ProlDomainErrorException(
@@ -216,33 +250,83 @@ public final class JProlContext {
     return this.asyncTaskCounter.get();
   }
 
+  /**
+   * Make builder of context.
+   *
+   * @param name name of the context, must not be null
+   * @return builder, must not be null
+   */
+  public static Builder builder(final String name) {
+    return new Builder(name);
+  }
+
+  /**
+   * Wait until all asynchronous goals of the context are completed. Waiting thread is parked
+   * through {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)}, so a fork-join pool
+   * compensates its blocked worker.
+   */
   public void waitAllAsyncTasks() {
-    while (this.asyncTaskCounter.get() > 0 && !Thread.currentThread().isInterrupted()) {
-      synchronized (this.asyncTaskCounter) {
-        try {
-          this.asyncTaskCounter.wait();
-        } catch (InterruptedException ex) {
-          Thread.currentThread().interrupt();
-          return;
+    try {
+      ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+        @Override
+        public boolean block() throws InterruptedException {
+          asyncTaskLock.lockInterruptibly();
+          try {
+            if (asyncTaskCounter.get() > 0) {
+              asyncTaskCompleted.await();
+            }
+          } finally {
+            asyncTaskLock.unlock();
+          }
+          return this.isReleasable();
         }
-      }
+
+        @Override
+        public boolean isReleasable() {
+          return asyncTaskCounter.get() <= 0;
+        }
+      });
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
     }
   }
 
   private void onAsyncTaskCompleted(final Term goal) {
     this.asyncTaskCounter.decrementAndGet();
-    synchronized (this.asyncTaskCounter) {
-      this.asyncTaskCounter.notifyAll();
+    this.asyncTaskLock.lock();
+    try {
+      this.asyncTaskCompleted.signalAll();
+    } finally {
+      this.asyncTaskLock.unlock();
     }
   }
 
   public CompletableFuture<Void> proveAllAsync(final Term goal) {
+    return this.proveAllAsync(goal, x -> {
+    });
+  }
+
+  /**
+   * Prove all solutions of a goal asynchronously in a copy of the context.
+   *
+   * @param goal             goal to be proved, it must not share variables with other goals
+   * @param solutionConsumer consumer called in the proving thread for every solution while
+   *                         variables of the goal are bound
+   * @return future which is completed when all solutions are found
+   */
+  public CompletableFuture<Void> proveAllAsync(final Term goal, final Consumer<Term> solutionConsumer) {
     this.assertNotDisposed();
     this.asyncTaskCounter.incrementAndGet();
     return CompletableFuture.runAsync(() -> {
-      final JProlChoicePoint asyncGoal = new JProlChoicePoint(requireNonNull(goal), this.makeCopy());
-      while (asyncGoal.prove() != null && !Thread.currentThread().isInterrupted()) {
-        ;
+      this.metrics.onAsyncTaskStarted();
+      try {
+        final JProlChoicePoint asyncGoal = new JProlChoicePoint(requireNonNull(goal), this.makeCopy());
+        Term solution;
+        while ((solution = asyncGoal.prove()) != null && !Thread.currentThread().isInterrupted()) {
+          solutionConsumer.accept(solution);
+        }
+      } finally {
+        this.metrics.onAsyncTaskFinished();
       }
     }, this.executorService).handle((x, e) -> {
           onAsyncTaskCompleted(goal);
@@ -258,10 +342,15 @@ public final class JProlContext {
     this.assertNotDisposed();
     this.asyncTaskCounter.incrementAndGet();
     return CompletableFuture.supplyAsync(() -> {
-      final JProlChoicePoint asyncGoal = new JProlChoicePoint(requireNonNull(goal), this.makeCopy());
-      final Term result = asyncGoal.prove();
-      asyncGoal.cutVariants();
-      return result;
+      this.metrics.onAsyncTaskStarted();
+      try {
+        final JProlChoicePoint asyncGoal = new JProlChoicePoint(requireNonNull(goal), this.makeCopy());
+        final Term result = asyncGoal.prove();
+        asyncGoal.cutVariants();
+        return result;
+      } finally {
+        this.metrics.onAsyncTaskFinished();
+      }
     }, this.executorService).handle((x, e) -> {
           onAsyncTaskCompleted(goal);
       if (e != null) {
@@ -272,10 +361,47 @@ public final class JProlContext {
     );
   }
 
+  /**
+   * Find the first solution of a goal by or-parallel search, alternative clauses of knowledge base
+   * predicates met during the proof are proved by idle workers of the context fork-join pool (or
+   * of the pool owned by the context if its executor is not fork-join pool, see
+   * {@link #getOrParallelPool()}). Every branch is proved on a
+   * copy of the context so changes of the knowledge base made by branches are not visible. The
+   * found solution can differ from the first solution of sequential proof.
+   *
+   * @param goal goal to be proved, must not be null
+   * @return solved copy of the goal with bound variables or null if there is no solution
+   */
+  public Term proveOnceOrParallel(final Term goal) {
+    this.assertNotDisposed();
+    return new OrParallelSearch(this, requireNonNull(goal)).find();
+  }
+
   public ExecutorService getContextExecutorService() {
     return this.executorService;
   }
 
+  /**
+   * Get fork-join pool for or-parallel search. It is the context executor if it is fork-join pool,
+   * else the pool is made on the first call, it is shared by copies of the context and shut down
+   * when the context is disposed.
+   *
+   * @return pool for or-parallel search, must not be null
+   */
+  ForkJoinPool getOrParallelPool() {
+    return this.executorService instanceof ForkJoinPool
+        ? (ForkJoinPool) this.executorService
+        : this.orParallelPoolOwner.makeOrParallelPool();
+  }
+
+  private synchronized ForkJoinPool makeOrParallelPool() {
+    this.assertNotDisposed();
+    if (this.orParallelPool == null) {
+      this.orParallelPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+    return this.orParallelPool;
+  }
+
   private Optional<ReentrantLock> findLockerForId(final String lockerId, final boolean createIfAbsent) {
     if (createIfAbsent) {
       return Optional.of(this.namedLockers.computeIfAbsent(lockerId, s -> new ReentrantLock()));
@@ -285,16 +411,36 @@ public final class JProlContext {
   }
 
   public void lockLockerForName(final String lockerId) {
+    final ReentrantLock locker = this.findLockerForId(lockerId, true)
+        .orElseThrow(() -> new IllegalArgumentException("Named locker is not presented: " + lockerId));
+    if (locker.tryLock()) {
+      return;
+    }
+    this.metrics.onLockContention();
     try {
-      this.findLockerForId(lockerId, true)
-          .orElseThrow(() -> new IllegalArgumentException("Named locker is not presented: " + lockerId))
-          .lockInterruptibly();
+      // blocked fork-join worker is compensated by its pool
+      ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+        @Override
+        public boolean block() throws InterruptedException {
+          locker.lockInterruptibly();
+          return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+          return locker.tryLock();
+        }
+      });
     } catch (InterruptedException ex) {
       Thread.currentThread().interrupt();
       throw new RuntimeException("Locker wait has been interrupted: " + lockerId, ex);
     }
   }
 
+  int getLockWaitingThreads() {
+    return this.namedLockers.values().stream().mapToInt(ReentrantLock::getQueueLength).sum();
+  }
+
   public boolean trylockLockerForName(final String lockerId) {
     return this.findLockerForId(lockerId, true).orElseThrow(() -> new IllegalArgumentException("Named locker is not presented: " + lockerId)).tryLock();
   }
@@ -319,6 +465,7 @@ public final class JProlContext {
     }
 
     this.libraries.add(0, library);
+    this.invalidateDispatchTable();
 
     final JProlConsultText consultText = library.getClass().getAnnotation(JProlConsultText.class);
     if (consultText != null) {
@@ -381,26 +528,80 @@ public final class JProlContext {
     return this.knowledgeBase;
   }
 
+  public AnswerTables getAnswerTables() {
+    return this.answerTables;
+  }
+
+  /**
+   * Get profiler collecting data while flag profile is on, the profiler is shared with copies of the
+   * context.
+   *
+   * @return profiler of the context
+   */
+  public Profiler getProfiler() {
+    return this.profiler;
+  }
+
+  /**
+   * Get runtime metrics of the context, the metrics are shared with copies of the context.
+   *
+   * @return metrics of the context
+   */
+  public ContextMetrics getMetrics() {
+    return this.metrics;
+  }
+
   public boolean removeLibrary(final AbstractJProlLibrary library) {
     this.assertNotDisposed();
     if (library == null) {
       throw new IllegalArgumentException("Library must not be null");
     }
-    return libraries.remove(library);
+    final boolean removed = libraries.remove(library);
+    if (removed) {
+      this.invalidateDispatchTable();
+    }
+    return removed;
+  }
+
+  /**
+   * Replace caches by new empty ones, so results resolved concurrently with old list of libraries
+   * are written into dropped tables.
+   */
+  private void invalidateDispatchTable() {
+    this.dispatchTable = new ConcurrentHashMap<>();
+    this.zeroArityTable = new ConcurrentHashMap<>();
   }
 
+  /**
+   * Find library predicate processor for a structure. Resolved processors (including missing ones)
+   * are cached per functor until list of libraries is changed.
+   *
+   * @param predicate structure to find processor for, must not be null
+   * @return found processor or NULL_PROCESSOR if there is no library predicate for the structure
+   */
   public PredicateInvoker findProcessor(final TermStruct predicate) {
-    return this.libraries
-        .stream()
-        .map(lib -> lib.findProcessorForPredicate(predicate))
-        .filter(Objects::nonNull)
-        .findFirst()
-        .orElse(NULL_PROCESSOR);
+    final Map<Functor, PredicateInvoker> table = this.dispatchTable;
+    final PredicateInvoker result = table.get(predicate.getFunctorKey());
+    return result != null ? result : table.computeIfAbsent(predicate.getFunctorKey(), key -> {
+      for (final AbstractJProlLibrary library : this.libraries) {
+        final PredicateInvoker found = library.findProcessorForPredicate(predicate);
+        if (found != null) {
+          return found;
+        }
+      }
+      return NULL_PROCESSOR;
+    });
   }
 
   public boolean hasZeroArityPredicateForName(final String name) {
-    return this.libraries.stream()
-        .anyMatch(lib -> lib.hasZeroArityPredicate(name));
+    return this.hasZeroArityPredicate(Functor.of(name, 0));
+  }
+
+  public boolean hasZeroArityPredicate(final Functor functor) {
+    final Map<Functor, Boolean> table = this.zeroArityTable;
+    final Boolean result = table.get(functor);
+    return result != null ? result : table.computeIfAbsent(functor,
+        key -> this.libraries.stream().anyMatch(lib -> lib.hasZeroArityPredicate(key)));
   }
 
   public List<TermStruct> findAllForPredicateIndicatorInLibs(final Term predicateIndicator) {
@@ -437,7 +638,14 @@ public final class JProlContext {
 
   public void dispose() {
     if (this.disposed.compareAndSet(false, true)) {
-      this.executorService.shutdownNow();
+      if (this.executorOwned) {
+        this.executorService.shutdownNow();
+      }
+      synchronized (this) {
+        if (this.orParallelPool != null) {
+          this.orParallelPool.shutdownNow();
+        }
+      }
 
       concat(this.triggersOnAssert.entrySet().stream(), this.triggersOnRetract.entrySet().stream())
           .flatMap(x -> x.getValue().stream())
@@ -460,18 +668,21 @@ public final class JProlContext {
     final Map<String, JProlTriggerType> signatures = trigger.getSignatures();
 
     signatures.forEach((key, triggerType) -> {
-      String signature = Utils.validateSignature(key);
+      final String signature = Utils.validateSignature(key);
       if (signature == null) {
         throw new IllegalArgumentException("Unsupported signature: " + key);
       }
-      signature = Utils.normalizeSignature(signature);
+      final Functor functor = Functor.fromSignature(Utils.normalizeSignature(signature));
+      if (functor == null) {
+        throw new IllegalArgumentException("Unsupported signature: " + key);
+      }
 
       if (triggerType == JProlTriggerType.TRIGGER_ASSERT || triggerType == JProlTriggerType.TRIGGER_ASSERT_RETRACT) {
-        this.triggersOnAssert.computeIfAbsent(signature, k -> new CopyOnWriteArrayList<>()).add(trigger);
+        this.triggersOnAssert.computeIfAbsent(functor, k -> new CopyOnWriteArrayList<>()).add(trigger);
       }
 
       if (triggerType == JProlTriggerType.TRIGGER_RETRACT || triggerType == JProlTriggerType.TRIGGER_ASSERT_RETRACT) {
-        this.triggersOnRetract.computeIfAbsent(signature, k -> new CopyOnWriteArrayList<>()).add(trigger);
+        this.triggersOnRetract.computeIfAbsent(functor, k -> new CopyOnWriteArrayList<>()).add(trigger);
       }
     });
   }
@@ -479,7 +690,7 @@ public final class JProlContext {
   public void unregisterTrigger(final JProlTrigger trigger) {
     Stream.of(this.triggersOnAssert.entrySet().iterator(), this.triggersOnRetract.entrySet().iterator()).forEach(iterator -> {
       while (iterator.hasNext()) {
-        final Entry<String, List<JProlTrigger>> entry = iterator.next();
+        final Entry<Functor, List<JProlTrigger>> entry = iterator.next();
         final List<JProlTrigger> lst = entry.getValue();
         if (lst.remove(trigger)) {
           if (lst.isEmpty()) {
@@ -490,7 +701,7 @@ public final class JProlContext {
     });
   }
 
-  public boolean hasRegisteredTriggersForSignature(final String normalizedSignature,
+  public boolean hasRegisteredTriggersForSignature(final Functor normalizedSignature,
                                                    final JProlTriggerType observedEvent) {
     boolean result;
     switch (observedEvent) {
@@ -535,7 +746,7 @@ public final class JProlContext {
     }
   }
 
-  public void notifyTriggersForSignature(final String normalizedSignature,
+  public void notifyTriggersForSignature(final Functor normalizedSignature,
                                          final JProlTriggerType observedEvent) {
     final List<JProlTrigger> listOfTriggers;
 
@@ -560,7 +771,8 @@ public final class JProlContext {
     }
 
     if (!listOfTriggers.isEmpty()) {
-      final TriggerEvent event = new TriggerEvent(this, normalizedSignature, observedEvent);
+      this.metrics.onTriggersInvoked(listOfTriggers.size());
+      final TriggerEvent event = new TriggerEvent(this, normalizedSignature.getSignature(), observedEvent);
       listOfTriggers.forEach(x -> x.onTriggerEvent(event));
     }
   }
@@ -677,18 +889,87 @@ public final class JProlContext {
   }
 
   public JProlContext makeCopy() {
-    return new JProlContext(
+    final JProlContext result = new JProlContext(
         this.contextId + "_copy",
         this.knowledgeBase.makeCopy(),
         this.executorService,
+        false,
         this.systemFlags,
         this.contextListeners,
         this.ioProviders
     );
+    this.answerTables.getTabledPredicates().forEach(result.answerTables::declare);
+    result.profiler = this.profiler;
+    result.metrics = this.metrics;
+    result.orParallelPoolOwner = this.orParallelPoolOwner;
+    return result;
   }
 
   public ParserContext getParserContext() {
     return this.parserContext;
   }
 
+  /**
+   * Builder of context allowing to define knowledge base, executor strategy and initial state.
+   */
+  public static final class Builder {
+
+    private final String name;
+    private final List<AbstractJProlLibrary> libraries = new ArrayList<>();
+    private final Map<JProlSystemFlag, Term> systemFlags = new EnumMap<>(JProlSystemFlag.class);
+    private final List<JProlContextListener> contextListeners = new ArrayList<>();
+    private final List<IoResourceProvider> ioProviders = new ArrayList<>();
+    private KnowledgeBase knowledgeBase;
+    private ExecutorStrategy executorStrategy = ExecutorStrategy.commonPool();
+
+    private Builder(final String name) {
+      this.name = requireNonNull(name, "Name is null");
+    }
+
+    public Builder knowledgeBase(final KnowledgeBase knowledgeBase) {
+      this.knowledgeBase = requireNonNull(knowledgeBase, "Knowledge base is null");
+      return this;
+    }
+
+    public Builder executorStrategy(final ExecutorStrategy executorStrategy) {
+      this.executorStrategy = requireNonNull(executorStrategy, "Executor strategy is null");
+      return this;
+    }
+
+    public Builder libraries(final AbstractJProlLibrary... libraries) {
+      this.libraries.addAll(asList(libraries));
+      return this;
+    }
+
+    public Builder systemFlag(final JProlSystemFlag flag, final Term value) {
+      if (flag.isReadOnly()) {
+        throw new IllegalArgumentException("Flag is marked as read-only: " + flag);
+      }
+      this.systemFlags.put(flag, requireNonNull(value, "Value is null"));
+      return this;
+    }
+
+    public Builder contextListener(final JProlContextListener listener) {
+      this.contextListeners.add(requireNonNull(listener, "Listener is null"));
+      return this;
+    }
+
+    public Builder ioProvider(final IoResourceProvider provider) {
+      this.ioProviders.add(requireNonNull(provider, "Provider is null"));
+      return this;
+    }
+
+    public JProlContext build() {
+      return new JProlContext(
+          this.name,
+          this.knowledgeBase == null ? new InMemoryKnowledgeBase(this.name + "_kbase") : this.knowledgeBase,
+          this.executorStrategy.makeExecutor(),
+          this.executorStrategy.isOwned(),
+          this.systemFlags,
+          this.contextListeners,
+          this.ioProviders,
+          this.libraries.toArray(new AbstractJProlLibrary[0])
+      );
+    }
+  }
 }
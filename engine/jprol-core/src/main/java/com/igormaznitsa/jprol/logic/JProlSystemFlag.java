@@ -16,6 +16,7 @@ public enum JProlSystemFlag {
   OS(true, Terms.newAtom("os"), Terms.newAtom(System.getProperty("os.name", "unknown"))),
   ARCH(true, Terms.newAtom("arch"), Terms.newAtom(System.getProperty("os.arch", "unknown"))),
   BOUNDED(true, Terms.newAtom("bounded"), TRUE),
+  COMPILED_CLAUSES(false, Terms.newAtom("compiled_clauses"), FALSE),
   DEBUG(false, Terms.newAtom("debug"), FALSE),
   DIALECT(true, Terms.newAtom("dialect"), Terms.newAtom("jprol")),
   ENCODING(false, Terms.newAtom("encoding"), Terms.newAtom("UTF-8")),
@@ -23,6 +24,8 @@ public enum JProlSystemFlag {
   MAX_ARITY(true, Terms.newAtom("max_arity"), Terms.newLong(Integer.MAX_VALUE)),
   MAX_INTEGER(true, Terms.newAtom("max_integer"), Terms.newLong(Long.MAX_VALUE)),
   MIN_INTEGER(true, Terms.newAtom("min_integer"), Terms.newLong(Long.MIN_VALUE)),
+  OR_PARALLEL(false, Terms.newAtom("or_parallel"), FALSE),
+  PROFILE(false, Terms.newAtom("profile"), Terms.newAtom("off")),
   CPU_COUNT(true, Terms.newAtom("cpu_count"), Terms.newLong(Runtime.getRuntime().availableProcessors())),
   UNKNOWN(false, Terms.newAtom("unknown"), UndefinedPredicateBehavior.ERROR.getTerm()),
   HOME(true, Terms.newAtom("home"), Terms.newAtom(System.getProperty("user.home", ""))),
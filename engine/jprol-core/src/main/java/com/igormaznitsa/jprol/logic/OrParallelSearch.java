@@ -0,0 +1,202 @@
+package com.igormaznitsa.jprol.logic;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.exceptions.ProlException;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Or-parallel search of the first solution of a goal. Every branch proves the goal in its own copy
+ * of the context and is described by path of clause indexes chosen at choice points of knowledge
+ * base predicates. Branch replays its path and at the first choice point behind the path keeps the
+ * first clause and forks branches for other clauses while there are idle workers in the pool, so
+ * work is distributed by work stealing of fork-join pool. Branch stops splitting (and continues as
+ * usual sequential proof) when it meets alternatives which can't be described by a path (built-in
+ * predicates and disjunctions with alternatives, bodies with cut), the first found solution stops
+ * all branches. The pool is provided by {@link JProlContext#getOrParallelPool()}, if it is shut down
+ * by disposing of the context then the search is stopped with error.
+ */
+final class OrParallelSearch {
+
+  private static final int SURPLUS_TASKS_THRESHOLD = 3;
+  private static final int MAX_PATH_LENGTH = 1024;
+  private static final long POOL_CHECK_MILLISECONDS = 100L;
+
+  private final JProlContext context;
+  private final Term goal;
+  private final ForkJoinPool pool;
+  private final AtomicInteger activeBranches = new AtomicInteger();
+  private final AtomicReference<Term> solution = new AtomicReference<>();
+  private final AtomicReference<Throwable> error = new AtomicReference<>();
+  private final CompletableFuture<Term> completion = new CompletableFuture<>();
+  private volatile boolean stopped;
+
+  OrParallelSearch(final JProlContext context, final Term goal) {
+    this.context = context;
+    this.goal = goal;
+    this.pool = context.getOrParallelPool();
+  }
+
+  /**
+   * Find the first solution.
+   *
+   * @return solved copy of the goal with bound variables or null if there is no solution
+   */
+  Term find() {
+    this.fork(new int[0], JProlChoicePoint.hasCutInside(this.goal));
+    try {
+      while (!this.completion.isDone()) {
+        try {
+          this.completion.get(POOL_CHECK_MILLISECONDS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+          // tasks queued in shut down pool are never completed
+          if (this.pool.isShutdown()) {
+            this.stopped = true;
+            throw new ProlException("Pool of or-parallel search is shut down");
+          }
+        }
+      }
+    } catch (InterruptedException ex) {
+      this.stopped = true;
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException ex) {
+      throw new IllegalStateException(ex.getCause());
+    }
+    final Term found = this.solution.get();
+    final Throwable thrown = this.error.get();
+    if (found == null && thrown != null) {
+      if (thrown instanceof RuntimeException) {
+        throw (RuntimeException) thrown;
+      }
+      if (thrown instanceof Error) {
+        throw (Error) thrown;
+      }
+      throw new IllegalStateException(thrown);
+    }
+    return found;
+  }
+
+  private void fork(final int[] path, final boolean frozen) {
+    this.activeBranches.incrementAndGet();
+    final BranchTask task = new BranchTask(new Branch(path, frozen));
+    try {
+      if (ForkJoinTask.getPool() == this.pool) {
+        task.fork();
+      } else {
+        this.pool.execute(task);
+      }
+    } catch (RejectedExecutionException ex) {
+      this.error.compareAndSet(null, ex);
+      this.stopped = true;
+      if (this.activeBranches.decrementAndGet() == 0) {
+        this.completion.complete(this.solution.get());
+      }
+    }
+  }
+
+  /**
+   * State of branch shared by all proofs made by the branch goal.
+   */
+  final class Branch {
+
+    private int[] path;
+    private int depth;
+    private boolean frozen;
+
+    private Branch(final int[] path, final boolean frozen) {
+      this.path = path;
+      this.frozen = frozen;
+    }
+
+    boolean isStopped() {
+      return OrParallelSearch.this.stopped;
+    }
+
+    /**
+     * Stop splitting of the branch because it has alternatives not described by its path.
+     */
+    void freeze() {
+      this.frozen = true;
+    }
+
+    boolean isFrozen() {
+      return this.frozen;
+    }
+
+    /**
+     * Choose clause for choice point of knowledge base predicate.
+     *
+     * @param alternatives number of clauses, must be greater than one
+     * @param splittable   true if clauses don't contain cut
+     * @return index of the only clause to be tried or -1 if all clauses must be tried
+     */
+    int choose(final int alternatives, final boolean splittable) {
+      if (this.frozen) {
+        return -1;
+      }
+      if (this.depth < this.path.length) {
+        return this.path[this.depth++];
+      }
+      if (!splittable
+          || this.depth >= MAX_PATH_LENGTH
+          || OrParallelSearch.this.stopped
+          || ForkJoinTask.getSurplusQueuedTaskCount() > SURPLUS_TASKS_THRESHOLD) {
+        this.frozen = true;
+        return -1;
+      }
+      final int[] nextPath = Arrays.copyOf(this.path, this.depth + 1);
+      for (int i = 1; i < alternatives; i++) {
+        final int[] forkPath = nextPath.clone();
+        forkPath[this.depth] = i;
+        OrParallelSearch.this.fork(forkPath, false);
+      }
+      this.path = nextPath;
+      this.depth++;
+      return 0;
+    }
+  }
+
+  private final class BranchTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 3496381522937561208L;
+
+    private final transient Branch branch;
+
+    private BranchTask(final Branch branch) {
+      this.branch = branch;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        if (!stopped) {
+          final JProlChoicePoint branchGoal = new JProlChoicePoint(goal.makeClone(), context.makeCopy());
+          branchGoal.setOrParallelBranch(this.branch);
+          final Term found = branchGoal.prove();
+          if (found != null && solution.compareAndSet(null, found.makeCloneAndVarBound())) {
+            stopped = true;
+          }
+        }
+      } catch (Throwable ex) {
+        if (error.compareAndSet(null, ex)) {
+          stopped = true;
+        }
+      } finally {
+        if (activeBranches.decrementAndGet() == 0) {
+          completion.complete(solution.get());
+        }
+      }
+    }
+  }
+}
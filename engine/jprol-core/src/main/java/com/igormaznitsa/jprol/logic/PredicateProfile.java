@@ -0,0 +1,86 @@
+package com.igormaznitsa.jprol.logic;
+
+import com.igormaznitsa.jprol.data.Functor;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Profile data of a predicate collected by {@link Profiler}.
+ */
+public final class PredicateProfile {
+
+  private final Functor functor;
+  final LongAdder calls = new LongAdder();
+  final LongAdder redos = new LongAdder();
+  final LongAdder exits = new LongAdder();
+  final LongAdder fails = new LongAdder();
+  final LongAdder clauseTries = new LongAdder();
+  final LongAdder inclusiveNanos = new LongAdder();
+  final LongAdder exclusiveNanos = new LongAdder();
+  final LongAdder inclusiveCpuNanos = new LongAdder();
+  final LongAdder exclusiveCpuNanos = new LongAdder();
+
+  PredicateProfile(final Functor functor) {
+    this.functor = functor;
+  }
+
+  public Functor getFunctor() {
+    return this.functor;
+  }
+
+  public String getSignature() {
+    return this.functor.getSignature();
+  }
+
+  public long getCalls() {
+    return this.calls.sum();
+  }
+
+  public long getRedos() {
+    return this.redos.sum();
+  }
+
+  public long getExits() {
+    return this.exits.sum();
+  }
+
+  public long getFails() {
+    return this.fails.sum();
+  }
+
+  public long getClauseTries() {
+    return this.clauseTries.sum();
+  }
+
+  /**
+   * Wall time spent in the predicate including called goals, time of recursive calls is counted
+   * for every level of recursion.
+   *
+   * @return time in nanoseconds
+   */
+  public long getInclusiveNanos() {
+    return this.inclusiveNanos.sum();
+  }
+
+  /**
+   * Wall time spent in the predicate excluding called goals.
+   *
+   * @return time in nanoseconds
+   */
+  public long getExclusiveNanos() {
+    return this.exclusiveNanos.sum();
+  }
+
+  public long getInclusiveCpuNanos() {
+    return this.inclusiveCpuNanos.sum();
+  }
+
+  public long getExclusiveCpuNanos() {
+    return this.exclusiveCpuNanos.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "PredicateProfile(" + this.getSignature() + ')';
+  }
+}
@@ -21,8 +21,10 @@ import com.igormaznitsa.jprol.data.Terms;
 
 import java.io.StringReader;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import static java.util.Collections.unmodifiableList;
 import static java.util.Objects.requireNonNull;
@@ -124,4 +126,29 @@ public final class PreparedGoal {
   public JProlChoicePoint makeChoicePoint(final JProlContext context) {
     return new JProlChoicePoint(this.preparedGoalTerm.makeClone(), context);
   }
+
+  /**
+   * Make lazy stream of solutions of the goal.
+   *
+   * @param context context to prove the goal, must not be null
+   * @return sequential stream of solutions
+   * @see JProlChoicePoint#stream()
+   */
+  public Stream<Solution> stream(final JProlContext context) {
+    return this.makeChoicePoint(context).stream();
+  }
+
+  /**
+   * Make lazy stream of solutions of the goal with limited time to find every solution.
+   *
+   * @param context    context to prove the goal, must not be null
+   * @param parameters values of parameters
+   * @param timeout    max time to find every solution, zero or negative means unlimited
+   * @param timeUnit   time unit of timeout, must not be null
+   * @return sequential stream of solutions
+   * @see JProlChoicePoint#stream(long, TimeUnit)
+   */
+  public Stream<Solution> stream(final JProlContext context, final Map<String, Term> parameters, final long timeout, final TimeUnit timeUnit) {
+    return this.makeChoicePoint(context, parameters).stream(timeout, timeUnit);
+  }
 }
@@ -0,0 +1,194 @@
+package com.igormaznitsa.jprol.logic;
+
+import com.igormaznitsa.jprol.data.Functor;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Profiler of predicates of a context, it is active while flag profile is on. Every resolution of
+ * goal is counted as call or redo and as exit or fail, time of the resolution is counted for the
+ * predicate of the goal and excluded from exclusive time of the goal which is being resolved by the
+ * same thread. Goal replaced by body of its last clause exits when the body is placed into the chain,
+ * so time of the body is not included into its inclusive time. Conjunctions and disjunctions are not
+ * profiled.
+ */
+public final class Profiler {
+
+  private static final MethodHandle CURRENT_THREAD_CPU_TIME = findCurrentThreadCpuTime();
+
+  private final Map<Functor, PredicateProfile> profiles = new ConcurrentHashMap<>();
+  private final ThreadLocal<Activation> activeActivation = new ThreadLocal<>();
+
+  /**
+   * Find accessor of CPU time of the current thread, java.lang.management is not provided on some
+   * platforms (Android) so that it is accessed through reflection.
+   *
+   * @return method handle returning CPU time in nanoseconds or null if not supported
+   */
+  private static MethodHandle findCurrentThreadCpuTime() {
+    try {
+      final Object threadMxBean = Class.forName("java.lang.management.ManagementFactory")
+          .getMethod("getThreadMXBean").invoke(null);
+      final Class<?> beanClass = Class.forName("java.lang.management.ThreadMXBean");
+      if (!(Boolean) beanClass.getMethod("isCurrentThreadCpuTimeSupported").invoke(threadMxBean)) {
+        return null;
+      }
+      return MethodHandles.publicLookup()
+          .unreflect(beanClass.getMethod("getCurrentThreadCpuTime"))
+          .bindTo(threadMxBean);
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+      return null;
+    }
+  }
+
+  private static long currentCpuTime() {
+    if (CURRENT_THREAD_CPU_TIME == null) {
+      return 0L;
+    }
+    try {
+      return (long) CURRENT_THREAD_CPU_TIME.invokeExact();
+    } catch (Throwable ex) {
+      return 0L;
+    }
+  }
+
+  PredicateProfile findProfile(final Functor functor) {
+    return this.profiles.computeIfAbsent(functor, PredicateProfile::new);
+  }
+
+  Activation enter(final PredicateProfile profile, final boolean redo) {
+    if (redo) {
+      profile.redos.increment();
+    } else {
+      profile.calls.increment();
+    }
+    final Activation activation = new Activation(profile, this.activeActivation.get());
+    this.activeActivation.set(activation);
+    return activation;
+  }
+
+  void leave(final Activation activation, final JProlChoicePointResult result) {
+    final long wallTime = System.nanoTime() - activation.startWall;
+    final long cpuTime = currentCpuTime() - activation.startCpu;
+    final PredicateProfile profile = activation.profile;
+
+    if (result == JProlChoicePointResult.FAIL) {
+      profile.fails.increment();
+    } else if (result != null) {
+      profile.exits.increment();
+    }
+
+    profile.inclusiveNanos.add(wallTime);
+    profile.exclusiveNanos.add(wallTime - activation.childWall);
+    profile.inclusiveCpuNanos.add(cpuTime);
+    profile.exclusiveCpuNanos.add(cpuTime - activation.childCpu);
+
+    final Activation parent = activation.parent;
+    if (parent != null) {
+      parent.childWall += wallTime;
+      parent.childCpu += cpuTime;
+    }
+    this.activeActivation.set(parent);
+  }
+
+  /**
+   * Get collected profiles.
+   *
+   * @return profiles of predicates met since the last reset
+   */
+  public Collection<PredicateProfile> getProfiles() {
+    return Collections.unmodifiableCollection(this.profiles.values());
+  }
+
+  /**
+   * Remove collected data.
+   */
+  public void reset() {
+    this.profiles.clear();
+  }
+
+  /**
+   * Write text report about predicates sorted by exclusive time.
+   *
+   * @param writer writer to get report, must not be null
+   * @throws IOException if it is impossible to write
+   */
+  public void writeReport(final Writer writer) throws IOException {
+    final List<PredicateProfile> sorted = new ArrayList<>(this.profiles.values());
+    sorted.sort(Comparator.comparingLong(PredicateProfile::getExclusiveNanos).reversed()
+        .thenComparing(PredicateProfile::getSignature));
+
+    int width = "Predicate".length();
+    for (final PredicateProfile profile : sorted) {
+      width = Math.max(width, profile.getSignature().length());
+    }
+
+    final String format = "%-" + width + "s %10s %10s %10s %10s %10s %12s %12s %12s %12s%n";
+    writer.write(String.format(Locale.ENGLISH, format, "Predicate", "Call", "Redo", "Exit", "Fail", "Clauses",
+        "Incl.ms", "Excl.ms", "Incl.CPU.ms", "Excl.CPU.ms"));
+    for (final PredicateProfile profile : sorted) {
+      writer.write(String.format(Locale.ENGLISH, format,
+          profile.getSignature(),
+          profile.getCalls(),
+          profile.getRedos(),
+          profile.getExits(),
+          profile.getFails(),
+          profile.getClauseTries(),
+          toMillis(profile.getInclusiveNanos()),
+          toMillis(profile.getExclusiveNanos()),
+          toMillis(profile.getInclusiveCpuNanos()),
+          toMillis(profile.getExclusiveCpuNanos())));
+    }
+    writer.flush();
+  }
+
+  /**
+   * Make text report about predicates sorted by exclusive time.
+   *
+   * @return report text
+   * @see #writeReport(Writer)
+   */
+  public String makeReport() {
+    final StringWriter writer = new StringWriter();
+    try {
+      this.writeReport(writer);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return writer.toString();
+  }
+
+  private static String toMillis(final long nanos) {
+    return String.format(Locale.ENGLISH, "%.3f", nanos / 1000000.0d);
+  }
+
+  static final class Activation {
+
+    private final PredicateProfile profile;
+    private final Activation parent;
+    private final long startWall;
+    private final long startCpu;
+    private long childWall;
+    private long childCpu;
+
+    private Activation(final PredicateProfile profile, final Activation parent) {
+      this.profile = profile;
+      this.parent = parent;
+      this.startCpu = currentCpuTime();
+      this.startWall = System.nanoTime();
+    }
+  }
+}
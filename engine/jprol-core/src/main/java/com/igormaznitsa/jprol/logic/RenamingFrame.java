@@ -0,0 +1,224 @@
+package com.igormaznitsa.jprol.logic;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermList;
+import com.igormaznitsa.jprol.data.TermStruct;
+import com.igormaznitsa.jprol.data.TermVar;
+
+import java.util.Arrays;
+
+import static com.igormaznitsa.jprol.data.TermType.LIST;
+import static com.igormaznitsa.jprol.data.TermType.STRUCT;
+import static com.igormaznitsa.jprol.data.TermType.VAR;
+import static com.igormaznitsa.jprol.data.Terms.NULL_LIST;
+import static com.igormaznitsa.jprol.data.Terms.newList;
+import static com.igormaznitsa.jprol.data.Terms.newStruct;
+import static com.igormaznitsa.jprol.data.Terms.newVar;
+
+/**
+ * Binding frame of a clause try. Variables of a stored clause are never copied before head
+ * unification, instead the frame maps them to terms of the goal, so the clause is shared with the
+ * knowledge base and failed head unification allocates nothing. Parts of the clause are copied only
+ * when a goal variable must be bound to them and the body is copied only when the clause is
+ * entered. The frame is reused for all clauses tried for a goal.
+ */
+final class RenamingFrame {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private int[] uids = new int[INITIAL_CAPACITY];
+  private Term[] values = new Term[INITIAL_CAPACITY];
+  private int size;
+
+  private static Term derefStored(Term term) {
+    while (term.getTermType() == VAR) {
+      final Term value = ((TermVar) term).getThisValue();
+      if (value == null) {
+        break;
+      }
+      term = value;
+    }
+    return term;
+  }
+
+  private static boolean isCompound(final Term term) {
+    final boolean result;
+    switch (term.getTermType()) {
+      case STRUCT:
+        result = ((TermStruct) term).getArity() > 0;
+        break;
+      case LIST:
+        result = !((TermList) term).isNullList();
+        break;
+      default:
+        result = false;
+        break;
+    }
+    return result;
+  }
+
+  void clear() {
+    if (this.size > 0) {
+      Arrays.fill(this.uids, 0);
+      Arrays.fill(this.values, null);
+      this.size = 0;
+    }
+  }
+
+  private Term find(final TermVar variable) {
+    final int uid = variable.getVarUid();
+    final int mask = this.uids.length - 1;
+    int index = uid & mask;
+    while (true) {
+      final int found = this.uids[index];
+      if (found == uid) {
+        return this.values[index];
+      } else if (found == 0) {
+        return null;
+      }
+      index = (index + 1) & mask;
+    }
+  }
+
+  private void put(final TermVar variable, final Term value) {
+    if ((this.size + 1) << 1 > this.uids.length) {
+      this.grow();
+    }
+    final int uid = variable.getVarUid();
+    final int mask = this.uids.length - 1;
+    int index = uid & mask;
+    while (this.uids[index] != 0 && this.uids[index] != uid) {
+      index = (index + 1) & mask;
+    }
+    if (this.uids[index] == 0) {
+      this.size++;
+    }
+    this.uids[index] = uid;
+    this.values[index] = value;
+  }
+
+  private void grow() {
+    final int[] oldUids = this.uids;
+    final Term[] oldValues = this.values;
+    this.uids = new int[oldUids.length << 1];
+    this.values = new Term[oldValues.length << 1];
+    final int mask = this.uids.length - 1;
+    for (int i = 0; i < oldUids.length; i++) {
+      final int uid = oldUids[i];
+      if (uid != 0) {
+        int index = uid & mask;
+        while (this.uids[index] != 0) {
+          index = (index + 1) & mask;
+        }
+        this.uids[index] = uid;
+        this.values[index] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * Unify goal with stored clause head. Made bindings of goal variables are not rolled back if
+   * unification fails so caller must undo them.
+   *
+   * @param goal   goal term
+   * @param stored term of a stored clause, it is not changed
+   * @return true if unified, false otherwise
+   */
+  boolean unifyHead(Term goal, Term stored) {
+    while (true) {
+      stored = derefStored(stored);
+      if (stored.getTermType() == VAR) {
+        final TermVar variable = (TermVar) stored;
+        final Term bound = this.find(variable);
+        if (bound == null) {
+          this.put(variable, goal);
+          return true;
+        }
+        return goal.unifyTo(bound);
+      }
+
+      if (!isCompound(stored)) {
+        return goal.unifyTo(stored);
+      }
+
+      final Term value = goal.findNonVarOrSame();
+      if (value.getTermType() != stored.getTermType()) {
+        return value.getTermType() == VAR && value.unifyTo(this.instantiate(stored));
+      }
+
+      final TermStruct storedStruct = (TermStruct) stored;
+      final TermStruct goalStruct = (TermStruct) value;
+      final int arity = storedStruct.getArity();
+      if (goalStruct.getArity() != arity
+          || !goalStruct.getFunctor().unifyTo(storedStruct.getFunctor())) {
+        return false;
+      }
+      final int last = arity - 1;
+      for (int i = 0; i < last; i++) {
+        if (!this.unifyHead(goalStruct.getElement(i), storedStruct.getElement(i))) {
+          return false;
+        }
+      }
+      // the last element is processed in the loop to not grow stack on long lists
+      goal = goalStruct.getElement(last);
+      stored = storedStruct.getElement(last);
+    }
+  }
+
+  /**
+   * Make instance of stored term, variables unified with the goal are replaced by their values and
+   * other variables by new ones.
+   *
+   * @param stored term of a stored clause, it is not changed
+   * @return instance of the term
+   */
+  Term instantiate(Term stored) {
+    stored = derefStored(stored);
+    switch (stored.getTermType()) {
+      case VAR: {
+        final TermVar variable = (TermVar) stored;
+        Term result = this.find(variable);
+        if (result == null) {
+          result = variable.isAnonymous() ? newVar() : newVar(variable.getText());
+          this.put(variable, result);
+        }
+        return result;
+      }
+      case STRUCT: {
+        final TermStruct struct = (TermStruct) stored;
+        final int arity = struct.getArity();
+        if (arity == 0) {
+          return struct;
+        }
+        final Term[] elements = new Term[arity];
+        for (int i = 0; i < arity; i++) {
+          elements[i] = this.instantiate(struct.getElement(i));
+        }
+        return newStruct(struct.getFunctor(), elements, struct.getPredicateProcessor());
+      }
+      case LIST: {
+        TermList list = (TermList) stored;
+        if (list.isNullList()) {
+          return NULL_LIST;
+        }
+        final TermList result = newList(this.instantiate(list.getHead()), NULL_LIST);
+        TermList last = result;
+        while (true) {
+          final Term tail = derefStored(list.getTail());
+          if (tail.getTermType() == LIST && !((TermList) tail).isNullList()) {
+            list = (TermList) tail;
+            final TermList next = newList(this.instantiate(list.getHead()), NULL_LIST);
+            last.setTail(next);
+            last = next;
+          } else {
+            last.setTail(this.instantiate(tail));
+            break;
+          }
+        }
+        return result;
+      }
+      default:
+        return stored;
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package com.igormaznitsa.jprol.logic;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.exceptions.ProlResourceErrorException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+/**
+ * Resources spent by a goal with limits, it is shared by all sub-proofs and nested proofs of the
+ * goal. Budget of a goal started inside of limited goal has the outer budget as parent so that the
+ * both are charged. Time is counted only while the goal is being proved, time spent by caller
+ * between solutions is not charged.
+ */
+final class ResourceBudget {
+
+  private static final long TIME_CHECK_MASK = 0x3FL;
+  private static final long MEMORY_CHECK_MASK = 0x3FFL;
+  private static final MethodHandle THREAD_ALLOCATED_BYTES = findThreadAllocatedBytes();
+
+  private final ResourceLimits limits;
+  private final ResourceBudget parent;
+  private final int baseDepth;
+  private long inferences;
+  private long spentNanos;
+  private long resumedAt;
+  private int activeProofs;
+  private long allocationThreadId;
+  private long allocationBase;
+  private long allocatedBytes;
+
+  ResourceBudget(final ResourceLimits limits, final ResourceBudget parent, final int baseDepth) {
+    this.limits = limits;
+    this.parent = parent;
+    this.baseDepth = baseDepth;
+    if (limits.getMaxAllocatedBytes() > 0L) {
+      this.allocationThreadId = Thread.currentThread().getId();
+      this.allocationBase = threadAllocatedBytes(this.allocationThreadId);
+    }
+  }
+
+  /**
+   * Find accessor of bytes allocated by thread, it is provided only by some JVMs (HotSpot) so it is
+   * accessed through reflection.
+   *
+   * @return method handle taking thread id and returning allocated bytes or null if not supported
+   */
+  private static MethodHandle findThreadAllocatedBytes() {
+    try {
+      final Object threadMxBean = Class.forName("java.lang.management.ManagementFactory")
+          .getMethod("getThreadMXBean").invoke(null);
+      final Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+      if (!beanClass.isInstance(threadMxBean)
+          || !(Boolean) beanClass.getMethod("isThreadAllocatedMemorySupported").invoke(threadMxBean)
+          || !(Boolean) beanClass.getMethod("isThreadAllocatedMemoryEnabled").invoke(threadMxBean)) {
+        return null;
+      }
+      return MethodHandles.publicLookup()
+          .unreflect(beanClass.getMethod("getThreadAllocatedBytes", long.class))
+          .bindTo(threadMxBean);
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+      return null;
+    }
+  }
+
+  private static long threadAllocatedBytes(final long threadId) {
+    if (THREAD_ALLOCATED_BYTES == null) {
+      return 0L;
+    }
+    try {
+      return (long) THREAD_ALLOCATED_BYTES.invokeExact(threadId);
+    } catch (Throwable ex) {
+      return 0L;
+    }
+  }
+
+  /**
+   * Notify that proving of the goal or its nested proof is started or continued.
+   */
+  void resume() {
+    if (this.activeProofs++ == 0) {
+      this.resumedAt = System.nanoTime();
+    }
+  }
+
+  /**
+   * Notify that proving of the goal or its nested proof returned control to caller.
+   */
+  void pause() {
+    if (--this.activeProofs == 0) {
+      this.spentNanos += System.nanoTime() - this.resumedAt;
+    }
+  }
+
+  /**
+   * Charge inference of goal.
+   *
+   * @param goal goal to be resolved, used as culprit of error
+   * @throws ProlResourceErrorException if a limit is exceeded
+   */
+  void onInference(final Term goal) {
+    final long counter = ++this.inferences;
+    final ResourceLimits limits = this.limits;
+    if (limits.getMaxInferences() > 0L && counter > limits.getMaxInferences()) {
+      throw new ProlResourceErrorException("inferences", "Inference limit exceeded: " + limits.getMaxInferences(), goal);
+    }
+    if ((counter & TIME_CHECK_MASK) == 0L
+        && limits.getTimeoutNanos() > 0L
+        && this.spentNanos + (System.nanoTime() - this.resumedAt) > limits.getTimeoutNanos()) {
+      throw new ProlResourceErrorException("time", "Time limit exceeded: " + limits.getTimeoutNanos() + "ns", goal);
+    }
+    if ((counter & MEMORY_CHECK_MASK) == 0L && limits.getMaxAllocatedBytes() > 0L) {
+      this.checkMemory(goal);
+    }
+    if (this.parent != null) {
+      this.parent.onInference(goal);
+    }
+  }
+
+  private void checkMemory(final Term goal) {
+    final long threadId = Thread.currentThread().getId();
+    final long current = threadAllocatedBytes(threadId);
+    if (threadId == this.allocationThreadId) {
+      this.allocatedBytes += current - this.allocationBase;
+    }
+    // allocations of another thread made before the switch are not counted
+    this.allocationThreadId = threadId;
+    this.allocationBase = current;
+    if (this.allocatedBytes > this.limits.getMaxAllocatedBytes()) {
+      throw new ProlResourceErrorException("memory", "Memory limit exceeded: " + this.limits.getMaxAllocatedBytes() + " bytes", goal);
+    }
+  }
+
+  /**
+   * Check depth of new goal.
+   *
+   * @param depth depth of the goal
+   * @param goal  the goal, used as culprit of error
+   * @throws ProlResourceErrorException if depth limit is exceeded
+   */
+  void checkDepth(final int depth, final Term goal) {
+    if (this.limits.getMaxDepth() > 0 && depth - this.baseDepth > this.limits.getMaxDepth()) {
+      throw new ProlResourceErrorException("depth", "Depth limit exceeded: " + this.limits.getMaxDepth(), goal);
+    }
+    if (this.parent != null) {
+      this.parent.checkDepth(depth, goal);
+    }
+  }
+}
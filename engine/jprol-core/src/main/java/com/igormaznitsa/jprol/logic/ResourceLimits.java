@@ -0,0 +1,133 @@
+package com.igormaznitsa.jprol.logic;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits of resources which can be spent by a goal, zero means unlimited. Exceeding of a limit
+ * throws {@link com.igormaznitsa.jprol.exceptions.ProlResourceErrorException} with resource
+ * inferences, depth, time or memory. Time and memory are checked periodically so they can be
+ * slightly exceeded, memory is approximated by bytes allocated by the proving thread (if JVM
+ * provides the value).
+ *
+ * @see JProlChoicePoint#setResourceLimits(ResourceLimits)
+ */
+public final class ResourceLimits {
+
+  public static final ResourceLimits UNLIMITED = new Builder().build();
+
+  private final long maxInferences;
+  private final int maxDepth;
+  private final long timeoutNanos;
+  private final long maxAllocatedBytes;
+
+  private ResourceLimits(final Builder builder) {
+    this.maxInferences = builder.maxInferences;
+    this.maxDepth = builder.maxDepth;
+    this.timeoutNanos = builder.timeoutNanos;
+    this.maxAllocatedBytes = builder.maxAllocatedBytes;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public long getMaxInferences() {
+    return this.maxInferences;
+  }
+
+  public int getMaxDepth() {
+    return this.maxDepth;
+  }
+
+  public long getTimeoutNanos() {
+    return this.timeoutNanos;
+  }
+
+  public long getMaxAllocatedBytes() {
+    return this.maxAllocatedBytes;
+  }
+
+  public boolean isUnlimited() {
+    return this.maxInferences == 0L
+        && this.maxDepth == 0
+        && this.timeoutNanos == 0L
+        && this.maxAllocatedBytes == 0L;
+  }
+
+  @Override
+  public String toString() {
+    return "ResourceLimits(inferences=" + this.maxInferences
+        + ",depth=" + this.maxDepth
+        + ",timeoutNanos=" + this.timeoutNanos
+        + ",allocatedBytes=" + this.maxAllocatedBytes + ')';
+  }
+
+  public static final class Builder {
+
+    private long maxInferences;
+    private int maxDepth;
+    private long timeoutNanos;
+    private long maxAllocatedBytes;
+
+    private Builder() {
+    }
+
+    private static long assertNotNegative(final long value, final String name) {
+      if (value < 0L) {
+        throw new IllegalArgumentException(name + " must not be negative: " + value);
+      }
+      return value;
+    }
+
+    /**
+     * Max number of resolved goals (including redo of goals) of the goal and its nested proofs.
+     *
+     * @param value max number of inferences, zero means unlimited
+     * @return the builder
+     */
+    public Builder maxInferences(final long value) {
+      this.maxInferences = assertNotNegative(value, "Max inferences");
+      return this;
+    }
+
+    /**
+     * Max depth of goals, it is sum of nesting level of sub-proofs and number of pending goals of
+     * conjunctions, so it grows with non-tail recursion.
+     *
+     * @param value max depth, zero means unlimited
+     * @return the builder
+     */
+    public Builder maxDepth(final int value) {
+      this.maxDepth = (int) assertNotNegative(value, "Max depth");
+      return this;
+    }
+
+    /**
+     * Max time spent to prove the goal, it is counted only while the goal is being proved (including
+     * redo) so time spent by caller between solutions is not counted.
+     *
+     * @param value    timeout, zero means unlimited
+     * @param timeUnit time unit, must not be null
+     * @return the builder
+     */
+    public Builder timeout(final long value, final TimeUnit timeUnit) {
+      this.timeoutNanos = timeUnit.toNanos(assertNotNegative(value, "Timeout"));
+      return this;
+    }
+
+    /**
+     * Max number of bytes allocated by the proving thread since setting of limits to the goal.
+     *
+     * @param value number of bytes, zero means unlimited
+     * @return the builder
+     */
+    public Builder maxAllocatedBytes(final long value) {
+      this.maxAllocatedBytes = assertNotNegative(value, "Max allocated bytes");
+      return this;
+    }
+
+    public ResourceLimits build() {
+      return new ResourceLimits(this);
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package com.igormaznitsa.jprol.logic;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermType;
+import com.igormaznitsa.jprol.data.TermVar;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Solution of a goal provided by solution stream. Values of variables are extracted on request
+ * and only while the solution is current, i.e. till the stream is advanced to the next solution
+ * (extracted values are kept).
+ */
+public final class Solution {
+
+  private final SolutionSpliterator source;
+  private final long index;
+  private final Map<String, Term> extracted = new LinkedHashMap<>();
+  private Term term;
+
+  Solution(final SolutionSpliterator source, final long index) {
+    this.source = source;
+    this.index = index;
+  }
+
+  /**
+   * Get index of the solution.
+   *
+   * @return zero based index of the solution
+   */
+  public long getIndex() {
+    return this.index;
+  }
+
+  /**
+   * Check that the solution is current one and its values can be extracted.
+   *
+   * @return true if values can be extracted
+   */
+  public boolean isCurrent() {
+    return this.source.isCurrent(this.index);
+  }
+
+  /**
+   * Get value of named variable of the goal.
+   *
+   * @param name name of variable, must not be null
+   * @return copy of the value or empty if variable is unknown or not bound
+   * @throws IllegalStateException if value is not extracted yet and the solution is not current
+   */
+  public Optional<Term> get(final String name) {
+    requireNonNull(name, "Name is null");
+    if (!this.extracted.containsKey(name)) {
+      this.assertCurrent();
+      final Optional<TermVar> variable = this.source.getChoicePoint().findVar(name);
+      Term value = null;
+      if (variable.isPresent()) {
+        final Term found = variable.get().findNonVarOrSame();
+        value = found.getTermType() == TermType.VAR ? null : found.makeCloneAndVarBound();
+      }
+      this.extracted.put(name, value);
+    }
+    return Optional.ofNullable(this.extracted.get(name));
+  }
+
+  /**
+   * Extract values of all bound named variables of the goal.
+   *
+   * @return map of variable names and copies of their values
+   * @throws IllegalStateException if the solution is not current
+   */
+  public Map<String, Term> getBindings() {
+    this.assertCurrent();
+    final Map<String, Term> result = new LinkedHashMap<>();
+    this.source.getChoicePoint().findAllVarNames().forEach(name -> this.get(name).ifPresent(x -> result.put(name, x)));
+    return Collections.unmodifiableMap(result);
+  }
+
+  /**
+   * Get copy of the goal term with values of the solution.
+   *
+   * @return copy of solved goal
+   * @throws IllegalStateException if the copy is not made yet and the solution is not current
+   */
+  public Term getTerm() {
+    if (this.term == null) {
+      this.assertCurrent();
+      this.term = this.source.getChoicePoint().getGoalTerm().makeCloneAndVarBound();
+    }
+    return this.term;
+  }
+
+  private void assertCurrent() {
+    if (!this.isCurrent()) {
+      throw new IllegalStateException("Solution " + this.index + " is not current");
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Solution(" + this.index + ')';
+  }
+}
@@ -0,0 +1,62 @@
+package com.igormaznitsa.jprol.logic;
+
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Sequential spliterator over solutions of a choice point, the next solution is searched only when
+ * requested by consumer.
+ */
+final class SolutionSpliterator extends Spliterators.AbstractSpliterator<Solution> {
+
+  private final JProlChoicePoint choicePoint;
+  private final long timeoutNanos;
+  private long currentIndex = -1L;
+  private boolean finished;
+
+  SolutionSpliterator(final JProlChoicePoint choicePoint, final long timeout, final TimeUnit timeUnit) {
+    super(Long.MAX_VALUE, ORDERED | NONNULL | IMMUTABLE);
+    this.choicePoint = choicePoint;
+    this.timeoutNanos = timeout <= 0L ? 0L : timeUnit.toNanos(timeout);
+  }
+
+  JProlChoicePoint getChoicePoint() {
+    return this.choicePoint;
+  }
+
+  boolean isCurrent(final long index) {
+    return !this.finished && this.currentIndex == index;
+  }
+
+  @Override
+  public boolean tryAdvance(final Consumer<? super Solution> action) {
+    if (this.finished) {
+      return false;
+    }
+    boolean found = false;
+    try {
+      found = (this.timeoutNanos == 0L ? this.choicePoint.prove() : this.choicePoint.prove(this.timeoutNanos)) != null;
+    } finally {
+      if (found) {
+        this.currentIndex++;
+      } else {
+        this.close();
+      }
+    }
+    if (found) {
+      action.accept(new Solution(this, this.currentIndex));
+    }
+    return found;
+  }
+
+  /**
+   * Stop search, the choice point is cut and bindings made by it are undone.
+   */
+  void close() {
+    if (!this.finished) {
+      this.finished = true;
+      this.choicePoint.abandon();
+    }
+  }
+}
@@ -0,0 +1,265 @@
+package com.igormaznitsa.jprol.logic.compiler;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermStruct;
+import com.igormaznitsa.jprol.data.TermVar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.igormaznitsa.jprol.data.TermType.LIST;
+import static com.igormaznitsa.jprol.data.TermType.STRUCT;
+import static com.igormaznitsa.jprol.data.TermType.VAR;
+import static com.igormaznitsa.jprol.logic.compiler.CompiledClause.*;
+
+/**
+ * Compiler of clauses into {@link CompiledClause}. Ground parts of a clause are shared as
+ * constants, every variable met more than once gets its own register and singleton variables are
+ * compiled as void ones. Structure instructions refer to the source structure as a template, so
+ * built structures get its functor and predicate processor.
+ */
+public final class ClauseCompiler {
+
+  private final Map<TermVar, Integer> occurrences = new IdentityHashMap<>();
+  private final Map<TermVar, Integer> registers = new IdentityHashMap<>();
+  private final List<String> registerNames = new ArrayList<>();
+  private final List<Term> constants = new ArrayList<>();
+  private int[] code = new int[32];
+  private int size;
+  private int depth;
+  private int maxDepth;
+  private int stack;
+  private int maxStack;
+
+  private ClauseCompiler() {
+  }
+
+  public static CompiledClause compile(final TermStruct clause) {
+    return new ClauseCompiler().doCompile(clause);
+  }
+
+  private static Term deref(final Term term) {
+    if (term.getTermType() == VAR) {
+      final Term value = ((TermVar) term).getValue();
+      return value == null ? term : value;
+    }
+    return term;
+  }
+
+  private static boolean isCompound(final Term term) {
+    return (term.getTermType() == STRUCT && ((TermStruct) term).getArity() > 0)
+        || (term.getTermType() == LIST && ((TermStruct) term).getArity() > 0);
+  }
+
+  private CompiledClause doCompile(final TermStruct clause) {
+    final Term head = deref(clause.isClause() ? clause.getElement(0) : clause);
+    final Term body = clause.isClause() && clause.getArity() > 1 ? deref(clause.getElement(1)) : null;
+
+    this.countOccurrences(head);
+    if (body != null) {
+      this.countOccurrences(body);
+    }
+
+    if (head.getTermType() == STRUCT) {
+      final TermStruct headStruct = (TermStruct) head;
+      for (int i = 0; i < headStruct.getArity(); i++) {
+        this.compileHeadArgument(i, deref(headStruct.getElement(i)));
+      }
+    }
+
+    final int bodyStart;
+    if (body == null) {
+      this.emit(PROCEED);
+      bodyStart = -1;
+    } else {
+      this.emit(EXECUTE);
+      bodyStart = this.size;
+      this.compileBodyGoal(body);
+    }
+
+    return new CompiledClause(
+        clause,
+        Arrays.copyOf(this.code, this.size),
+        this.constants.toArray(new Term[0]),
+        this.registerNames.toArray(new String[0]),
+        bodyStart,
+        this.maxDepth,
+        this.maxStack
+    );
+  }
+
+  private void countOccurrences(final Term term) {
+    final Term value = deref(term);
+    switch (value.getTermType()) {
+      case VAR: {
+        this.occurrences.merge((TermVar) value, 1, Integer::sum);
+      }
+      break;
+      case LIST:
+      case STRUCT: {
+        for (final Term element : ((TermStruct) value).getElementArray()) {
+          this.countOccurrences(element);
+        }
+      }
+      break;
+      default:
+        break;
+    }
+  }
+
+  private boolean isVoid(final TermVar variable) {
+    return this.occurrences.get(variable) == 1;
+  }
+
+  private int findRegister(final TermVar variable) {
+    final Integer register = this.registers.get(variable);
+    return register == null ? -1 : register;
+  }
+
+  private int allocateRegister(final TermVar variable) {
+    final int register = this.registerNames.size();
+    this.registers.put(variable, register);
+    this.registerNames.add(variable.isAnonymous() ? null : variable.getText());
+    return register;
+  }
+
+  private int constant(final Term term) {
+    this.constants.add(term);
+    return this.constants.size() - 1;
+  }
+
+  private void compileHeadArgument(final int argument, final Term term) {
+    if (term.getTermType() == VAR) {
+      final TermVar variable = (TermVar) term;
+      if (!this.isVoid(variable)) {
+        final int register = this.findRegister(variable);
+        if (register < 0) {
+          this.emit(GET_VARIABLE, argument, this.allocateRegister(variable));
+        } else {
+          this.emit(GET_VALUE, argument, register);
+        }
+      }
+    } else if (term.isGround() || !isCompound(term)) {
+      this.emit(GET_CONSTANT, argument, this.constant(term));
+    } else {
+      final TermStruct struct = (TermStruct) term;
+      if (term.getTermType() == LIST) {
+        this.emit(GET_LIST, argument);
+      } else {
+        this.emit(GET_STRUCTURE, argument, this.constant(struct), struct.getArity());
+      }
+      this.compileCompoundElements(struct);
+    }
+  }
+
+  private void compileCompoundElements(final TermStruct struct) {
+    this.depth++;
+    this.maxDepth = Math.max(this.maxDepth, this.depth);
+    for (final Term element : struct.getElementArray()) {
+      this.compileUnify(deref(element));
+    }
+    this.emit(END_COMPOUND);
+    this.depth--;
+  }
+
+  private void compileUnify(final Term term) {
+    if (term.getTermType() == VAR) {
+      final TermVar variable = (TermVar) term;
+      if (this.isVoid(variable)) {
+        this.emit(UNIFY_VOID);
+      } else {
+        final int register = this.findRegister(variable);
+        if (register < 0) {
+          this.emit(UNIFY_VARIABLE, this.allocateRegister(variable));
+        } else {
+          this.emit(UNIFY_VALUE, register);
+        }
+      }
+    } else if (term.isGround() || !isCompound(term)) {
+      this.emit(UNIFY_CONSTANT, this.constant(term));
+    } else {
+      final TermStruct struct = (TermStruct) term;
+      if (term.getTermType() == LIST) {
+        this.emit(UNIFY_LIST);
+      } else {
+        this.emit(UNIFY_STRUCTURE, this.constant(struct), struct.getArity());
+      }
+      this.compileCompoundElements(struct);
+    }
+  }
+
+  private void compileBodyGoal(final Term goal) {
+    // goals are always built as new structures to not share them between calls
+    if (goal.getTermType() == STRUCT) {
+      final TermStruct struct = (TermStruct) goal;
+      final boolean control = struct.getArity() == 2 && isControl(struct.getFunctor().getText());
+      for (final Term element : struct.getElementArray()) {
+        if (control) {
+          this.compileBodyGoal(deref(element));
+        } else {
+          this.compilePut(deref(element));
+        }
+      }
+      this.emit(PUT_STRUCTURE, this.constant(struct), struct.getArity());
+      this.pop(struct.getArity());
+      this.push();
+    } else {
+      this.compilePut(goal);
+    }
+  }
+
+  private static boolean isControl(final String functor) {
+    return ",".equals(functor) || ";".equals(functor) || "->".equals(functor);
+  }
+
+  private void compilePut(final Term term) {
+    if (term.getTermType() == VAR) {
+      final TermVar variable = (TermVar) term;
+      if (this.isVoid(variable)) {
+        this.emit(PUT_VOID);
+      } else {
+        int register = this.findRegister(variable);
+        if (register < 0) {
+          register = this.allocateRegister(variable);
+        }
+        this.emit(PUT_VALUE, register);
+      }
+      this.push();
+    } else if (term.isGround() || !isCompound(term)) {
+      this.emit(PUT_CONSTANT, this.constant(term));
+      this.push();
+    } else {
+      final TermStruct struct = (TermStruct) term;
+      for (final Term element : struct.getElementArray()) {
+        this.compilePut(deref(element));
+      }
+      if (term.getTermType() == LIST) {
+        this.emit(PUT_LIST);
+      } else {
+        this.emit(PUT_STRUCTURE, this.constant(struct), struct.getArity());
+      }
+      this.pop(struct.getArity());
+      this.push();
+    }
+  }
+
+  private void push() {
+    this.stack++;
+    this.maxStack = Math.max(this.maxStack, this.stack);
+  }
+
+  private void pop(final int number) {
+    this.stack -= number;
+  }
+
+  private void emit(final int... instruction) {
+    if (this.size + instruction.length > this.code.length) {
+      this.code = Arrays.copyOf(this.code, Math.max(this.code.length << 1, this.size + instruction.length));
+    }
+    System.arraycopy(instruction, 0, this.code, this.size, instruction.length);
+    this.size += instruction.length;
+  }
+}
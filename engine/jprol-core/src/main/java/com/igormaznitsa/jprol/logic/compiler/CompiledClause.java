@@ -0,0 +1,357 @@
+package com.igormaznitsa.jprol.logic.compiler;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermStruct;
+import com.igormaznitsa.jprol.data.TermVar;
+
+import static com.igormaznitsa.jprol.data.Terms.newList;
+import static com.igormaznitsa.jprol.data.Terms.newStruct;
+import static com.igormaznitsa.jprol.data.Terms.newVar;
+
+/**
+ * Clause compiled into instructions of a small register machine. Head instructions unify
+ * arguments of a goal with the clause head directly, without copy of the clause, clause variables
+ * are kept in registers and new terms are allocated only when a goal variable must be bound to a
+ * part of the head. Body instructions build instance of the clause body from the registers.
+ *
+ * @see ClauseCompiler
+ */
+public final class CompiledClause {
+
+  static final int GET_VARIABLE = 1;
+  static final int GET_VALUE = 2;
+  static final int GET_CONSTANT = 3;
+  static final int GET_STRUCTURE = 4;
+  static final int GET_LIST = 5;
+  static final int UNIFY_VARIABLE = 6;
+  static final int UNIFY_VALUE = 7;
+  static final int UNIFY_CONSTANT = 8;
+  static final int UNIFY_VOID = 9;
+  static final int UNIFY_STRUCTURE = 10;
+  static final int UNIFY_LIST = 11;
+  static final int END_COMPOUND = 12;
+  static final int PROCEED = 13;
+  static final int EXECUTE = 14;
+  static final int PUT_VALUE = 15;
+  static final int PUT_VOID = 16;
+  static final int PUT_CONSTANT = 17;
+  static final int PUT_STRUCTURE = 18;
+  static final int PUT_LIST = 19;
+
+  private static final int NO_FUNCTOR = -1;
+
+  private final TermStruct clause;
+  private final int[] code;
+  private final Term[] constants;
+  private final String[] registerNames;
+  private final int bodyStart;
+  private final int maxDepth;
+  private final int maxStack;
+
+  CompiledClause(
+      final TermStruct clause,
+      final int[] code,
+      final Term[] constants,
+      final String[] registerNames,
+      final int bodyStart,
+      final int maxDepth,
+      final int maxStack
+  ) {
+    this.clause = clause;
+    this.code = code;
+    this.constants = constants;
+    this.registerNames = registerNames;
+    this.bodyStart = bodyStart;
+    this.maxDepth = maxDepth;
+    this.maxStack = maxStack;
+  }
+
+  public TermStruct getClause() {
+    return this.clause;
+  }
+
+  public boolean isFact() {
+    return this.bodyStart < 0;
+  }
+
+  public int getCodeLength() {
+    return this.code.length;
+  }
+
+  private static TermStruct instantiate(final TermStruct template, final Term[] elements) {
+    return newStruct(template.getFunctor(), elements, template.getPredicateProcessor());
+  }
+
+  private TermVar makeVariable(final int register) {
+    final String name = this.registerNames[register];
+    return name == null ? newVar() : newVar(name);
+  }
+
+  /**
+   * Unify goal with the clause head. Made bindings are not rolled back if unification fails so
+   * caller must undo them.
+   *
+   * @param goal goal which signature is the same as signature of the clause head
+   * @return registers to be used for body building or null if unification failed
+   */
+  public Term[] unifyHead(final TermStruct goal) {
+    final int[] code = this.code;
+    final Term[] registers = new Term[this.registerNames.length];
+
+    final Term[][] frameElements;
+    final int[] frameIndex;
+    final int[] frameFunctor;
+    final int[] frameParentSlot;
+    final TermVar[] frameTarget;
+    if (this.maxDepth == 0) {
+      frameElements = null;
+      frameIndex = null;
+      frameFunctor = null;
+      frameParentSlot = null;
+      frameTarget = null;
+    } else {
+      frameElements = new Term[this.maxDepth][];
+      frameIndex = new int[this.maxDepth];
+      frameFunctor = new int[this.maxDepth];
+      frameParentSlot = new int[this.maxDepth];
+      frameTarget = new TermVar[this.maxDepth];
+    }
+    // write mode frames have target variable or parent slot
+    int top = -1;
+
+    int pc = 0;
+    while (true) {
+      switch (code[pc]) {
+        case GET_VARIABLE: {
+          registers[code[pc + 2]] = goal.getElement(code[pc + 1]);
+          pc += 3;
+        }
+        break;
+        case GET_VALUE: {
+          if (!goal.getElement(code[pc + 1]).unifyTo(registers[code[pc + 2]])) {
+            return null;
+          }
+          pc += 3;
+        }
+        break;
+        case GET_CONSTANT: {
+          if (!goal.getElement(code[pc + 1]).unifyTo(this.constants[code[pc + 2]])) {
+            return null;
+          }
+          pc += 3;
+        }
+        break;
+        case GET_STRUCTURE:
+        case GET_LIST:
+        case UNIFY_STRUCTURE:
+        case UNIFY_LIST: {
+          final int opcode = code[pc];
+          final boolean list = opcode == GET_LIST || opcode == UNIFY_LIST;
+          final int functor;
+          final int arity;
+          final Term source;
+          if (opcode == GET_STRUCTURE || opcode == GET_LIST) {
+            source = goal.getElement(code[pc + 1]).findNonVarOrSame();
+            if (list) {
+              functor = NO_FUNCTOR;
+              arity = 2;
+              pc += 2;
+            } else {
+              functor = code[pc + 2];
+              arity = code[pc + 3];
+              pc += 4;
+            }
+          } else {
+            if (list) {
+              functor = NO_FUNCTOR;
+              arity = 2;
+              pc++;
+            } else {
+              functor = code[pc + 1];
+              arity = code[pc + 2];
+              pc += 3;
+            }
+            if (frameParentSlot[top] < 0 && frameTarget[top] == null) {
+              source = frameElements[top][frameIndex[top]++].findNonVarOrSame();
+            } else {
+              final int slot = frameIndex[top]++;
+              top++;
+              frameElements[top] = new Term[arity];
+              frameIndex[top] = 0;
+              frameFunctor[top] = functor;
+              frameParentSlot[top] = slot;
+              frameTarget[top] = null;
+              break;
+            }
+          }
+
+          top++;
+          frameIndex[top] = 0;
+          frameFunctor[top] = functor;
+          frameParentSlot[top] = -1;
+          switch (source.getTermType()) {
+            case VAR: {
+              frameElements[top] = new Term[arity];
+              frameTarget[top] = (TermVar) source;
+            }
+            break;
+            case LIST: {
+              if (!list || ((TermStruct) source).getArity() == 0) {
+                return null;
+              }
+              frameElements[top] = ((TermStruct) source).getElementArray();
+              frameTarget[top] = null;
+            }
+            break;
+            case STRUCT: {
+              final TermStruct struct = (TermStruct) source;
+              if (list
+                  || struct.getArity() != arity
+                  || !struct.getFunctor().unifyTo(((TermStruct) this.constants[functor]).getFunctor())) {
+                return null;
+              }
+              frameElements[top] = struct.getElementArray();
+              frameTarget[top] = null;
+            }
+            break;
+            default:
+              return null;
+          }
+        }
+        break;
+        case UNIFY_VARIABLE: {
+          if (frameParentSlot[top] < 0 && frameTarget[top] == null) {
+            registers[code[pc + 1]] = frameElements[top][frameIndex[top]++];
+          } else {
+            final int register = code[pc + 1];
+            final TermVar variable = this.makeVariable(register);
+            registers[register] = variable;
+            frameElements[top][frameIndex[top]++] = variable;
+          }
+          pc += 2;
+        }
+        break;
+        case UNIFY_VALUE: {
+          if (frameParentSlot[top] < 0 && frameTarget[top] == null) {
+            if (!frameElements[top][frameIndex[top]++].unifyTo(registers[code[pc + 1]])) {
+              return null;
+            }
+          } else {
+            frameElements[top][frameIndex[top]++] = registers[code[pc + 1]];
+          }
+          pc += 2;
+        }
+        break;
+        case UNIFY_CONSTANT: {
+          if (frameParentSlot[top] < 0 && frameTarget[top] == null) {
+            if (!frameElements[top][frameIndex[top]++].unifyTo(this.constants[code[pc + 1]])) {
+              return null;
+            }
+          } else {
+            frameElements[top][frameIndex[top]++] = this.constants[code[pc + 1]];
+          }
+          pc += 2;
+        }
+        break;
+        case UNIFY_VOID: {
+          if (frameParentSlot[top] < 0 && frameTarget[top] == null) {
+            frameIndex[top]++;
+          } else {
+            frameElements[top][frameIndex[top]++] = newVar();
+          }
+          pc++;
+        }
+        break;
+        case END_COMPOUND: {
+          if (frameParentSlot[top] >= 0 || frameTarget[top] != null) {
+            final Term[] elements = frameElements[top];
+            final Term built = frameFunctor[top] == NO_FUNCTOR
+                ? newList(elements[0], elements[1])
+                : instantiate((TermStruct) this.constants[frameFunctor[top]], elements);
+            if (frameTarget[top] == null) {
+              frameElements[top - 1][frameParentSlot[top]] = built;
+            } else if (!frameTarget[top].unifyTo(built)) {
+              return null;
+            }
+          }
+          frameElements[top] = null;
+          frameTarget[top] = null;
+          top--;
+          pc++;
+        }
+        break;
+        case PROCEED:
+        case EXECUTE:
+          return registers;
+        default:
+          throw new IllegalStateException("Unexpected head instruction: " + code[pc]);
+      }
+    }
+  }
+
+  /**
+   * Build instance of the clause body for registers filled by head unification.
+   *
+   * @param registers registers returned by {@link #unifyHead(TermStruct)}
+   * @return built body, must not be called for facts
+   */
+  public Term makeBody(final Term[] registers) {
+    if (this.bodyStart < 0) {
+      throw new IllegalStateException("Fact doesn't have body");
+    }
+    final int[] code = this.code;
+    final Term[] stack = new Term[this.maxStack];
+    int top = 0;
+
+    int pc = this.bodyStart;
+    while (pc < code.length) {
+      switch (code[pc]) {
+        case PUT_VALUE: {
+          final int register = code[pc + 1];
+          Term value = registers[register];
+          if (value == null) {
+            value = this.makeVariable(register);
+            registers[register] = value;
+          }
+          stack[top++] = value;
+          pc += 2;
+        }
+        break;
+        case PUT_VOID: {
+          stack[top++] = newVar();
+          pc++;
+        }
+        break;
+        case PUT_CONSTANT: {
+          stack[top++] = this.constants[code[pc + 1]];
+          pc += 2;
+        }
+        break;
+        case PUT_STRUCTURE: {
+          final int arity = code[pc + 2];
+          final Term[] elements = new Term[arity];
+          top -= arity;
+          System.arraycopy(stack, top, elements, 0, arity);
+          stack[top++] = instantiate((TermStruct) this.constants[code[pc + 1]], elements);
+          pc += 3;
+        }
+        break;
+        case PUT_LIST: {
+          final Term tail = stack[--top];
+          final Term head = stack[--top];
+          stack[top++] = newList(head, tail);
+          pc++;
+        }
+        break;
+        default:
+          throw new IllegalStateException("Unexpected body instruction: " + code[pc]);
+      }
+    }
+    return stack[0];
+  }
+
+  @Override
+  public String toString() {
+    return "CompiledClause{" + this.clause.toSrcString() + ", code=" + this.code.length + '}';
+  }
+}
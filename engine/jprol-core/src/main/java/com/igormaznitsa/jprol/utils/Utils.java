@@ -26,6 +26,8 @@ import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import static com.igormaznitsa.jprol.data.TermType.ATOM;
 import static com.igormaznitsa.jprol.data.Terms.newList;
@@ -95,6 +97,31 @@ public final class Utils {
     }).filter(Objects::nonNull).toArray(Throwable[]::new);
   }
 
+  /**
+   * Sleep for defined time, a fork-join worker is compensated by its pool while sleeping.
+   *
+   * @param milliseconds time to sleep in milliseconds
+   * @throws InterruptedException if the thread is interrupted
+   */
+  public static void sleepManaged(final long milliseconds) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(milliseconds);
+    ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+      @Override
+      public boolean block() throws InterruptedException {
+        final long remaining = deadline - System.nanoTime();
+        if (remaining > 0L) {
+          TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+        return this.isReleasable();
+      }
+
+      @Override
+      public boolean isReleasable() {
+        return deadline - System.nanoTime() <= 0L;
+      }
+    });
+  }
+
   public static <T> CloseableIterator<T> makeCloseableIterator(final Iterator<T> iterator, final Runnable onClose) {
     return new CloseableIterator<T>() {
       private final Iterator<T> wrapped = iterator;
@@ -214,6 +241,23 @@ public final class Utils {
     return null;
   }
 
+  /**
+   * Make fact of a predicate from its arguments, the array is copied.
+   *
+   * @param functor   functor of predicate, must not be null
+   * @param arguments arguments of fact, length must be equal to arity of predicate
+   * @return fact, must not be null
+   * @throws IllegalArgumentException if number of arguments is wrong
+   */
+  public static TermStruct makeFact(final Functor functor, final Term[] arguments) {
+    if (arguments.length != functor.getArity()) {
+      throw new IllegalArgumentException("Expected " + functor.getArity() + " arguments for " + functor.getSignature() + " but found " + arguments.length);
+    }
+    return arguments.length == 0
+        ? Terms.newStruct(functor.getAtom())
+        : Terms.newStruct(functor.getAtom(), arguments.clone());
+  }
+
   public static String normalizeSignature(final String signature) {
     if (signature == null) {
       return null;
@@ -16,16 +16,34 @@
 
 package com.igormaznitsa.jprol.it;
 
+import com.igormaznitsa.jprol.data.Functor;
 import com.igormaznitsa.jprol.data.Term;
 import com.igormaznitsa.jprol.data.TermList;
+import com.igormaznitsa.jprol.data.TermStruct;
 import com.igormaznitsa.jprol.data.TermVar;
+import com.igormaznitsa.jprol.data.Terms;
+import com.igormaznitsa.jprol.exceptions.ProlException;
+import com.igormaznitsa.jprol.exceptions.ProlResourceErrorException;
+import com.igormaznitsa.jprol.libs.JProlCoreLibrary;
+import com.igormaznitsa.jprol.libs.JProlThreadLibrary;
+import com.igormaznitsa.jprol.logic.ExecutorStrategy;
 import com.igormaznitsa.jprol.logic.JProlChoicePoint;
 import com.igormaznitsa.jprol.logic.JProlContext;
+import com.igormaznitsa.jprol.logic.JProlSystemFlag;
+import com.igormaznitsa.jprol.logic.PredicateInvoker;
+import com.igormaznitsa.jprol.logic.PredicateProfile;
+import com.igormaznitsa.jprol.logic.ResourceLimits;
 import org.junit.jupiter.api.Test;
 
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -88,4 +106,195 @@ class MiscTest extends AbstractJProlTest {
     assertEquals("[[],['b'],['a'],['a','b']]", result.getValue().toString());
   }
 
+  @Test
+  void testBindingsUndoneOnBacktracking() {
+    checkOnce("\\+ (X = 1, fail), var(X).", true);
+    checkOnce("findall(X, (X = 1 ; X = 2), _), var(X).", true);
+    checkOnce("p(1,a). p(2,b). p(3,c).", "p(X,Y), X > 2, Y == c.", true);
+    checkVarValues(makeContextAndConsult("p(1). p(2). p(3)."), "p(X), call(p(Y)), X < Y.", "Y", "2", "3", "3");
+  }
+
+  @Test
+  void testDeterministicTailRecursion() {
+    checkOnce("count(N,N) :- !. count(I,N) :- I < N, J is I + 1, count(J,N).", "count(0,200000).", true);
+    checkOnce("walk([]). walk([_|T]) :- walk(T). make(0,[]) :- !. make(N,[N|T]) :- M is N - 1, make(M,T).", "make(1000,L), walk(L).", true);
+    checkVarValues(makeContextAndConsult("p(a). p(b). q(X) :- p(X)."), "((q(X), true), X \\== c), true.", "X", "'a'", "'b'");
+  }
+
+  @Test
+  void testCompiledClauses() {
+    final String flag = ":- set_prolog_flag(compiled_clauses, true).";
+    checkOnce(flag + "app([],L,L). app([H|T],L,[H|R]) :- app(T,L,R).", "app(X, Y, [1,2]), X == [1], Y == [2].", true);
+    checkOnce(flag + "p(f(X,g(X,_),[X|T]),T).", "p(f(1,g(A,b),[B,c]),Z), A == 1, B == 1, Z == [c].", true);
+    checkOnce(flag + "p(f(X,g(X,_),[X|T]),T).", "p(W,[c]), W = f(Q,g(E,_),L), Q = 1, E == 1, L == [1,c].", true);
+    checkOnce(flag + "p(f(X,X)).", "p(f(1,2)).", false);
+    checkOnce(flag + "max(X,Y,X) :- X >= Y, !. max(_,Y,Y).", "max(3,5,M), M == 5, max(7,2,N), N == 7.", true);
+    checkOnce(flag + "count(N,N) :- !. count(I,N) :- I < N, J is I + 1, count(J,N).", "count(0,100000).", true);
+    checkVarValues(makeContextAndConsult(flag + "p(1). p(2). p(3). q(X,Y) :- p(X), p(Y), X < Y."), "q(X,Y).", "Y", "2", "3", "3");
+    checkVarValues(makeContextAndConsult(flag + "p(a). p(b). q(X) :- (p(X) ; X = c)."), "findall(X, q(X), L).", "L", "['a','b','c']");
+  }
+
+  @Test
+  void testStoredClausesNotChangedByCalls() {
+    checkOnce("p(f(X),X). p(g(Y),[Y|_]).", "p(A,1), A == f(1), p(B,C), B = f(D), var(D), D = 5, C == 5, p(g(2),[E]), E == 2, p(g(F),G), var(F), G = [H|_], var(H).", true);
+    checkOnce("p(X) :- q(X, Y), Y > 1. q(a,1). q(b,2). q(c,3).", "findall(X, p(X), L), L == [b,c], p(Z), Z == b.", true);
+    checkVarValues(makeContextAndConsult("len([],0). len([_|T],N) :- len(T,M), N is M + 1."), "len([a,b,c],N).", "N", "3");
+  }
+
+  @Test
+  void testAtomsAreInterned() {
+    assertSame(Terms.newAtom("some_atom"), Terms.newAtom(new String("some_atom")));
+    assertSame(Terms.LIST_FUNCTOR, Terms.newAtom("."));
+
+    final JProlContext context = makeContextAndConsult("p(some_atom, f(other_atom)).");
+    final JProlChoicePoint goal = new JProlChoicePoint("p(X, Y).", context);
+    assertNotNull(goal.prove());
+    final TermStruct y = goal.findVar("Y").get().findNonVarOrSame();
+    assertSame(Terms.newAtom("some_atom"), goal.findVar("X").get().findNonVarOrSame());
+    assertSame(Terms.newAtom("other_atom"), y.getElement(0));
+    assertSame(Terms.newAtom("f"), y.getFunctor());
+  }
+
+  @Test
+  void testFunctorKeys() {
+    final Functor key = Functor.of("some_predicate", 2);
+    assertSame(key, Functor.fromSignature("some_predicate/2"));
+    assertSame(key, Terms.newAtom("some_predicate").asFunctor(2));
+    assertNotSame(key, Functor.of("some_predicate", 3));
+    assertEquals("some_predicate/2", key.getSignature());
+    assertNull(Functor.fromSignature("some_predicate"));
+    assertNull(Functor.fromSignature("some_predicate/x"));
+
+    final JProlContext context = makeContextAndConsult("some_predicate(a,b).");
+    final JProlChoicePoint goal = new JProlChoicePoint("some_predicate(X,Y).", context);
+    assertSame(key, ((TermStruct) goal.getGoalTerm()).getFunctorKey());
+    assertNotNull(goal.prove());
+  }
+
+  @Test
+  void testLibraryDispatchTable() {
+    checkOnce("", "functor(T, atom_length, 2), arg(1, T, abc), arg(2, T, N), call(T), N == 3.", true);
+
+    final JProlContext context = new JProlContext("dispatch-test");
+    final TermStruct struct = Terms.newStruct(Terms.newAtom("atom_length"), new Term[] {Terms.newAtom("abc"), Terms.newVar()});
+    assertSame(PredicateInvoker.NULL_PROCESSOR, context.findProcessor(struct));
+    final JProlCoreLibrary library = new JProlCoreLibrary();
+    context.addLibrary(library);
+    final PredicateInvoker invoker = context.findProcessor(struct);
+    assertNotSame(PredicateInvoker.NULL_PROCESSOR, invoker);
+    assertSame(invoker, context.findProcessor(struct));
+    context.removeLibrary(library);
+    assertSame(PredicateInvoker.NULL_PROCESSOR, context.findProcessor(struct));
+  }
+
+  @Test
+  void testContextBuilderExecutorStrategy() {
+    final JProlContext dedicated = JProlContext.builder("dedicated")
+        .executorStrategy(ExecutorStrategy.dedicatedPool(1))
+        .libraries(new JProlCoreLibrary(), new JProlThreadLibrary())
+        .systemFlag(JProlSystemFlag.COMPILED_CLAUSES, Terms.TRUE)
+        .build();
+    assertEquals("true", dedicated.getSystemFlag(JProlSystemFlag.COMPILED_CLAUSES).getText());
+    dedicated.consult(new StringReader("nested :- fork([fork([pause(5), true]), fork([true])])."));
+    // nested forks must not deadlock on single thread pool
+    assertNotNull(new JProlChoicePoint("nested, lock(a), lock(a), unlock(a), unlock(a), async(pause(20)), waitasync.", dedicated).prove());
+    assertEquals(0, dedicated.getCurrentAsyncTaskNumber());
+    final ExecutorService dedicatedExecutor = dedicated.getContextExecutorService();
+    dedicated.dispose();
+    assertTrue(dedicatedExecutor.isShutdown());
+
+    final ExecutorService external = Executors.newFixedThreadPool(2);
+    try {
+      final JProlContext context = JProlContext.builder("external")
+          .executorStrategy(ExecutorStrategy.of(external))
+          .libraries(new JProlCoreLibrary(), new JProlThreadLibrary())
+          .build();
+      assertNotNull(new JProlChoicePoint("fork([pause(5), true]), async(pause(10)), waitasync.", context).prove());
+      assertSame(external, context.getContextExecutorService());
+      // or-parallel search runs on pool owned by the context
+      assertNotNull(new JProlChoicePoint("par_once((for(X,1,100), X > 90)).", context).prove());
+      context.dispose();
+      assertFalse(external.isShutdown());
+      assertThrows(ProlException.class, () -> context.proveOnceOrParallel(Terms.newAtom("true")));
+    } finally {
+      external.shutdown();
+    }
+
+    final JProlContext virtual = JProlContext.builder("virtual")
+        .executorStrategy(ExecutorStrategy.virtualThreads())
+        .libraries(new JProlCoreLibrary(), new JProlThreadLibrary())
+        .build();
+    assertEquals(ExecutorStrategy.isVirtualThreadSupported(), !(virtual.getContextExecutorService() instanceof ForkJoinPool));
+    assertNotNull(new JProlChoicePoint("fork([fork([true]), fork([true])]), par_once((for(X,1,10), X > 5)).", virtual).prove());
+    virtual.dispose();
+  }
+
+  @Test
+  void testProfiler() {
+    final JProlContext context = makeContextAndConsult("m(1). m(2). m(3). p(X) :- m(X), X > 2.");
+    assertFalse(context.isProfiling());
+    assertNotNull(new JProlChoicePoint("p(_).", context).prove());
+    assertTrue(context.getProfiler().getProfiles().isEmpty());
+
+    checkVarValues(context, "set_prolog_flag(profile,on), p(X), set_prolog_flag(profile,off).", "X", "3");
+    assertFalse(context.isProfiling());
+
+    final Map<String, PredicateProfile> profiles = new HashMap<>();
+    context.getProfiler().getProfiles().forEach(x -> profiles.put(x.getSignature(), x));
+
+    final PredicateProfile m = profiles.get("m/1");
+    assertEquals(1L, m.getCalls());
+    assertEquals(2L, m.getRedos());
+    assertEquals(3L, m.getExits());
+    assertEquals(0L, m.getFails());
+    assertEquals(3L, m.getClauseTries());
+
+    final PredicateProfile greater = profiles.get(">/2");
+    assertEquals(3L, greater.getCalls());
+    assertEquals(2L, greater.getFails());
+    assertEquals(1L, greater.getExits());
+
+    final PredicateProfile p = profiles.get("p/1");
+    assertEquals(1L, p.getCalls());
+    assertEquals(1L, p.getClauseTries());
+    assertTrue(p.getInclusiveNanos() >= p.getExclusiveNanos());
+    assertFalse(profiles.containsKey(",/2"));
+
+    assertTrue(context.getProfiler().makeReport().contains("m/1"));
+    context.getProfiler().reset();
+    assertTrue(context.getProfiler().getProfiles().isEmpty());
+  }
+
+  @Test
+  void testResourceLimits() throws Exception {
+    final JProlContext context = makeContextAndConsult("loop :- loop. deep(N) :- M is N + 1, deep(M), true."
+        + "grow(L) :- grow([a|L]). n(1). n(2). n(3)."
+        + "spin(0) :- !. spin(N) :- M is N - 1, spin(M). w(X) :- n(X), spin(500).");
+
+    final ProlResourceErrorException inferences = assertThrows(ProlResourceErrorException.class,
+        () -> new JProlChoicePoint("loop.", context).setResourceLimits(ResourceLimits.builder().maxInferences(1000L).build()).prove());
+    assertEquals("inferences", inferences.getResource());
+    assertEquals("depth", assertThrows(ProlResourceErrorException.class,
+        () -> new JProlChoicePoint("deep(0).", context).setResourceLimits(ResourceLimits.builder().maxDepth(100).build()).prove()).getResource());
+    assertEquals("time", assertThrows(ProlResourceErrorException.class,
+        () -> new JProlChoicePoint("loop.", context).setResourceLimits(ResourceLimits.builder().timeout(50L, TimeUnit.MILLISECONDS).build()).prove()).getResource());
+    // inference limit stops the goal if JVM doesn't provide allocated bytes of thread
+    assertEquals("memory", assertThrows(ProlResourceErrorException.class,
+        () -> new JProlChoicePoint("grow([]).", context).setResourceLimits(ResourceLimits.builder().maxAllocatedBytes(1L << 20).maxInferences(10000000L).build()).prove()).getResource());
+    // nested proofs are charged to the goal
+    assertEquals("inferences", assertThrows(ProlResourceErrorException.class,
+        () -> new JProlChoicePoint("findall(X, loop, L).", context).setResourceLimits(ResourceLimits.builder().maxInferences(1000L).build()).prove()).getResource());
+
+    final JProlChoicePoint limited = new JProlChoicePoint("n(X).", context).setResourceLimits(ResourceLimits.builder().maxInferences(100L).build());
+    assertNotNull(limited.prove());
+    assertThrows(IllegalStateException.class, () -> limited.setResourceLimits(ResourceLimits.UNLIMITED));
+
+    // time spent by caller between solutions is not charged
+    final JProlChoicePoint timed = new JProlChoicePoint("w(X).", context).setResourceLimits(ResourceLimits.builder().timeout(200L, TimeUnit.MILLISECONDS).build());
+    for (int i = 0; i < 3; i++) {
+      assertNotNull(timed.prove());
+      Thread.sleep(300L);
+    }
+  }
+
 }
@@ -1,11 +1,23 @@
 package com.igormaznitsa.jprol.it;
 
 import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.exceptions.ProlTimeoutException;
 import com.igormaznitsa.jprol.logic.JProlChoicePoint;
 import com.igormaznitsa.jprol.logic.JProlContext;
 import com.igormaznitsa.jprol.logic.PreparedGoal;
+import com.igormaznitsa.jprol.logic.Solution;
+import com.igormaznitsa.jprol.utils.CloseableIterator;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class PreparedGoalTest extends AbstractJProlTest {
@@ -41,4 +53,47 @@ class PreparedGoalTest extends AbstractJProlTest {
       }
     }
   }
+
+  @Test
+  void testSolutionStream() {
+    final JProlContext context = makeContextAndConsult("num(X) :- for(X,1,1000000). slow(1). slow(2). slow(3) :- pause(200), fail.");
+    final PreparedGoal goal = new PreparedGoal("num(X), X mod 7 =:= 0.", context);
+
+    assertEquals(Arrays.asList(7L, 14L, 21L), goal.stream(context)
+        .limit(3)
+        .map(x -> x.get("X").get().toNumber().longValue())
+        .collect(Collectors.toList()));
+
+    final List<Solution> kept = new ArrayList<>();
+    try (Stream<Solution> stream = goal.stream(context)) {
+      stream.limit(2).forEach(x -> {
+        if (x.getIndex() == 0L) {
+          assertEquals("7", x.get("X").get().toSrcString());
+        }
+        kept.add(x);
+      });
+    }
+    assertEquals("7", kept.get(0).get("X").get().toSrcString());
+    assertFalse(kept.get(1).isCurrent());
+    assertThrows(IllegalStateException.class, () -> kept.get(1).get("X"));
+
+    final JProlChoicePoint choicePoint = new JProlChoicePoint("for(X,1,3), Y = f(X).", context);
+    try (CloseableIterator<Solution> iterator = choicePoint.iterator()) {
+      final Solution first = iterator.next();
+      assertEquals(0L, first.getIndex());
+      assertEquals("{X=1, Y=f(1)}", first.getBindings().toString());
+      assertEquals("for(1,1,3) , f(1) = f(1)", first.getTerm().toSrcString());
+      assertTrue(iterator.hasNext());
+      assertFalse(first.isCurrent());
+    } catch (IOException ex) {
+      fail(ex);
+    }
+    assertNull(choicePoint.prove());
+
+    final PreparedGoal slow = new PreparedGoal("slow(X).", context);
+    final List<Long> found = new ArrayList<>();
+    assertThrows(ProlTimeoutException.class, () -> slow.stream(context, Collections.emptyMap(), 50, TimeUnit.MILLISECONDS)
+        .forEach(x -> found.add(x.get("X").get().toNumber().longValue())));
+    assertEquals(Arrays.asList(1L, 2L), found);
+  }
 }
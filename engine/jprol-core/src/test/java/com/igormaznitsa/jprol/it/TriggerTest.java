@@ -8,9 +8,13 @@ import com.igormaznitsa.jprol.logic.triggers.JProlTriggerType;
 import com.igormaznitsa.jprol.logic.triggers.TriggerEvent;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.igormaznitsa.jprol.data.Terms.newAtom;
+import static com.igormaznitsa.jprol.data.Terms.newLong;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 class TriggerTest extends AbstractJProlTest {
 
@@ -76,6 +80,23 @@ class TriggerTest extends AbstractJProlTest {
     assertEquals(1, trigger.haltCounter.get());
   }
 
+  @Test
+  void testTriggerNotifiedOnceForLoadedFacts() {
+    final InternalTestTrigger trigger = new InternalTestTrigger();
+    trigger.addSignature("testload/2", JProlTriggerType.TRIGGER_ASSERT);
+
+    final JProlContext context = makeTestContext();
+    context.registerTrigger(trigger);
+
+    assertNotNull(new JProlChoicePoint("load_facts(testload/2, [[a,1],[b,2],[c,3]]), testload(c,3).", context).prove());
+    assertEquals(1, trigger.assertevents.get());
+
+    context.getKnowledgeBase().bulkLoad(context, "testload/2",
+        Arrays.asList(new Term[] {newAtom("d"), newLong(4)}, new Term[] {newAtom("e"), newLong(5)}).iterator());
+    assertEquals(2, trigger.assertevents.get());
+    assertEquals(5, context.getKnowledgeBase().countClauses().get("testload/2").intValue());
+  }
+
   private static class InternalTestTrigger extends AbstractJProlTrigger {
 
     private final AtomicInteger haltCounter = new AtomicInteger();
@@ -0,0 +1,346 @@
+package com.igormaznitsa.jprol.kbase.inmemory;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermStruct;
+import com.igormaznitsa.jprol.data.Terms;
+import com.igormaznitsa.jprol.it.AbstractJProlTest;
+import com.igormaznitsa.jprol.kbase.IteratorType;
+import com.igormaznitsa.jprol.kbase.KnowledgeBase;
+import com.igormaznitsa.jprol.kbase.inmemory.items.HeadShape;
+import com.igormaznitsa.jprol.logic.JProlChoicePoint;
+import com.igormaznitsa.jprol.logic.JProlContext;
+import com.igormaznitsa.jprol.utils.CloseableIterator;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryKnowledgeBaseTest extends AbstractJProlTest {
+
+  private static List<String> collect(final JProlContext context, final String template) {
+    final TermStruct struct = (TermStruct) new JProlChoicePoint(template, context).getGoalTerm();
+    final List<String> result = new ArrayList<>();
+    final CloseableIterator<TermStruct> iterator = context.getKnowledgeBase().iterate(IteratorType.ANY, struct, x -> {
+    });
+    iterator.forEachRemaining(x -> result.add(x.forWrite()));
+    return result;
+  }
+
+  private static InMemoryPredicate findPredicate(final JProlContext context, final String signature) {
+    return ((InMemoryKnowledgeBase) context.getKnowledgeBase()).findPredicate(signature);
+  }
+
+  @Test
+  void testFirstArgumentIndexKeepsSourceOrder() {
+    final JProlContext context = makeContextAndConsult("p(a,1). p(X,2). p(b,3). p(a,4). p(f(x),5). p([],6). p([1],7). p(1,8). p(1.0,9).");
+
+    assertEquals("[p(a,1), p(X,2), p(a,4)]", collect(context, "p(a,_).").toString());
+    assertEquals("[p(X,2), p(b,3)]", collect(context, "p(b,_).").toString());
+    assertEquals("[p(X,2)]", collect(context, "p(c,_).").toString());
+    assertEquals("[p(X,2), p(f(x),5)]", collect(context, "p(f(_),_).").toString());
+    assertEquals("[p(X,2), p([],6)]", collect(context, "p([],_).").toString());
+    assertEquals("[p(X,2), p([1],7)]", collect(context, "p([_|_],_).").toString());
+    assertEquals("[p(X,2), p(1,8)]", collect(context, "p(1,_).").toString());
+    assertEquals("[p(X,2), p(1.0,9)]", collect(context, "p(1.0,_).").toString());
+    assertEquals(9, collect(context, "p(_,_).").size());
+
+    final InMemoryPredicate predicate = findPredicate(context, "p/2");
+    final TermStruct template = (TermStruct) new JProlChoicePoint("p(b,_).", context).getGoalTerm();
+    assertEquals(2, predicate.findCandidates(template).size());
+  }
+
+  @Test
+  void testFirstArgumentIndexUpdatedByAssertAndRetract() {
+    final JProlContext context = makeContextAndConsult("q(a,1). q(b,2).");
+    assertNotNull(new JProlChoicePoint("asserta(q(b,0)), assertz(q(X,3)), asserta(q(Y,-1)), retract(q(a,1)).", context).prove());
+
+    assertEquals("[q(Y,-1), q(b,0), q(b,2), q(X,3)]", collect(context, "q(b,_).").toString());
+    assertEquals("[q(Y,-1), q(X,3)]", collect(context, "q(a,_).").toString());
+
+    assertNotNull(new JProlChoicePoint("retract(q(b,0)), retract(q(b,2)).", context).prove());
+    assertEquals("[q(Y,-1), q(X,3)]", collect(context, "q(b,_).").toString());
+
+    assertNotNull(new JProlChoicePoint("retractall(q(b,_)).", context).prove());
+    assertEquals("[]", collect(context, "q(_,_).").toString());
+
+    assertNotNull(new JProlChoicePoint("abolish(q/2), assert(q(c,1)).", context).prove());
+    assertEquals("[q(c,1)]", collect(context, "q(c,_).").toString());
+    assertEquals("[]", collect(context, "q(b,_).").toString());
+  }
+
+  @Test
+  void testLargeFactTableLookup() {
+    final JProlContext context = makeTestContext();
+    final StringBuilder buffer = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      buffer.append("row(").append(i).append(",v").append(i).append(").");
+    }
+    context.consult(new StringReader(buffer.toString()));
+    checkVarValues(context, "row(19999,X).", "X", "'v19999'");
+    checkVarValues(context, "row(12345,X), row(Y,X).", "Y", "12345");
+  }
+
+  @Test
+  void testJitIndexForSecondArgument() {
+    final StringBuilder buffer = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      buffer.append("edge(n").append(i).append(",n").append(i + 1).append(").");
+    }
+    final JProlContext context = makeContextAndConsult(buffer.toString());
+    final InMemoryKnowledgeBase base = (InMemoryKnowledgeBase) context.getKnowledgeBase();
+
+    assertFalse(base.findIndexInfo("edge/2").get().isIndexed(1));
+    for (int i = 0; i < InMemoryPredicate.JIT_CALL_THRESHOLD; i++) {
+      checkVarValues(context, "edge(X,n50).", "X", "'n49'");
+    }
+
+    final PredicateIndexInfo info = base.findIndexInfo("edge/2").get();
+    assertTrue(info.isIndexed(0));
+    assertTrue(info.isIndexed(1));
+    assertEquals(100, info.getIndexedArguments().get(1).intValue());
+    assertEquals(InMemoryPredicate.JIT_CALL_THRESHOLD, info.getBoundCalls(1));
+
+    final TermStruct template = (TermStruct) new JProlChoicePoint("edge(_,n10).", context).getGoalTerm();
+    assertEquals(1, findPredicate(context, "edge/2").findCandidates(template).size());
+
+    assertNotNull(new JProlChoicePoint("assertz(edge(n200,n10)), asserta(edge(n300,n10)).", context).prove());
+    checkVarValues(context, "edge(X,n10).", "X", "'n300'", "'n9'", "'n200'");
+
+    assertNotNull(new JProlChoicePoint("retractall(edge(n0,_)).", context).prove());
+    assertFalse(base.findIndexInfo("edge/2").get().isIndexed(1));
+    assertEquals(0, base.findIndexInfo("edge/2").get().getBoundCalls(1));
+    checkVarValues(context, "edge(X,n10).", "X", "'n300'", "'n9'", "'n200'");
+  }
+
+  @Test
+  void testHeadShapeFilter() {
+    final JProlContext context = makeContextAndConsult("r(x,a,1,f(x)). r(x,b,2,g(x)). r(x,X,3,f(X,X)). r(x,a,4.0,[x]). r(x,c,5,[]). r(x,'1',1,Z). r(x,+,6,a).");
+
+    assertEquals("[r(x,a,1,f(x))]", collect(context, "r(_,a,1,_).").toString());
+    assertEquals("[r(x,a,1,f(x)), r(x,X,3,f(X,X)), r(x,a,4.0,[x])]", collect(context, "r(_,a,_,_).").toString());
+    assertEquals("[r(x,X,3,f(X,X))]", collect(context, "r(_,d,_,f(_,_)).").toString());
+    assertEquals("[r(x,a,4.0,[x])]", collect(context, "r(_,_,4.0,[_|_]).").toString());
+    assertEquals("[r(x,c,5,[]), r(x,1,1,Z)]", collect(context, "r(_,_,_,[]).").toString());
+    assertEquals("[r(x,X,3,f(X,X)), r(x,1,1,Z)]", collect(context, "r(_,'1',_,_).").toString());
+    assertEquals("[r(x,X,3,f(X,X)), r(x,+,6,a)]", collect(context, "r(_,+,_,_).").toString());
+
+    final HeadShape shape = HeadShape.of(new JProlChoicePoint("r(a,1,f(x),[]).", context).getGoalTerm());
+    assertTrue(shape.mayMatch(HeadShape.of(new JProlChoicePoint("r(_,_,_,_).", context).getGoalTerm())));
+    assertTrue(shape.mayMatch(HeadShape.of(new JProlChoicePoint("r(a,1,f(_),[]).", context).getGoalTerm())));
+    assertFalse(shape.mayMatch(HeadShape.of(new JProlChoicePoint("r(b,_,_,_).", context).getGoalTerm())));
+    assertFalse(shape.mayMatch(HeadShape.of(new JProlChoicePoint("r(_,1.0,_,_).", context).getGoalTerm())));
+    assertFalse(shape.mayMatch(HeadShape.of(new JProlChoicePoint("r(_,_,f(_,_),_).", context).getGoalTerm())));
+    assertFalse(shape.mayMatch(HeadShape.of(new JProlChoicePoint("r(_,_,_,[_]).", context).getGoalTerm())));
+  }
+
+  @Test
+  void testCopyIsSnapshotSharingUnchangedPredicates() {
+    final JProlContext context = makeContextAndConsult("p(1). p(2). q(a). q(b).");
+    final InMemoryKnowledgeBase base = (InMemoryKnowledgeBase) context.getKnowledgeBase();
+    final InMemoryKnowledgeBase copy = (InMemoryKnowledgeBase) base.makeCopy();
+    final TermStruct p3 = (TermStruct) new JProlChoicePoint("p(3).", context).getGoalTerm();
+    final TermStruct qa = (TermStruct) new JProlChoicePoint("q(a).", context).getGoalTerm();
+    final TermStruct qc = (TermStruct) new JProlChoicePoint("q(c).", context).getGoalTerm();
+
+    assertSame(base.findPredicate("p/1"), copy.findPredicate("p/1"));
+    assertSame(base.findPredicate("q/1"), copy.findPredicate("q/1"));
+
+    assertTrue(copy.assertZ(context, p3));
+    assertFalse(copy.retractA(context, qc));
+    assertSame(base.findPredicate("q/1"), copy.findPredicate("q/1"));
+    assertNotSame(base.findPredicate("p/1"), copy.findPredicate("p/1"));
+
+    assertTrue(base.retractA(context, qa));
+    assertNotSame(base.findPredicate("q/1"), copy.findPredicate("q/1"));
+
+    final KnowledgeBase copyOfCopy = copy.makeCopy();
+    assertTrue(copy.retractAll(context, qa));
+    copy.abolish(context, "p/1");
+
+    assertEquals("[p(1), p(2)]", collect(context, "p(_).").toString());
+    assertEquals("[q(b)]", collect(context, "q(_).").toString());
+    assertNull(copy.findPredicate("p/1"));
+    assertEquals("[q(b)]", toList(copy.iterate("q/1", x -> {
+    })));
+    assertEquals("[p(1), p(2), p(3)]", toList(copyOfCopy.iterate("p/1", x -> {
+    })));
+    assertEquals("[q(a), q(b)]", toList(copyOfCopy.iterate("q/1", x -> {
+    })));
+  }
+
+  @Test
+  void testClauseStoreKeepsOrderOfAssertaAndAssertz() {
+    final JProlContext context = makeTestContext();
+    for (int i = 0; i < 3000; i++) {
+      assertNotNull(new JProlChoicePoint("assertz(s(" + i + ")), asserta(s(-" + i + ")).", context).prove());
+    }
+    final List<String> values = collect(context, "s(_).");
+    assertEquals(6000, values.size());
+    assertEquals("s(-2999)", values.get(0));
+    assertEquals("s(0)", values.get(2999));
+    assertEquals("s(0)", values.get(3000));
+    assertEquals("s(2999)", values.get(5999));
+    assertNotNull(new JProlChoicePoint("s(1500), s(-1500).", context).prove());
+  }
+
+  @Test
+  void testClauseStoreSnapshotIsStableDuringModification() {
+    final JProlContext context = makeContextAndConsult("t(1). t(2). t(3).");
+    final InMemoryKnowledgeBase base = (InMemoryKnowledgeBase) context.getKnowledgeBase();
+    final CloseableIterator<TermStruct> iterator = base.iterate("t/1", x -> {
+    });
+    assertNotNull(new JProlChoicePoint("retract(t(2)), assertz(t(4)), asserta(t(0)).", context).prove());
+    assertEquals("[t(1), t(2), t(3)]", toList(iterator));
+    assertEquals("[t(0), t(1), t(3), t(4)]", collect(context, "t(_).").toString());
+  }
+
+  @Test
+  void testClauseStoreCompactsTombstones() throws Exception {
+    final JProlContext context = makeTestContext();
+    final InMemoryKnowledgeBase base = (InMemoryKnowledgeBase) context.getKnowledgeBase();
+    for (int i = 0; i < 1000; i++) {
+      assertNotNull(new JProlChoicePoint("assertz(c(" + (i % 10) + "," + i + ")).", context).prove());
+    }
+    final InMemoryPredicate predicate = base.findPredicate("c/2");
+    final TermStruct template = (TermStruct) new JProlChoicePoint("c(5,_).", context).getGoalTerm();
+    final ClauseStore.Snapshot before = predicate.findCandidates(template);
+    assertEquals(100, before.size());
+
+    for (int i = 0; i < 700; i++) {
+      assertNotNull(new JProlChoicePoint("retract(c(_," + i + ")).", context).prove());
+    }
+    // 500th retract has compacted the stores
+    assertEquals(200, predicate.getRemoved());
+    predicate.compact();
+    assertEquals(0, predicate.getRemoved());
+    assertEquals(300, predicate.size());
+    assertEquals(30, predicate.findCandidates(template).size());
+    assertEquals(100, before.toItems().size());
+    checkVarValues(context, "c(5,X).", "X", "705", "715", "725", "735", "745", "755", "765", "775", "785", "795",
+        "805", "815", "825", "835", "845", "855", "865", "875", "885", "895",
+        "905", "915", "925", "935", "945", "955", "965", "975", "985", "995");
+  }
+
+  @Test
+  void testLogicalUpdateView() {
+    final JProlContext context = makeContextAndConsult("r(1). r(2). r(3). step(1) :- !, retract(r(2)), retract(r(9)). step(_). clear :- retractall(r(_)). clear.");
+    checkVarValues(context, "findall(X, (r(X), assertz(r(9))), L).", "L", "[1,2,3]");
+    checkVarValues(context, "findall(X, (r(X), step(X)), L).", "L", "[1,2,3,9,9,9]");
+    assertEquals("[r(1), r(3), r(9), r(9)]", collect(context, "r(_).").toString());
+    checkVarValues(context, "findall(X, (r(X), once(clear)), L).", "L", "[1,3,9,9]");
+    assertEquals("[]", collect(context, "r(_).").toString());
+  }
+
+  @Test
+  void testLogicalUpdateViewWithConcurrentWriter() throws Exception {
+    final StringBuilder buffer = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      buffer.append("w(k").append(i % 5).append(',').append(i).append(").");
+    }
+    final JProlContext context = makeContextAndConsult(buffer.toString());
+    final InMemoryPredicate predicate = findPredicate(context, "w/2");
+    final TermStruct template = (TermStruct) new JProlChoicePoint("w(k3,_).", context).getGoalTerm();
+
+    final Thread writer = new Thread(() -> {
+      for (int i = 0; i < 500; i++) {
+        new JProlChoicePoint("retract(w(_," + i + ")), assertz(w(k" + (i % 5) + "," + (i + 500) + ")).", context).prove();
+      }
+    });
+    writer.start();
+    try {
+      while (writer.isAlive()) {
+        final ClauseStore.Snapshot snapshot = predicate.findCandidates(template);
+        int counter = 0;
+        for (final ClauseStore.ClauseEntry entry : snapshot) {
+          assertTrue(entry.isVisible(snapshot.getGeneration()));
+          counter++;
+        }
+        assertTrue(counter == 99 || counter == 100);
+      }
+    } finally {
+      writer.join();
+    }
+    predicate.compact();
+    assertEquals(500, predicate.size());
+    assertEquals(100, collect(context, "w(k3,_).").size());
+  }
+
+  @Test
+  void testBulkLoad() {
+    final JProlContext context = makeContextAndConsult("fact(first,0).");
+    final InMemoryKnowledgeBase base = (InMemoryKnowledgeBase) context.getKnowledgeBase();
+    final List<Term[]> rows = new ArrayList<>();
+    for (int i = 1; i <= 100000; i++) {
+      rows.add(new Term[] {Terms.newAtom("k" + i), Terms.newLong(i)});
+    }
+    rows.add(new Term[] {Terms.newVar("X"), Terms.newLong(-1)});
+
+    assertEquals(100001L, base.bulkLoad(context, "fact/2", rows.iterator()));
+    assertEquals(100002, base.findPredicate("fact/2").size());
+    checkVarValues(context, "fact(k77777,X).", "X", "77777", "-1");
+    checkVarValues(context, "fact(first,X).", "X", "0", "-1");
+    assertEquals("[fact(first,0), fact(k1,1)]", collect(context, "fact(_,_).").subList(0, 2).toString());
+
+    assertThrows(IllegalArgumentException.class, () -> base.bulkLoad(context, "fact/2",
+        Arrays.asList(new Term[] {Terms.newAtom("ok"), Terms.newLong(1)}, new Term[] {Terms.newAtom("wrong")}).iterator()));
+    assertEquals(100002, base.findPredicate("fact/2").size());
+  }
+
+  @Test
+  void testColumnarFacts() {
+    final StringBuilder buffer = new StringBuilder(":- columnar(price/3). price(sku0, 0, 0.5).");
+    for (int i = 1; i < 1000; i++) {
+      buffer.append("price(sku").append(i).append(',').append(i % 100).append(',').append(i).append(".5).");
+    }
+    final JProlContext context = makeContextAndConsult(buffer.toString());
+    final InMemoryKnowledgeBase base = (InMemoryKnowledgeBase) context.getKnowledgeBase();
+    final InMemoryPredicate predicate = base.findPredicate("price/3");
+    assertTrue(predicate.isColumnar());
+    assertEquals(1000, predicate.size());
+
+    checkVarValues(context, "price(sku123,X,_).", "X", "23");
+    checkVarValues(context, "price(X,_,777.5).", "X", "'sku777'");
+    checkVarValues(context, "price(X,42,_).", "X", "'sku42'", "'sku142'", "'sku242'", "'sku342'", "'sku442'", "'sku542'", "'sku642'", "'sku742'", "'sku842'", "'sku942'");
+    checkVarValues(context, "price(sku1,X,X).", "X", (Object[]) new String[0]);
+    checkVarValues(context, "price(X,_,42).", "X", (Object[]) new String[0]);
+    checkVarValues(context, "price(1,_,_).", "X", (Object[]) new String[0]);
+    assertEquals("[price(sku5,5,5.5)]", collect(context, "price(sku5,_,_).").toString());
+    assertTrue(base.findIndexInfo("price/3").get().isIndexed(1));
+    assertTrue(base.findIndexInfo("price/3").get().isIndexed(2));
+
+    assertNotNull(new JProlChoicePoint("retract(price(sku5,_,_)), retractall(price(_,7,_)), assertz(price(new, 5, 0.0)).", context).prove());
+    assertEquals(990, predicate.size());
+    checkVarValues(context, "price(X,5,_).", "X", "'sku105'", "'sku205'", "'sku305'", "'sku405'", "'sku505'", "'sku605'", "'sku705'", "'sku805'", "'sku905'", "'new'");
+    assertNotNull(new JProlChoicePoint("retractall(price(_,_,_)).", context).prove());
+    assertTrue(base.findPredicate("price/3").isColumnar());
+    assertEquals(0, base.findPredicate("price/3").size());
+
+    assertNotNull(new JProlChoicePoint("assertz(price(a,1,1.0)), assertz(price(b,2,2.0)).", context).prove());
+    final KnowledgeBase copy = base.makeCopy();
+    assertNotNull(new JProlChoicePoint("assertz(price(c,X,3.0)).", context).prove());
+    assertFalse(base.findPredicate("price/3").isColumnar());
+    assertEquals("[price(a,1,1.0), price(b,2,2.0), price(c,X,3.0)]", collect(context, "price(_,_,_).").toString());
+    assertEquals("[price(a,1,1.0), price(b,2,2.0)]", toList(copy.iterate("price/3", x -> {
+    })));
+
+    assertFalse(base.declareColumnar("price/3"));
+  }
+
+  private static String toList(final CloseableIterator<TermStruct> iterator) {
+    final List<String> result = new ArrayList<>();
+    iterator.forEachRemaining(x -> result.add(x.forWrite()));
+    return result.toString();
+  }
+
+}
@@ -0,0 +1,182 @@
+package com.igormaznitsa.jprol.kbase.mapped;
+
+import com.igormaznitsa.jprol.data.Term;
+import com.igormaznitsa.jprol.data.TermStruct;
+import com.igormaznitsa.jprol.exceptions.ProlPermissionErrorException;
+import com.igormaznitsa.jprol.it.AbstractJProlTest;
+import com.igormaznitsa.jprol.kbase.IteratorType;
+import com.igormaznitsa.jprol.kbase.KnowledgeBase;
+import com.igormaznitsa.jprol.libs.JProlCoreLibrary;
+import com.igormaznitsa.jprol.logic.JProlChoicePoint;
+import com.igormaznitsa.jprol.logic.JProlContext;
+import com.igormaznitsa.jprol.utils.CloseableIterator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.igormaznitsa.jprol.data.Terms.newAtom;
+import static com.igormaznitsa.jprol.data.Terms.newLong;
+import static com.igormaznitsa.jprol.data.Terms.newStruct;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedKnowledgeBaseTest extends AbstractJProlTest {
+
+  @TempDir
+  Path folder;
+
+  private static JProlContext makeContext(final KnowledgeBase base) {
+    return JProlContext.builder("mapped-test")
+        .knowledgeBase(base)
+        .libraries(new JProlCoreLibrary())
+        .build();
+  }
+
+  private static List<String> collect(final JProlContext context, final String template) {
+    final TermStruct struct = (TermStruct) new JProlChoicePoint(template, context).getGoalTerm();
+    final List<String> result = new ArrayList<>();
+    final CloseableIterator<TermStruct> iterator = context.getKnowledgeBase().iterate(IteratorType.ANY, struct, x -> {
+    });
+    iterator.forEachRemaining(x -> result.add(x.forWrite()));
+    return result;
+  }
+
+  private List<String> answers(final JProlContext context, final String goal) {
+    final JProlChoicePoint choicePoint = new JProlChoicePoint(goal, context);
+    final List<String> result = new ArrayList<>();
+    while (choicePoint.prove() != null) {
+      result.add(getVarAsText(choicePoint, "R"));
+    }
+    return result;
+  }
+
+  private MappedKnowledgeBase makeBase() throws IOException {
+    final JProlContext source = makeContextAndConsult(
+        "p(a,1). p(b,2). p(a,3). p(f(x),4). p([1,2|T],T). p(1.5,6). p('quoted atom',7)."
+            + "len([],0). len([_|T],N) :- len(T,M), N is M+1."
+            + "flag.");
+    final Path file = this.folder.resolve("base.jpkb");
+    try (MappedKnowledgeBaseWriter writer = new MappedKnowledgeBaseWriter(file)) {
+      assertEquals(7, writer.write(source.getKnowledgeBase(), "p/2"));
+      assertEquals(2, writer.write(source.getKnowledgeBase(), "len/2"));
+      assertEquals(1, writer.write(source.getKnowledgeBase(), "flag/0"));
+    }
+    return MappedKnowledgeBase.open("mapped", file);
+  }
+
+  @Test
+  void testMappedClausesFoundInSourceOrder() throws Exception {
+    final MappedKnowledgeBase base = this.makeBase();
+    final JProlContext context = makeContext(base);
+
+    assertEquals("[p(a,1), p(a,3)]", collect(context, "p(a,_).").toString());
+    assertEquals("[p(f(x),4)]", collect(context, "p(f(_),_).").toString());
+    assertEquals("[]", collect(context, "p(c,_).").toString());
+    assertEquals(7, collect(context, "p(_,_).").size());
+
+    checkVarValues(context, "p(X,3).", "X", "'a'", "[1,2|3]");
+    checkVarValues(context, "p(b,X).", "X", "2");
+    checkVarValues(context, "p(1.5,X).", "X", "6");
+    checkVarValues(context, "p('quoted atom',X).", "X", "7");
+    checkVarValues(context, "p([1,2,3],X).", "X", "[3]");
+    checkVarValues(context, "len([a,b,c],X).", "X", "3");
+    checkVarValues(context, "flag, X = ok.", "X", "'ok'");
+    checkVarValues(context, "findall(N, clause(len(_,N), true), L).", "L", "[0]");
+
+    assertEquals(7, base.countClauses().get("p/2").intValue());
+    assertTrue(base.isMapped("len/2"));
+    assertFalse(base.isMapped("q/1"));
+  }
+
+  @Test
+  void testOperatorTermsAsInMemory() throws Exception {
+    final JProlContext source = makeContextAndConsult(
+        "e(1+2). e(a=b). e(x-y). e(-(3)). e((a:-b)). e((c,d)). e(+)."
+            + "r(X,Y) :- (X > 2 -> Y = big ; Y = small), true.");
+    final Path file = this.folder.resolve("operators.jpkb");
+    try (MappedKnowledgeBaseWriter writer = new MappedKnowledgeBaseWriter(file)) {
+      assertEquals(7, writer.write(source.getKnowledgeBase(), "e/1"));
+      assertEquals(1, writer.write(source.getKnowledgeBase(), "r/2"));
+    }
+    final JProlContext context = makeContext(MappedKnowledgeBase.open("mapped", file));
+
+    final String[] goals = {
+        "e(1+2), R = yes.",
+        "e(X), X = A+B, R = A/B.",
+        "e(a=R).",
+        "e(x-R).",
+        "e(-(R)).",
+        "e((a:-R)).",
+        "e((P,Q)), R = P/Q.",
+        "e(R), R == (+).",
+        "e(T), T =.. L, L = [R|_].",
+        "clause(r(_,_), R).",
+        "r(3,R).",
+        "r(1,R)."
+    };
+    for (final String goal : goals) {
+      final List<String> expected = this.answers(source, goal);
+      assertFalse(expected.isEmpty(), goal);
+      assertEquals(expected, this.answers(context, goal), goal);
+    }
+  }
+
+  @Test
+  void testMappedPredicatesAreStatic() throws Exception {
+    final MappedKnowledgeBase base = this.makeBase();
+    final JProlContext context = makeContext(base);
+
+    assertThrows(ProlPermissionErrorException.class, () -> new JProlChoicePoint("assertz(p(c,8)).", context).prove());
+    assertThrows(ProlPermissionErrorException.class, () -> new JProlChoicePoint("retract(p(a,1)).", context).prove());
+    assertThrows(ProlPermissionErrorException.class, () -> new JProlChoicePoint("abolish(len/2).", context).prove());
+    assertFalse(base.declareColumnar("p/2"));
+
+    assertNotNull(new JProlChoicePoint("assertz(q(1)), assertz(q(2)), retract(q(1)).", context).prove());
+    checkVarValues(context, "q(X).", "X", "2");
+    checkVarValues(context, "current_predicate(len/A).", "A", "2");
+    checkVarValues(context, "current_predicate(q/A).", "A", "1");
+  }
+
+  @Test
+  void testCopySharesMappedPredicates() throws Exception {
+    final MappedKnowledgeBase base = this.makeBase();
+    final JProlContext context = makeContext(base);
+    assertNotNull(new JProlChoicePoint("assertz(q(1)).", context).prove());
+
+    final JProlContext copy = makeContext(base.makeCopy());
+    assertNotNull(new JProlChoicePoint("assertz(q(2)).", copy).prove());
+
+    checkVarValues(copy, "p(a,X).", "X", "1", "3");
+    checkVarValues(context, "findall(X, q(X), L).", "L", "[1]");
+    checkVarValues(copy, "findall(X, q(X), L).", "L", "[1,2]");
+  }
+
+  @Test
+  void testWriterChecksClauses() throws Exception {
+    final Path file = this.folder.resolve("wrong.jpkb");
+    try (MappedKnowledgeBaseWriter writer = new MappedKnowledgeBaseWriter(file)) {
+      final List<Term> clauses = new ArrayList<>();
+      clauses.add(newStruct(newAtom("r"), new Term[] {newLong(1)}));
+      assertThrows(IllegalArgumentException.class, () -> writer.write("s/1", clauses.iterator()));
+      assertEquals(1, writer.write("r/1", clauses.iterator()));
+      assertThrows(IllegalArgumentException.class, () -> writer.write("r/1", clauses.iterator()));
+    }
+    final MappedKnowledgeBase base = MappedKnowledgeBase.open("mapped", file);
+    assertEquals(1, base.countClauses().get("r/1").intValue());
+    assertNull(base.iterateCompiled(newStruct(newAtom("r"), new Term[] {newLong(1)}), x -> {
+    }));
+
+    final Path broken = this.folder.resolve("broken.jpkb");
+    Files.write(broken, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+    assertThrows(IOException.class, () -> MappedKnowledgeBase.open("broken", broken));
+  }
+}
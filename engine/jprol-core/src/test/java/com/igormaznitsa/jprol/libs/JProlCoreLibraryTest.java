@@ -12,6 +12,8 @@ import static org.junit.jupiter.api.Assertions.*;
 
 class JProlCoreLibraryTest extends AbstractJProlTest {
 
+  private static final String FIB = "fib(0,0). fib(1,1). fib(N,F) :- N > 1, N1 is N - 1, N2 is N - 2, fib(N1,F1), fib(N2,F2), F is F1 + F2.";
+
   @Test
   void testAsserta1() {
     //[asserta((foo :- 4)), type_error(callable, 4)].
@@ -1291,6 +1293,9 @@ class JProlCoreLibraryTest extends AbstractJProlTest {
     assertProlException("once(3).", ProlTypeErrorException.class);
     //[once(X), instantiation_error]. % Culprit X
     assertProlException("once(X).", ProlInstantiationErrorException.class);
+
+    checkVarValues(makeContextAndConsult("sel(X,[X|T],T). sel(X,[H|T],[H|R]) :- sel(X,T,R)."),
+        "set_prolog_flag(or_parallel,true), once((sel(X,[1,2,3,4],_), X > 3)), set_prolog_flag(or_parallel,false).", "X", "4");
   }
 
   @Test
@@ -1552,4 +1557,63 @@ class JProlCoreLibraryTest extends AbstractJProlTest {
 
   }
 
-}
\ No newline at end of file
+  @Test
+  void testTable1() {
+    final String graph = "e(a,b). e(b,c). e(c,a). e(c,d).";
+    checkVarValues(makeContextAndConsult(":- table path/2. " + graph + " path(X,Y) :- path(X,Z), e(Z,Y). path(X,Y) :- e(X,Y)."), "findall(Y, path(a,Y), L), sort(L, S).", "S", "['a','b','c','d']");
+    checkVarValues(makeContextAndConsult(":- table [reach/2]. " + graph + " reach(X,Y) :- e(X,Y). reach(X,Y) :- e(X,Z), reach(Z,Y)."), "findall(Y, reach(b,Y), L), sort(L, S).", "S", "['a','b','c','d']");
+    checkVarValues(makeContextAndConsult(":- table p/1, q/1. p(X) :- q(X). p(1). q(X) :- p(Y), X is Y + 1, X < 5."), "findall(X, p(X), L), sort(L, S).", "S", "[1,2,3,4]");
+    checkVarValues(makeContextAndConsult(":- table fib/2. " + FIB), "fib(60,F).", "F", "1548008755920");
+  }
+
+  @Test
+  void testTableStatistics3() {
+    checkOnce("table_statistics(_, _, _).", false);
+    final JProlContext context = makeContextAndConsult(":- table fib/2. " + FIB);
+    checkVarValues(context, "fib(40,F).", "F", "102334155");
+    checkVarValues(context, "table_statistics(fib(40,_), A, _).", "A", "1");
+    checkVarValues(context, "table_statistics(fib(20,_), _, H).", "H", "1");
+    checkVarValues(context, "fib(20,_), table_statistics(fib(20,_), _, H).", "H", "2");
+  }
+
+  @Test
+  void testAbolishAllTables0() {
+    final JProlContext context = makeContextAndConsult(":- table fib/2. " + FIB);
+    checkVarValues(context, "fib(40,F).", "F", "102334155");
+    assertNotNull(new JProlChoicePoint("abolish_all_tables, \\+ table_statistics(_, _, _).", context).prove());
+    checkVarValues(context, "fib(20,F).", "F", "6765");
+    checkVarValues(context, "table_statistics(fib(20,_), A, H).", "H", "0");
+  }
+
+  @Test
+  void testCallWithLimits2() {
+    final JProlContext context = makeContextAndConsult("loop :- loop. deep(N) :- M is N + 1, deep(M), true. n(1). n(2). n(3).");
+    checkVarValues(context, "n(X), call_with_limits(n(X), [inferences(100), depth(10)]).", "X", "1", "2", "3");
+    checkVarValues(context, "catch(call_with_limits(loop, [inferences(100)]), error(resource_error, [R|_]), true).", "R", "'inferences'");
+    checkVarValues(context, "catch(call_with_limits(deep(0), [depth(50)]), error(resource_error, [R|_]), true).", "R", "'depth'");
+    checkVarValues(context, "catch(call_with_limits(loop, [time(50)]), error(resource_error, [R|_]), true).", "R", "'time'");
+    // nested limits don't widen limits of outer goal
+    checkVarValues(context, "catch(call_with_limits(call_with_limits(loop, [time(100000)]), [inferences(100)]), error(resource_error, [R|_]), true).", "R", "'inferences'");
+    assertProlException("call_with_limits(true, [steps(1)]).", ProlDomainErrorException.class);
+    assertProlException("call_with_limits(true, [time(0)]).", ProlDomainErrorException.class);
+  }
+
+  @Test
+  void testLoadFacts2() {
+    final JProlContext context = makeContextAndConsult("row(z,0,[]).");
+    checkVarValues(context, "load_facts(row/3, [[a,1,f(x)],[b,2,[]]]), load_facts(row/3, []), row(X,_,[]).", "X", "'z'", "'b'");
+    assertNotNull(new JProlChoicePoint("load_facts(row/0, [[]]), row.", context).prove());
+    assertProlException("load_facts(row/3, [[a,1]]).", ProlDomainErrorException.class);
+    assertProlException("load_facts(row/3, [a]).", ProlTypeErrorException.class);
+    assertProlException("load_facts(atom/1, [[a]]).", ProlPermissionErrorException.class);
+  }
+
+  @Test
+  void testColumnar1() {
+    final JProlContext context = makeContextAndConsult("price(a,1,0.5). price(b,2,1.5). other(X,1).");
+    checkVarValues(context, "columnar(price/3), assertz(price(c,2,2.5)), price(X,2,_).", "X", "'b'", "'c'");
+    checkOnce("other(X,1).", "columnar(other/2).", false);
+    assertProlException("columnar(atom/1).", ProlPermissionErrorException.class);
+  }
+
+}
@@ -8,8 +8,13 @@ import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class JProlIoLibraryTest extends AbstractJProlTest {
   @Test
@@ -21,6 +26,20 @@ class JProlIoLibraryTest extends AbstractJProlTest {
     assertEquals("[]", point.findVar("X").get().getValue().toString());
   }
 
+  @Test
+  void testProfileReport0() {
+    final StringWriter out = new StringWriter();
+    final JProlContext context = makeTestContext(new IoResourceProvider() {
+      @Override
+      public Writer findWriter(final JProlContext context, final String writerId, final boolean append) {
+        return out;
+      }
+    });
+    context.consult(new StringReader("m(1). m(2). m(3)."));
+    assertNotNull(prepareGoal("set_prolog_flag(profile,on), m(3), set_prolog_flag(profile,off), profile_report.", context).prove());
+    assertTrue(out.toString().contains("m/1"));
+  }
+
   @Test
   @Disabled
   void testSeek1() {
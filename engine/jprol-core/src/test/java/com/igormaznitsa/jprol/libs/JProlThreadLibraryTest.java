@@ -1,8 +1,16 @@
 package com.igormaznitsa.jprol.libs;
 
+import com.igormaznitsa.jprol.exceptions.ProlDomainErrorException;
+import com.igormaznitsa.jprol.exceptions.ProlForkExecutionException;
+import com.igormaznitsa.jprol.exceptions.ProlInstantiationErrorException;
+import com.igormaznitsa.jprol.it.AbstractJProlTest;
+import com.igormaznitsa.jprol.logic.JProlChoicePoint;
+import com.igormaznitsa.jprol.logic.JProlContext;
 import org.junit.jupiter.api.Test;
 
-class JProlThreadLibraryTest {
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JProlThreadLibraryTest extends AbstractJProlTest {
 
   @Test
   void testFork1() {
@@ -39,5 +47,44 @@ class JProlThreadLibraryTest {
     //todo
   }
 
+  @Test
+  void testParFindAll3() {
+    checkVarValues("par_findall(X-Y, (for(X,1,12), Y is X * X, Y mod 3 =:= 1), L).", "L", "[1 - 1,2 - 4,4 - 16,5 - 25,7 - 49,8 - 64,10 - 100,11 - 121]");
+    checkVarValues("par_findall(X, (for(X,5,1), X > 2), L).", "L", "[5,4,3]");
+    final JProlContext context = makeContextAndConsult("p(X) :- q(X). p(X) :- for(X, 10, 8). p(a). q(1). q(2). r(X) :- q(X), !. r(3). s(1). s(2). s(3).");
+    checkVarValues(context, "par_findall(X, p(X), L).", "L", "[1,2,10,9,8,'a']");
+    checkVarValues(context, "par_findall(X, r(X), L).", "L", "[1]");
+    checkVarValues(context, "par_findall(X, (s(X), !), L).", "L", "[1]");
+    checkVarValues(context, "par_findall(X, (for(X,1,10), !), L).", "L", "[1]");
+    checkVarValues(context, "par_findall(X, (s(X), (X > 1 -> true ; fail)), L).", "L", "[2]");
+    checkVarValues(context, "par_findall(X, (p(X), X == b), L).", "L", "[]");
+    assertProlException("par_findall(X, (for(X,1,3), X > a), L).", ProlForkExecutionException.class);
+    assertProlException("par_findall(X, Y, L).", ProlInstantiationErrorException.class);
+  }
+
+  @Test
+  void testParFindAll4() {
+    final JProlContext context = makeContextAndConsult("p(X) :- q(X). p(X) :- for(X, 10, 8). p(a). q(1). q(2).");
+    checkVarValues(context, "par_findall(X, p(X), L, [ordered(true)]).", "L", "[1,2,10,9,8,'a']");
+    checkVarValues(context, "par_findall(X, p(X), L, [ordered(false)]), sort(L, S).", "S", "[1,2,8,9,10,'a']");
+    assertProlException("par_findall(X, p(X), L, [ordered(maybe)]).", ProlDomainErrorException.class);
+    assertProlException("par_findall(X, p(X), L, [unknown]).", ProlDomainErrorException.class);
+  }
+
+  @Test
+  void testParOnce1() {
+    final JProlContext context = makeContextAndConsult("sel(X,[X|T],T). sel(X,[H|T],[H|R]) :- sel(X,T,R)."
+        + "perm([],[]). perm(L,[H|T]) :- sel(H,L,R), perm(R,T)."
+        + "safe([]). safe([Q|Qs]) :- noatt(Q,Qs,1), safe(Qs)."
+        + "noatt(_,[],_). noatt(Q,[Q1|Qs],D) :- Q =\\= Q1 + D, Q =\\= Q1 - D, D1 is D + 1, noatt(Q,Qs,D1)."
+        + "queens(L,Qs) :- perm(L,Qs), safe(Qs)."
+        + "r(X) :- sel(X,[1,2,3],_), !. r(4).");
+    checkVarValues(context, "par_once(queens([1,2,3,4,5,6],Q)), safe(Q), sort(Q,S).", "S", "[1,2,3,4,5,6]");
+    assertNull(new JProlChoicePoint("par_once(queens([1,2,3],Q)).", context).prove());
+    checkVarValues(context, "par_once(r(X)).", "X", "1");
+    checkVarValues(context, "par_once((sel(X,[1,2,3,4],_), X > 3)).", "X", "4");
+    assertProlException("par_once(X > a).", ProlInstantiationErrorException.class);
+  }
+
 
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.igormaznitsa.jprol.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of metrics of a context. Rates are calculated between polls of the attributes (but not
+ * more often than once per second).
+ */
+public interface JProlContextMXBean {
+
+  String getContextId();
+
+  long getInferences();
+
+  double getInferencesPerSecond();
+
+  long getAsserts();
+
+  double getAssertsPerSecond();
+
+  long getRetracts();
+
+  double getRetractsPerSecond();
+
+  long getTriggerInvocations();
+
+  long getLockContentions();
+
+  int getLockWaitingThreads();
+
+  int getMaxChoicePointDepth();
+
+  int getActiveAsyncTasks();
+
+  int getQueuedAsyncTasks();
+
+  int getExecutorActiveThreads();
+
+  long getExecutorQueuedTasks();
+
+  double getExecutorSaturation();
+
+  long getClauses();
+
+  Map<String, Integer> getClauseCounts();
+}
@@ -0,0 +1,150 @@
+package com.igormaznitsa.jprol.metrics;
+
+import com.igormaznitsa.jprol.logic.ContextMetrics;
+import com.igormaznitsa.jprol.logic.JProlContext;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * MXBean of a context, it just reads counters of {@link ContextMetrics} so the context doesn't
+ * make any additional work for it.
+ */
+public final class JProlContextMetrics implements JProlContextMXBean {
+
+  private static final long MIN_RATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+  private final ContextMetrics metrics;
+  private final Rate inferencesRate;
+  private final Rate assertsRate;
+  private final Rate retractsRate;
+
+  public JProlContextMetrics(final JProlContext context) {
+    this.metrics = requireNonNull(context, "Context is null").getMetrics();
+    this.inferencesRate = new Rate(this.metrics::getInferences);
+    this.assertsRate = new Rate(this.metrics::getAsserts);
+    this.retractsRate = new Rate(this.metrics::getRetracts);
+  }
+
+  @Override
+  public String getContextId() {
+    return this.metrics.getContextId();
+  }
+
+  @Override
+  public long getInferences() {
+    return this.metrics.getInferences();
+  }
+
+  @Override
+  public double getInferencesPerSecond() {
+    return this.inferencesRate.get();
+  }
+
+  @Override
+  public long getAsserts() {
+    return this.metrics.getAsserts();
+  }
+
+  @Override
+  public double getAssertsPerSecond() {
+    return this.assertsRate.get();
+  }
+
+  @Override
+  public long getRetracts() {
+    return this.metrics.getRetracts();
+  }
+
+  @Override
+  public double getRetractsPerSecond() {
+    return this.retractsRate.get();
+  }
+
+  @Override
+  public long getTriggerInvocations() {
+    return this.metrics.getTriggerInvocations();
+  }
+
+  @Override
+  public long getLockContentions() {
+    return this.metrics.getLockContentions();
+  }
+
+  @Override
+  public int getLockWaitingThreads() {
+    return this.metrics.getLockWaitingThreads();
+  }
+
+  @Override
+  public int getMaxChoicePointDepth() {
+    return this.metrics.getMaxChoicePointDepth();
+  }
+
+  @Override
+  public int getActiveAsyncTasks() {
+    return this.metrics.getActiveAsyncTasks();
+  }
+
+  @Override
+  public int getQueuedAsyncTasks() {
+    return this.metrics.getQueuedAsyncTasks();
+  }
+
+  @Override
+  public int getExecutorActiveThreads() {
+    return this.metrics.getExecutorActiveThreads();
+  }
+
+  @Override
+  public long getExecutorQueuedTasks() {
+    return this.metrics.getExecutorQueuedTasks();
+  }
+
+  @Override
+  public double getExecutorSaturation() {
+    return this.metrics.getExecutorSaturation();
+  }
+
+  @Override
+  public long getClauses() {
+    return this.metrics.getClauseCounts().values().stream().mapToLong(Integer::longValue).sum();
+  }
+
+  @Override
+  public Map<String, Integer> getClauseCounts() {
+    return this.metrics.getClauseCounts();
+  }
+
+  /**
+   * Rate of a counter between two reads.
+   */
+  private static final class Rate {
+
+    private final LongSupplier counter;
+    private long lastTime;
+    private long lastValue;
+    private double rate;
+
+    private Rate(final LongSupplier counter) {
+      this.counter = counter;
+      this.lastTime = System.nanoTime();
+      this.lastValue = counter.getAsLong();
+    }
+
+    private synchronized double get() {
+      final long now = System.nanoTime();
+      final long interval = now - this.lastTime;
+      if (interval >= MIN_RATE_INTERVAL_NANOS) {
+        final long value = this.counter.getAsLong();
+        this.rate = (value - this.lastValue) * (double) TimeUnit.SECONDS.toNanos(1L) / interval;
+        this.lastValue = value;
+        this.lastTime = now;
+      }
+      return this.rate;
+    }
+  }
+}
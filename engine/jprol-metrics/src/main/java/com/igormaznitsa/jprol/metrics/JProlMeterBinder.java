@@ -0,0 +1,70 @@
+package com.igormaznitsa.jprol.metrics;
+
+import com.igormaznitsa.jprol.logic.ContextMetrics;
+import com.igormaznitsa.jprol.logic.JProlContext;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.function.ToDoubleFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Micrometer binder of context metrics, Micrometer is optional dependency of the module so the
+ * class can be used only if it is in class path. Counters are bound as function counters so rates
+ * are calculated by registry. Clauses are bound as total number, per predicate numbers are provided
+ * by {@link JProlContextMXBean#getClauseCounts()}.
+ */
+public final class JProlMeterBinder implements MeterBinder {
+
+  private final ContextMetrics metrics;
+  private final Iterable<Tag> tags;
+
+  public JProlMeterBinder(final JProlContext context) {
+    this(context, Tags.empty());
+  }
+
+  public JProlMeterBinder(final JProlContext context, final Iterable<Tag> tags) {
+    this.metrics = requireNonNull(context, "Context is null").getMetrics();
+    this.tags = Tags.concat(tags, "context", context.getName());
+  }
+
+  private void counter(final MeterRegistry registry, final String name, final String description,
+                       final ToDoubleFunction<ContextMetrics> function) {
+    FunctionCounter.builder(name, this.metrics, function)
+        .description(description)
+        .tags(this.tags)
+        .register(registry);
+  }
+
+  private void gauge(final MeterRegistry registry, final String name, final String description,
+                     final ToDoubleFunction<ContextMetrics> function) {
+    Gauge.builder(name, this.metrics, function)
+        .description(description)
+        .tags(this.tags)
+        .register(registry);
+  }
+
+  @Override
+  public void bindTo(final MeterRegistry registry) {
+    this.counter(registry, "jprol.inferences", "Resolved goals", ContextMetrics::getInferences);
+    this.counter(registry, "jprol.asserts", "Asserted and consulted clauses", ContextMetrics::getAsserts);
+    this.counter(registry, "jprol.retracts", "Retract operations", ContextMetrics::getRetracts);
+    this.counter(registry, "jprol.trigger.invocations", "Invocations of triggers", ContextMetrics::getTriggerInvocations);
+    this.counter(registry, "jprol.locker.contentions", "Requests of named lockers locked by another thread", ContextMetrics::getLockContentions);
+
+    this.gauge(registry, "jprol.locker.waiting", "Threads waiting for named lockers", ContextMetrics::getLockWaitingThreads);
+    this.gauge(registry, "jprol.choicepoint.depth.max", "Max nesting level of sub-proofs", ContextMetrics::getMaxChoicePointDepth);
+    this.gauge(registry, "jprol.async.active", "Executed asynchronous goals", ContextMetrics::getActiveAsyncTasks);
+    this.gauge(registry, "jprol.async.queued", "Asynchronous goals waiting for executor", ContextMetrics::getQueuedAsyncTasks);
+    this.gauge(registry, "jprol.executor.active", "Active threads of executor", ContextMetrics::getExecutorActiveThreads);
+    this.gauge(registry, "jprol.executor.queued", "Tasks queued in executor", ContextMetrics::getExecutorQueuedTasks);
+    this.gauge(registry, "jprol.executor.saturation", "Ratio of active threads to parallelism of executor", ContextMetrics::getExecutorSaturation);
+    this.gauge(registry, "jprol.clauses", "Clauses in knowledge base",
+        x -> x.getClauseCounts().values().stream().mapToLong(Integer::longValue).sum());
+  }
+}
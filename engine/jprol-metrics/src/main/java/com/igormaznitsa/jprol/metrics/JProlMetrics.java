@@ -0,0 +1,67 @@
+package com.igormaznitsa.jprol.metrics;
+
+import com.igormaznitsa.jprol.logic.JProlContext;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registration of context metrics in JMX.
+ */
+public final class JProlMetrics {
+
+  public static final String DOMAIN = "com.igormaznitsa.jprol";
+
+  private JProlMetrics() {
+  }
+
+  /**
+   * Make JMX name for context.
+   *
+   * @param context context, must not be null
+   * @return object name, must not be null
+   * @throws JMException if the name can't be made
+   */
+  public static ObjectName makeObjectName(final JProlContext context) throws JMException {
+    return new ObjectName(DOMAIN + ":type=JProlContext,name=" + ObjectName.quote(context.getName()));
+  }
+
+  /**
+   * Register MXBean of context in platform MBean server.
+   *
+   * @param context context, must not be null
+   * @return name of registered bean
+   * @throws JMException if the bean can't be registered
+   */
+  public static ObjectName registerMBean(final JProlContext context) throws JMException {
+    return registerMBean(context, ManagementFactory.getPlatformMBeanServer());
+  }
+
+  /**
+   * Register MXBean of context in MBean server.
+   *
+   * @param context context, must not be null
+   * @param server  server, must not be null
+   * @return name of registered bean
+   * @throws JMException if the bean can't be registered
+   */
+  public static ObjectName registerMBean(final JProlContext context, final MBeanServer server) throws JMException {
+    return server.registerMBean(new JProlContextMetrics(context), makeObjectName(context)).getObjectName();
+  }
+
+  /**
+   * Unregister MXBean of context from platform MBean server if it is registered.
+   *
+   * @param context context, must not be null
+   * @throws JMException if the bean can't be unregistered
+   */
+  public static void unregisterMBean(final JProlContext context) throws JMException {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName name = makeObjectName(context);
+    if (server.isRegistered(name)) {
+      server.unregisterMBean(name);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package com.igormaznitsa.jprol.metrics;
+
+import com.igormaznitsa.jprol.libs.JProlCoreLibrary;
+import com.igormaznitsa.jprol.logic.JProlChoicePoint;
+import com.igormaznitsa.jprol.logic.JProlContext;
+import com.igormaznitsa.jprol.logic.triggers.AbstractJProlTrigger;
+import com.igormaznitsa.jprol.logic.triggers.JProlTriggerType;
+import com.igormaznitsa.jprol.logic.triggers.TriggerEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JProlMetricsTest {
+
+  private static JProlContext makeContext(final String name) {
+    final JProlContext context = new JProlContext(name, new JProlCoreLibrary());
+    context.consult(new StringReader("len([],0). len([_|T],N) :- len(T,M), N is M + 1."));
+    return context;
+  }
+
+  @Test
+  void testContextMetrics() {
+    final JProlContext context = makeContext("metrics-test");
+    final AtomicInteger triggered = new AtomicInteger();
+    context.registerTrigger(new AbstractJProlTrigger() {
+      @Override
+      public void onTriggerEvent(final TriggerEvent event) {
+        triggered.incrementAndGet();
+      }
+
+      @Override
+      public void onContextHalting(final JProlContext context) {
+      }
+    }.addSignature("fact/1", JProlTriggerType.TRIGGER_ASSERT_RETRACT));
+
+    // consulted clauses are counted as asserted
+    assertEquals(2L, context.getMetrics().getAsserts());
+    context.consult(new StringReader("deep(0) :- !. deep(N) :- M is N - 1, deep(M). deep(_) :- fail."));
+    assertNotNull(new JProlChoicePoint("len([a,b,c,d,e],N), deep(5), assert(fact(1)), assert(fact(2)), retract(fact(1)).", context).prove());
+
+    assertTrue(context.getMetrics().getInferences() > 10L);
+    assertEquals(7L, context.getMetrics().getAsserts());
+    assertEquals(1L, context.getMetrics().getRetracts());
+    assertEquals(3L, context.getMetrics().getTriggerInvocations());
+    assertEquals(3, triggered.get());
+    assertTrue(context.getMetrics().getMaxChoicePointDepth() >= 5);
+    assertEquals(Integer.valueOf(1), context.getMetrics().getClauseCounts().get("fact/1"));
+    assertEquals(Integer.valueOf(2), context.getMetrics().getClauseCounts().get("len/2"));
+    context.dispose();
+  }
+
+  @Test
+  void testJmx() throws Exception {
+    final JProlContext context = makeContext("jmx-test");
+    final ObjectName name = JProlMetrics.registerMBean(context);
+    try {
+      assertNotNull(new JProlChoicePoint("len([a,b,c],N), assert(x(1)).", context).prove());
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      assertEquals("jmx-test", server.getAttribute(name, "ContextId"));
+      assertEquals(context.getMetrics().getInferences(), server.getAttribute(name, "Inferences"));
+      assertEquals(3L, server.getAttribute(name, "Asserts"));
+      assertEquals(3L, server.getAttribute(name, "Clauses"));
+      assertNotNull(server.getAttribute(name, "ClauseCounts"));
+      assertEquals(0, server.getAttribute(name, "QueuedAsyncTasks"));
+    } finally {
+      JProlMetrics.unregisterMBean(context);
+      context.dispose();
+    }
+    assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+  }
+
+  @Test
+  void testMicrometer() {
+    final JProlContext context = makeContext("micrometer-test");
+    final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    new JProlMeterBinder(context).bindTo(registry);
+
+    assertNotNull(new JProlChoicePoint("len([a,b,c],N), assert(x(1)), retract(x(1)).", context).prove());
+
+    assertEquals(context.getMetrics().getInferences(), (long) registry.get("jprol.inferences").tag("context", "micrometer-test").functionCounter().count());
+    assertEquals(3.0d, registry.get("jprol.asserts").functionCounter().count());
+    assertEquals(1.0d, registry.get("jprol.retracts").functionCounter().count());
+    assertEquals(2.0d, registry.get("jprol.clauses").gauge().value());
+    final Map<String, Integer> counts = context.getMetrics().getClauseCounts();
+    assertFalse(counts.containsKey("x/1"));
+    context.dispose();
+  }
+}